@@ -0,0 +1,94 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link HtmlRewriter} with the former Jsoup and {@link String#replaceAll(String, String)} based rewriting
+ * on a newsletter like html body with many links and inline images.
+ *
+ * @author Kamill Sokol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HtmlRewriterBenchmark {
+
+    @Param({ "512" })
+    private int sizeInKb;
+
+    @Param({ "20" })
+    private int inlineImages;
+
+    private String html;
+    private Map<String, String> urlsByContentId;
+
+    @Setup
+    public void setup() {
+        urlsByContentId = new LinkedHashMap<>();
+
+        for (int i = 0; i < inlineImages; i++) {
+            urlsByContentId.put("image" + i + ".5a8f3c@newsletter.example.com", "/api/1/attachment/INBOX%257C" + i);
+        }
+
+        StringBuilder builder = new StringBuilder(sizeInKb * 1024 + 1024);
+        builder.append("<html><head><style>td{font-family:Arial}</style></head><body><table width=\"600\">");
+
+        for (int row = 0; builder.length() < sizeInKb * 1024; row++) {
+            String contentId = "image" + row % inlineImages + ".5a8f3c@newsletter.example.com";
+
+            builder.append("<tr><td style=\"background-image:url(cid:").append(contentId).append(");padding:10px\">")
+                    .append("<img src=\"cid:").append(contentId).append("\" width=\"120\" alt=\"\">")
+                    .append("<h2>Article ").append(row).append("</h2><p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, ")
+                    .append("sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.</p>")
+                    .append("<a href=\"https://newsletter.example.com/track?article=").append(row).append("&amp;u=42\">Read more</a> ")
+                    .append("<a href=\"https://newsletter.example.com/share?article=").append(row).append("\" target=\"_self\">Share</a>")
+                    .append("</td></tr>\r\n");
+        }
+
+        html = builder.append("</table></body></html>").toString();
+    }
+
+    @Benchmark
+    public String jsoupAndReplaceAll() {
+        Document document = Jsoup.parse(html);
+        Elements aTags = document.body().getElementsByTag("a");
+        String rewritten = html;
+
+        if (aTags.size() > 0) {
+            aTags.forEach(aTag -> aTag.attr("target", "_blank"));
+            rewritten = document.html();
+        }
+
+        for (Map.Entry<String, String> entry : urlsByContentId.entrySet()) {
+            rewritten = rewritten.replaceAll("cid:" + entry.getKey(), entry.getValue());
+            rewritten = rewritten.replaceAll("mid:" + entry.getKey(), entry.getValue());
+        }
+
+        return rewritten;
+    }
+
+    @Benchmark
+    public String htmlRewriter() {
+        return new HtmlRewriter(urlsByContentId).rewrite(html);
+    }
+}
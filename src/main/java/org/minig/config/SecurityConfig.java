@@ -3,11 +3,12 @@ package org.minig.config;
 import org.minig.security.ApiAuthenticationEntryPoint;
 import org.minig.security.MailAuthentication;
 import org.minig.security.MailAuthenticationProvider;
+import org.minig.security.VerifiedCredentialCache;
+import org.minig.server.service.impl.MailStorePool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
-import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
@@ -26,10 +27,15 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return new MailAuthentication();
     }
 
+    @Bean
+    public MailAuthenticationProvider mailAuthenticationProvider(MailStorePool mailStorePool, VerifiedCredentialCache verifiedCredentialCache) {
+        return new MailAuthenticationProvider(mailStorePool, verifiedCredentialCache);
+    }
+
     @Autowired
-    protected void configureGlobal(final AuthenticationManagerBuilder auth) {
+    protected void configureGlobal(final AuthenticationManagerBuilder auth, final MailAuthenticationProvider mailAuthenticationProvider) {
         auth.eraseCredentials(false)
-            .authenticationProvider(authenticationProvider());
+            .authenticationProvider(mailAuthenticationProvider);
     }
 
     @Override
@@ -75,6 +81,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Configuration
     public static class FormLoginWebSecurityConfigurerAdapter extends WebSecurityConfigurerAdapter {
 
+        @Autowired
+        private MailAuthenticationProvider mailAuthenticationProvider;
+
+        @Autowired
+        private VerifiedCredentialCache verifiedCredentialCache;
+
         @Override
         public void configure(final HttpSecurity http) throws Exception {
             http
@@ -88,14 +100,15 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .failureUrl("/login?login=failed")
                 .and()
                     .logout().logoutSuccessUrl("/login")
+                    .addLogoutHandler((request, response, authentication) -> {
+                        if (authentication != null) {
+                            verifiedCredentialCache.invalidate(authentication.getName());
+                        }
+                    })
                     .and()
                     .csrf().disable()
-                    .authenticationProvider(authenticationProvider());
+                    .authenticationProvider(mailAuthenticationProvider);
         }
     }
 
-    private static AuthenticationProvider authenticationProvider() {
-        return new MailAuthenticationProvider();
-    }
-
 }
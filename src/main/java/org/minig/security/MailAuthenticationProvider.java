@@ -1,6 +1,9 @@
 package org.minig.security;
 
 import org.minig.server.service.impl.JavaMailPropertyBuilder;
+import org.minig.server.service.impl.MailStorePool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -9,21 +12,40 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import javax.mail.AuthenticationFailedException;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
 import java.util.List;
-import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
 
 /**
+ * Verifies credentials with an IMAP login on a connection of its own, a failed login never touches the connections
+ * pooled for the user. The connection of a successful login is handed over to the {@link MailStorePool}.
+ *
  * @author Kamill Sokol
  */
 public class MailAuthenticationProvider implements AuthenticationProvider {
 
+    private static final Logger log = LoggerFactory.getLogger(MailAuthenticationProvider.class);
+
+    private final MailStorePool mailStorePool;
+    private final VerifiedCredentialCache verifiedCredentialCache;
+    private final StoreConnector storeConnector;
+
+    public MailAuthenticationProvider(MailStorePool mailStorePool, VerifiedCredentialCache verifiedCredentialCache) {
+        this(mailStorePool, verifiedCredentialCache, MailAuthenticationProvider::connect);
+    }
+
+    MailAuthenticationProvider(MailStorePool mailStorePool, VerifiedCredentialCache verifiedCredentialCache, StoreConnector storeConnector) {
+        this.mailStorePool = requireNonNull(mailStorePool, "mailStorePool is null");
+        this.verifiedCredentialCache = requireNonNull(verifiedCredentialCache, "verifiedCredentialCache is null");
+        this.storeConnector = requireNonNull(storeConnector, "storeConnector is null");
+    }
+
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
-        MailAuthenticationToken authenticated;
-
         String[] split = authentication.getName().split("@");
 
         if (split.length != 2) {
@@ -32,29 +54,35 @@ public class MailAuthenticationProvider implements AuthenticationProvider {
 
         String domain = split[1];
         String password = (String) authentication.getCredentials();
+        VerifiedCredentialCache.Entry cached = verifiedCredentialCache.get(authentication.getName(), password);
+
+        if (cached != null) {
+            if (!cached.isVerified()) {
+                throw new UsernameNotFoundException("authentication failed");
+            }
+            return authenticated(authentication, cached.getDomain(), cached.getFolderSeparator());
+        }
+
         Store store = null;
 
         try {
-            Properties javaMailProperties = new JavaMailPropertyBuilder(domain).build();
-            Session session = Session.getInstance(javaMailProperties, null);
+            store = storeConnector.connect(domain, authentication.getName(), password);
+            char folderSeparator = store.getDefaultFolder().getSeparator();
 
-            store = session.getStore();
-            store.connect(domain, authentication.getName(), password);
+            verifiedCredentialCache.putVerified(authentication.getName(), password, domain, folderSeparator);
+            // the first request after the login can reuse the connection
+            mailStorePool.offer(domain, authentication.getName(), password, store);
+            store = null;
 
-            List<GrantedAuthority> ga = AuthorityUtils.createAuthorityList("ROLE_USER");
-            authenticated = new MailAuthenticationToken(authentication.getName(), authentication.getCredentials(), ga, domain, store.getDefaultFolder().getSeparator());
+            return authenticated(authentication, domain, folderSeparator);
         } catch (Exception e) {
+            if (isAuthenticationFailure(e)) {
+                verifiedCredentialCache.putFailed(authentication.getName(), password);
+            }
             throw new UsernameNotFoundException(e.getMessage());
         } finally {
-            if (store != null) {
-                try {
-                    store.close();
-                } catch (MessagingException ignored) {
-                }
-            }
+            closeQuietly(store);
         }
-
-        return authenticated;
     }
 
     @Override
@@ -62,4 +90,39 @@ public class MailAuthenticationProvider implements AuthenticationProvider {
         return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
     }
 
+    private static MailAuthenticationToken authenticated(Authentication authentication, String domain, char folderSeparator) {
+        List<GrantedAuthority> ga = AuthorityUtils.createAuthorityList("ROLE_USER");
+        return new MailAuthenticationToken(authentication.getName(), authentication.getCredentials(), ga, domain, folderSeparator);
+    }
+
+    private static Store connect(String domain, String user, String password) throws MessagingException {
+        Store store = Session.getInstance(new JavaMailPropertyBuilder(domain).build(), null).getStore();
+        store.connect(domain, user, password);
+        return store;
+    }
+
+    private static void closeQuietly(Store store) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (MessagingException e) {
+            log.debug("can not close store. reason {}", e.getMessage());
+        }
+    }
+
+    private static boolean isAuthenticationFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AuthenticationFailedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    interface StoreConnector {
+
+        Store connect(String domain, String user, String password) throws MessagingException;
+    }
 }
@@ -0,0 +1,215 @@
+package org.minig.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Remembers the outcome of an IMAP login for a short period of time so that HTTP Basic authenticated
+ * API requests do not have to open an IMAP connection just to verify the password. Passwords are never
+ * stored, entries are keyed by user and a salted SHA-256 hash of the password. The salt is generated
+ * per instance.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=VerifiedCredentialCache")
+public class VerifiedCredentialCache {
+
+    private final byte[] salt = new byte[16];
+    private final Map<CacheKey, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+
+    private final long ttl;
+    private final long negativeTtl;
+
+    @Autowired
+    public VerifiedCredentialCache(@Value("${minig.auth.cache.max-size:10000}") int maxSize,
+                                   @Value("${minig.auth.cache.ttl:300}") long ttlSeconds,
+                                   @Value("${minig.auth.cache.negative-ttl:30}") long negativeTtlSeconds) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.negativeTtl = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * @return the cached outcome or {@code null} if the credentials have not been verified recently
+     */
+    public Entry get(String user, String password) {
+        CacheKey key = new CacheKey(user, hash(user, password));
+        Entry entry;
+
+        synchronized (entries) {
+            entry = entries.get(key);
+
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (entry.isVerified()) {
+            hits.incrementAndGet();
+        } else {
+            negativeHits.incrementAndGet();
+        }
+
+        return entry;
+    }
+
+    public void putVerified(String user, String password, String domain, char folderSeparator) {
+        put(user, password, new Entry(domain, folderSeparator, System.currentTimeMillis() + ttl));
+    }
+
+    public void putFailed(String user, String password) {
+        if (negativeTtl > 0) {
+            put(user, password, new Entry(null, (char) 0, System.currentTimeMillis() + negativeTtl));
+        }
+    }
+
+    /**
+     * Removes all entries of the given user regardless of the password.
+     */
+    public void invalidate(String user) {
+        synchronized (entries) {
+            Iterator<CacheKey> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().user.equals(user)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of cached entries")
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of requests served from a verified entry")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests rejected by a failed entry")
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    @ManagedAttribute(description = "Number of requests that had to log in to the IMAP server")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void put(String user, String password, Entry entry) {
+        CacheKey key = new CacheKey(user, hash(user, password));
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private byte[] hash(String user, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update(user.getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(password == null ? new byte[0] : password.getBytes(UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static final class Entry {
+
+        private final String domain;
+        private final char folderSeparator;
+        private final long expires;
+
+        private Entry(String domain, char folderSeparator, long expires) {
+            this.domain = domain;
+            this.folderSeparator = folderSeparator;
+            this.expires = expires;
+        }
+
+        public boolean isVerified() {
+            return domain != null;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        public char getFolderSeparator() {
+            return folderSeparator;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String user;
+        private final byte[] hash;
+
+        private CacheKey(String user, byte[] hash) {
+            this.user = user;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) o;
+            return Objects.equals(user, that.user) && MessageDigest.isEqual(hash, that.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * user.hashCode() + Arrays.hashCode(hash);
+        }
+    }
+}
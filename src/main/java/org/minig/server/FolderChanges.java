@@ -0,0 +1,45 @@
+package org.minig.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes of a folder since the state described by a sync token. If {@link #isReset()} is {@code true} the
+ * token is unknown or outdated and the client has to reload the folder. Changed and vanished messages are
+ * addressed by UID, the ids of added messages carry their UID as well.
+ *
+ * @author Kamill Sokol
+ */
+public class FolderChanges {
+
+    private final String token;
+    private final boolean reset;
+    private final List<PartialMailMessage> added = new ArrayList<>();
+    private final List<MessageFlags> changed = new ArrayList<>();
+    private final List<Long> vanished = new ArrayList<>();
+
+    public FolderChanges(String token, boolean reset) {
+        this.token = token;
+        this.reset = reset;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public List<PartialMailMessage> getAdded() {
+        return added;
+    }
+
+    public List<MessageFlags> getChanged() {
+        return changed;
+    }
+
+    public List<Long> getVanished() {
+        return vanished;
+    }
+}
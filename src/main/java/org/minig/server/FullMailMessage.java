@@ -1,6 +1,6 @@
 package org.minig.server;
 
-import org.minig.server.service.impl.helper.mime.Mime4jMessage;
+import org.minig.server.service.impl.helper.mime.BodyStructureMessage;
 
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
@@ -14,52 +14,52 @@ import static org.minig.MinigConstants.MDN_SENT;
  */
 public class FullMailMessage extends PartialMailMessage {
 
-    private final Mime4jMessage mime4jMessage;
+    private final BodyStructureMessage message;
 
     public FullMailMessage(MimeMessage mimeMessage) {
         super(mimeMessage);
-        this.mime4jMessage = new Mime4jMessage(mimeMessage);
+        this.message = new BodyStructureMessage(mimeMessage);
     }
 
     public List<MailMessageAddress> getBcc() {
-        return mime4jMessage.getBcc().stream().map(MailMessageAddress::new).collect(Collectors.toList());
+        return message.getBcc().stream().map(MailMessageAddress::new).collect(Collectors.toList());
     }
 
     public List<MailMessageAddress> getCc() {
-        return mime4jMessage.getCc().stream().map(MailMessageAddress::new).collect(Collectors.toList());
+        return message.getCc().stream().map(MailMessageAddress::new).collect(Collectors.toList());
     }
 
     public List<MailMessageAddress> getTo() {
-        return mime4jMessage.getTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
+        return message.getTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
     }
 
     public List<MailMessageAddress> getReplyTo() {
-        return mime4jMessage.getReplyTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
+        return message.getReplyTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
     }
 
     public String getText() {
-        return mime4jMessage.getPlain();
+        return message.getPlain();
     }
 
     public boolean isHtml() {
         //TODO replace with Link
-        return mime4jMessage.getHtml().length() > 0;
+        return message.hasHtml();
     }
 
     public List<MailAttachment> getAttachments() {
-        return mime4jMessage.getAttachments().stream().map(MailAttachment::new).collect(Collectors.toList());
+        return message.getAttachments().stream().map(MailAttachment::new).collect(Collectors.toList());
     }
 
     public String getForwardedMessageId() throws MessagingException {
-        return mime4jMessage.getForwardedMessageId();
+        return message.getForwardedMessageId();
     }
 
     public String getInReplyTo() {
-        return mime4jMessage.getInReplyTo();
+        return message.getInReplyTo();
     }
 
     public String getReferences() {
-        return mime4jMessage.getReferences();
+        return message.getReferences();
     }
 
     public boolean isMdnSent() throws MessagingException {
@@ -67,22 +67,22 @@ public class FullMailMessage extends PartialMailMessage {
     }
 
     public boolean isReceipt() {
-        return mime4jMessage.isReturnReceipt();
+        return message.isReturnReceipt();
     }
 
     public boolean isAskForDispositionNotification() {
-        return mime4jMessage.hasDispositionNotifications();
+        return message.hasDispositionNotifications();
     }
 
     public boolean isHighPriority() {
-        return mime4jMessage.isHighPriority();
+        return message.isHighPriority();
     }
 
     public String getMailer() {
-        return mime4jMessage.getUserAgent();
+        return message.getUserAgent();
     }
 
     public List<MailMessageAddress> getDispositionNotification() {
-        return mime4jMessage.getDispositionNotificationTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
+        return message.getDispositionNotificationTo().stream().map(MailMessageAddress::new).collect(Collectors.toList());
     }
 }
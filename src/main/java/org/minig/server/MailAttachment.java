@@ -1,10 +1,13 @@
 package org.minig.server;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.commons.io.IOUtils;
 import org.minig.server.service.CompositeAttachmentId;
 import org.minig.server.service.impl.helper.mime.Mime4jAttachment;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Date;
 
 /**
  * @author Kamill Sokol
@@ -23,7 +26,7 @@ public class MailAttachment extends CompositeAttachmentId {
     }
 
     public MailAttachment(CompositeAttachmentId compositeAttachmentId, String mime, String contentId, String dispositionType, InputStream data) {
-        super(compositeAttachmentId.getFolder(), compositeAttachmentId.getMessageId(), compositeAttachmentId.getFileName());
+        super(compositeAttachmentId, compositeAttachmentId.getFileName());
         this.mime = mime;
         this.contentId = contentId;
         this.dispositionType = dispositionType;
@@ -45,4 +48,42 @@ public class MailAttachment extends CompositeAttachmentId {
     public InputStream getData() {
         return data;
     }
+
+    /**
+     * @return the decoded data starting at the given byte offset
+     */
+    public InputStream getData(long offset) throws IOException {
+        InputStream stream = getData();
+        IOUtils.skipFully(stream, offset);
+        return stream;
+    }
+
+    /**
+     * @return the decoded size in bytes or {@code -1} if unknown
+     */
+    @JsonIgnore
+    public long getSize() {
+        return -1;
+    }
+
+    /**
+     * @return the decoded size in bytes if it is known without reading the data or {@code -1}
+     */
+    @JsonIgnore
+    public long getKnownSize() {
+        return -1;
+    }
+
+    /**
+     * @return an entity tag that changes with the content or {@code null} if the content can not be identified
+     */
+    @JsonIgnore
+    public String getETag() {
+        return null;
+    }
+
+    @JsonIgnore
+    public Date getLastModified() {
+        return null;
+    }
 }
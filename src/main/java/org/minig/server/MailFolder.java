@@ -9,6 +9,9 @@ public class MailFolder {
 	private Boolean editable;
 	private Boolean trashFolder;
 	private String parentFolderId;
+	private Integer messageCount;
+	private Integer unreadMessageCount;
+	private Boolean hasChildren;
 
 	public MailFolder() {
 	}
@@ -19,6 +22,19 @@ public class MailFolder {
 		this.subscribed = subscribed;
 	}
 
+	public MailFolder(MailFolder source) {
+		this.id = source.id;
+		this.name = source.name;
+		this.path = source.path;
+		this.subscribed = source.subscribed;
+		this.editable = source.editable;
+		this.trashFolder = source.trashFolder;
+		this.parentFolderId = source.parentFolderId;
+		this.messageCount = source.messageCount;
+		this.unreadMessageCount = source.unreadMessageCount;
+		this.hasChildren = source.hasChildren;
+	}
+
 	public String getId() {
 		return id;
 	}
@@ -75,6 +91,39 @@ public class MailFolder {
 		this.path = path;
 	}
 
+	/**
+	 * @return {@code null} if the folder has not been counted
+	 */
+	public Integer getMessageCount() {
+		return messageCount;
+	}
+
+	public void setMessageCount(Integer messageCount) {
+		this.messageCount = messageCount;
+	}
+
+	/**
+	 * @return {@code null} if the folder has not been counted
+	 */
+	public Integer getUnreadMessageCount() {
+		return unreadMessageCount;
+	}
+
+	public void setUnreadMessageCount(Integer unreadMessageCount) {
+		this.unreadMessageCount = unreadMessageCount;
+	}
+
+	/**
+	 * @return {@code null} if the server does not tell
+	 */
+	public Boolean getHasChildren() {
+		return hasChildren;
+	}
+
+	public void setHasChildren(Boolean hasChildren) {
+		this.hasChildren = hasChildren;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,52 @@
+package org.minig.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the children of a folder.
+ *
+ * @author Kamill Sokol
+ */
+public class MailFolderList {
+
+    private long fullLength;
+    private int page;
+    private List<MailFolder> folderList;
+
+    public MailFolderList() {
+        this.folderList = new ArrayList<>();
+        this.page = 0;
+        this.fullLength = 0;
+    }
+
+    public MailFolderList(List<MailFolder> folderList, int page, long fullLength) {
+        this.folderList = folderList;
+        this.page = page;
+        this.fullLength = fullLength;
+    }
+
+    public long getFullLength() {
+        return fullLength;
+    }
+
+    public void setFullLength(long fullLength) {
+        this.fullLength = fullLength;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public List<MailFolder> getFolderList() {
+        return folderList;
+    }
+
+    public void setFolderList(List<MailFolder> folderList) {
+        this.folderList = folderList;
+    }
+}
@@ -14,6 +14,7 @@ public class MailMessage extends CompositeId {
     private String subject;
     private MailMessageBody body = new MailMessageBody();
     private List<CompositeAttachmentId> attachments;
+    private List<String> stagedAttachments;
     private MailMessageAddress sender;
     private List<MailMessageAddress> to;
     private List<MailMessageAddress> cc;
@@ -75,6 +76,17 @@ public class MailMessage extends CompositeId {
         this.attachments = attachments;
     }
 
+    /**
+     * @return ids of staged attachments that become part of the message when the draft is saved or sent
+     */
+    public List<String> getStagedAttachments() {
+        return stagedAttachments;
+    }
+
+    public void setStagedAttachments(List<String> stagedAttachments) {
+        this.stagedAttachments = stagedAttachments;
+    }
+
     public MailMessageAddress getSender() {
         return sender;
     }
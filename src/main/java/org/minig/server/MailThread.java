@@ -0,0 +1,25 @@
+package org.minig.server;
+
+import java.util.List;
+
+/**
+ * Messages of one conversation in thread order.
+ *
+ * @author Kamill Sokol
+ */
+public class MailThread {
+
+    private final List<PartialMailMessage> messages;
+
+    public MailThread(List<PartialMailMessage> messages) {
+        this.messages = messages;
+    }
+
+    public List<PartialMailMessage> getMessages() {
+        return messages;
+    }
+
+    public int getSize() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,65 @@
+package org.minig.server;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A change of a watched folder as reported by the IMAP server. {@code exists} and {@code expunge} carry the number
+ * of added or removed messages only, clients pick up the messages themselves with the sync token of the folder.
+ * {@code flags} carries the new flags of the changed message.
+ *
+ * @author Kamill Sokol
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MailboxEvent {
+
+    public enum Type {
+        EXISTS, EXPUNGE, FLAGS;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final Type type;
+    private final String folder;
+    private final Integer count;
+    private final MessageFlags changed;
+
+    private MailboxEvent(Type type, String folder, Integer count, MessageFlags changed) {
+        this.type = Objects.requireNonNull(type, "type is null");
+        this.folder = Objects.requireNonNull(folder, "folder is null");
+        this.count = count;
+        this.changed = changed;
+    }
+
+    public static MailboxEvent exists(String folder, int count) {
+        return new MailboxEvent(Type.EXISTS, folder, count, null);
+    }
+
+    public static MailboxEvent expunge(String folder, int count) {
+        return new MailboxEvent(Type.EXPUNGE, folder, count, null);
+    }
+
+    public static MailboxEvent flags(String folder, MessageFlags changed) {
+        return new MailboxEvent(Type.FLAGS, folder, null, Objects.requireNonNull(changed, "changed is null"));
+    }
+
+    public String getType() {
+        return type.getName();
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    public MessageFlags getChanged() {
+        return changed;
+    }
+}
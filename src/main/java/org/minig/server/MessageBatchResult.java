@@ -0,0 +1,67 @@
+package org.minig.server;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.minig.server.resource.config.CompositeIdSerializer;
+import org.minig.server.service.CompositeId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an operation on several messages, one entry per requested id.
+ *
+ * @author Kamill Sokol
+ */
+public class MessageBatchResult {
+
+    private final List<Outcome> results = new ArrayList<>();
+
+    public void succeeded(CompositeId id) {
+        results.add(new Outcome(id.getId(), null));
+    }
+
+    public void failed(CompositeId id, String error) {
+        results.add(new Outcome(id == null ? null : id.getId(), error == null ? "failed" : error));
+    }
+
+    public void merge(MessageBatchResult other) {
+        results.addAll(other.results);
+    }
+
+    public List<Outcome> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public int getSucceeded() {
+        return (int) results.stream().filter(Outcome::isSuccess).count();
+    }
+
+    public int getFailed() {
+        return results.size() - getSucceeded();
+    }
+
+    public static class Outcome {
+
+        private final String id;
+        private final String error;
+
+        private Outcome(String id, String error) {
+            this.id = id;
+            this.error = error;
+        }
+
+        @JsonSerialize(using = CompositeIdSerializer.class)
+        public String getId() {
+            return id;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
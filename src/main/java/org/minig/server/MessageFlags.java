@@ -0,0 +1,50 @@
+package org.minig.server;
+
+import javax.mail.Flags;
+
+import static org.minig.MinigConstants.FORWARDED;
+import static org.minig.MinigConstants.MDN_SENT;
+
+/**
+ * Flags of a message addressed by its UID.
+ *
+ * @author Kamill Sokol
+ */
+public class MessageFlags {
+
+    private final long uid;
+    private final Flags flags;
+
+    public MessageFlags(long uid, Flags flags) {
+        this.uid = uid;
+        this.flags = new Flags(flags);
+    }
+
+    public long getUid() {
+        return uid;
+    }
+
+    public boolean isRead() {
+        return flags.contains(Flags.Flag.SEEN);
+    }
+
+    public boolean isStarred() {
+        return flags.contains(Flags.Flag.FLAGGED);
+    }
+
+    public boolean isAnswered() {
+        return flags.contains(Flags.Flag.ANSWERED);
+    }
+
+    public boolean isDeleted() {
+        return flags.contains(Flags.Flag.DELETED);
+    }
+
+    public boolean isForwarded() {
+        return flags.contains(FORWARDED);
+    }
+
+    public boolean isMdnSent() {
+        return flags.contains(MDN_SENT);
+    }
+}
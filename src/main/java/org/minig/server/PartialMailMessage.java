@@ -1,5 +1,6 @@
 package org.minig.server;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.minig.server.resource.config.CompositeIdSerializer;
 import org.minig.server.service.CompositeId;
@@ -7,8 +8,11 @@ import org.minig.server.service.CompositeId;
 import javax.mail.Address;
 import javax.mail.Flags;
 import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Objects;
@@ -28,6 +32,14 @@ public class PartialMailMessage {
         this.compositeId = new CompositeId(mimeMessage);
     }
 
+    /**
+     * @param mimeMessage a message that does not belong to a folder, e.g. one created from cached headers
+     */
+    public PartialMailMessage(CompositeId compositeId, MimeMessage mimeMessage) {
+        this.mimeMessage = Objects.requireNonNull(mimeMessage, "mimeMessage is null");
+        this.compositeId = Objects.requireNonNull(compositeId, "compositeId is null");
+    }
+
     @JsonSerialize(using = CompositeIdSerializer.class)
     public String getId() {
         return compositeId.getId();
@@ -86,10 +98,37 @@ public class PartialMailMessage {
         return hasFlag(Flags.Flag.DELETED);
     }
 
+    /**
+     * @return RFC822.SIZE of the message
+     */
+    @JsonIgnore
+    public int getSize() throws MessagingException {
+        return mimeMessage.getSize();
+    }
+
+    /**
+     * Parts of IMAP messages are read from the BODYSTRUCTURE, no content is fetched.
+     */
+    public boolean hasAttachments() throws MessagingException, IOException {
+        return mimeMessage.isMimeType("multipart/*") && hasAttachments((Multipart) mimeMessage.getContent());
+    }
+
     protected boolean hasUserFlag(String flag) throws MessagingException {
         return mimeMessage.getFlags().getUserFlags() != null && Arrays.stream(mimeMessage.getFlags().getUserFlags()).anyMatch(flag::equals);
     }
 
+    private static boolean hasAttachments(Multipart multipart) throws MessagingException, IOException {
+        for (int i = 0; i < multipart.getCount(); i++) {
+            Part part = multipart.getBodyPart(i);
+
+            if (part.isMimeType("multipart/*") ? hasAttachments((Multipart) part.getContent())
+                    : Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition()) || (part.getFileName() != null && !Part.INLINE.equalsIgnoreCase(part.getDisposition()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean hasFlag(Flags.Flag expectedFlag) throws MessagingException {
         return Arrays.stream(mimeMessage.getFlags().getSystemFlags()).anyMatch(flag -> flag == expectedFlag);
     }
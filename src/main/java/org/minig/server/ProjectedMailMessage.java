@@ -0,0 +1,73 @@
+package org.minig.server;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.minig.server.resource.config.CompositeIdSerializer;
+import org.minig.server.service.MessageField;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link PartialMailMessage} reduced to the requested fields. Only requested fields are read from the message,
+ * hence only their FETCH items have to be loaded. Property names match those of {@link PartialMailMessage}.
+ *
+ * @author Kamill Sokol
+ */
+public class ProjectedMailMessage {
+
+    private final PartialMailMessage message;
+    private final Set<MessageField> fields;
+
+    public ProjectedMailMessage(PartialMailMessage message, Set<MessageField> fields) {
+        this.message = Objects.requireNonNull(message, "message is null");
+        this.fields = Objects.requireNonNull(fields, "fields is null");
+    }
+
+    @JsonSerialize(using = CompositeIdSerializer.class)
+    public String getId() {
+        return message.getId();
+    }
+
+    public String getMessageId() {
+        return message.getMessageId();
+    }
+
+    public String getFolder() {
+        return message.getFolder();
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getFields() throws MessagingException, IOException {
+        Map<String, Object> projection = new LinkedHashMap<>();
+
+        if (fields.contains(MessageField.SUBJECT)) {
+            projection.put("subject", message.getSubject());
+        }
+        if (fields.contains(MessageField.FROM)) {
+            projection.put("sender", message.getSender());
+        }
+        if (fields.contains(MessageField.DATE)) {
+            projection.put("date", message.getDate());
+        }
+        if (fields.contains(MessageField.FLAGS)) {
+            projection.put("read", message.isRead());
+            projection.put("starred", message.isStarred());
+            projection.put("answered", message.isAnswered());
+            projection.put("forwarded", message.isForwarded());
+            projection.put("deleted", message.isDeleted());
+        }
+        if (fields.contains(MessageField.SIZE)) {
+            projection.put("size", message.getSize());
+        }
+        if (fields.contains(MessageField.HAS_ATTACHMENTS)) {
+            projection.put("hasAttachments", message.hasAttachments());
+        }
+
+        return projection;
+    }
+}
@@ -7,28 +7,38 @@ import org.minig.server.resource.exception.ClientIllegalArgumentException;
 import org.minig.server.service.AttachmentService;
 import org.minig.server.service.CompositeAttachmentId;
 import org.minig.server.service.CompositeId;
-import org.springframework.http.HttpHeaders;
+import org.minig.server.service.StagedAttachment;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static java.util.Objects.requireNonNull;
 import static org.minig.MinigConstants.API_VERSION;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpHeaders.RANGE;
 import static org.springframework.http.MediaType.ALL_VALUE;
 
 /**
@@ -45,14 +55,56 @@ public class AttachmentResource {
     }
 
     @GetMapping(value = "{id:.*}", produces = ALL_VALUE)
-    public ResponseEntity<?> downloadAttachment(@Id CompositeAttachmentId id) throws IOException {
+    public void downloadAttachment(@Id CompositeAttachmentId id, ServletWebRequest webRequest) throws IOException {
         MailAttachment attachment = attachmentService.findById(id);
+        HttpServletRequest request = webRequest.getRequest();
+        HttpServletResponse response = webRequest.getResponse();
+        String eTag = attachment.getETag();
+        long lastModified = attachment.getLastModified() == null ? -1 : attachment.getLastModified().getTime();
 
-        HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.add(CONTENT_TYPE, attachment.getMime());
-        httpHeaders.add(CONTENT_DISPOSITION, String.format("%s; filename=\"%s\"", attachment.getDispositionType(), attachment.getFileName()));
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return;
+        }
+
+        response.setHeader(CONTENT_TYPE, attachment.getMime());
+        response.setHeader(CONTENT_DISPOSITION, String.format("%s; filename=\"%s\"", attachment.getDispositionType(), attachment.getFileName()));
+
+        // the decoded size may take another pass over the part, it is computed for range requests only
+        long size = request.getHeader(RANGE) == null ? attachment.getKnownSize() : attachment.getSize();
+        HttpRange range = size < 0 ? null : singleRange(request, eTag, lastModified);
+
+        if (size >= 0) {
+            response.setHeader(ACCEPT_RANGES, "bytes");
+        }
+
+        if (range == null) {
+            if (size >= 0) {
+                response.setContentLengthLong(size);
+            }
+
+            // copied while the folder is still open, the data is streamed from the mail server
+            try (InputStream data = attachment.getData()) {
+                IOUtils.copyLarge(data, response.getOutputStream());
+            }
+            return;
+        }
+
+        long start = range.getRangeStart(size);
+        long end = range.getRangeEnd(size);
 
-        return new ResponseEntity<>(IOUtils.toByteArray(attachment.getData()), httpHeaders, HttpStatus.OK);
+        if (start >= size || start > end) {
+            response.setHeader(CONTENT_RANGE, "bytes */" + size);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setHeader(CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, size));
+        response.setContentLengthLong(end - start + 1);
+
+        try (InputStream data = attachment.getData(start)) {
+            IOUtils.copyLarge(data, response.getOutputStream(), 0, end - start + 1);
+        }
     }
 
     @ResponseStatus(value = HttpStatus.CREATED)
@@ -73,6 +125,36 @@ public class AttachmentResource {
         return map;
     }
 
+    /**
+     * Stages uploaded files until the draft is saved or sent. Returned ids are passed as {@code stagedAttachments}
+     * of the message, so that uploading several files does not rewrite the draft on the IMAP server each time.
+     */
+    @ResponseStatus(value = HttpStatus.CREATED)
+    @PostMapping("staged")
+    @ResponseBody
+    public List<Map<String, Object>> stageAttachments(MultipartRequest files) {
+        List<Map<String, Object>> staged = new ArrayList<>();
+
+        for (MultipartFile multipartFile : files.getFileMap().values()) {
+            StagedAttachment attachment = attachmentService.stageAttachment(new MultipartfileDataSource(multipartFile));
+
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", attachment.getId());
+            map.put("fileName", attachment.getName());
+            map.put("mime", attachment.getContentType());
+            map.put("size", attachment.getSize());
+            staged.add(map);
+        }
+
+        return staged;
+    }
+
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    @DeleteMapping("staged/{stagedId}")
+    public void deleteStagedAttachment(@PathVariable String stagedId) {
+        attachmentService.deleteStagedAttachment(stagedId);
+    }
+
     @DeleteMapping("{id:.*}")
     @ResponseBody
     public Map<String, Object> deleteAttachment(@Id CompositeAttachmentId id) {
@@ -84,4 +166,35 @@ public class AttachmentResource {
         map.put("attachments", attachments);
         return map;
     }
+
+    /**
+     * @return the requested range or {@code null} if the whole content should be sent. Multiple ranges and ranges
+     * that do not satisfy If-Range are answered with the whole content as permitted by RFC 7233.
+     */
+    private static HttpRange singleRange(HttpServletRequest request, String eTag, long lastModified) {
+        List<HttpRange> ranges;
+
+        try {
+            ranges = HttpRange.parseRanges(request.getHeader(RANGE));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (ranges.size() != 1) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(IF_RANGE);
+
+        if (ifRange == null || ifRange.equals(eTag)) {
+            return ranges.get(0);
+        }
+
+        try {
+            long date = request.getDateHeader(IF_RANGE);
+            return lastModified >= 0 && lastModified / 1000 == date / 1000 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package org.minig.server.resource.attachment;
+
+import org.apache.commons.io.IOUtils;
+import org.minig.server.MailAttachment;
+import org.minig.server.resource.Id;
+import org.minig.server.resource.exception.ClientIllegalArgumentException;
+import org.minig.server.service.CompositeAttachmentId;
+import org.minig.server.service.ImageService;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+import static org.minig.MinigConstants.API_VERSION;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.ALL_VALUE;
+
+/**
+ * Inline images of messages, optionally downscaled to the given width.
+ *
+ * @author Kamill Sokol
+ */
+@Controller
+@RequestMapping(value = API_VERSION + "/image")
+public class ImageResource {
+
+    private final ImageService imageService;
+
+    public ImageResource(ImageService imageService) {
+        this.imageService = requireNonNull(imageService, "imageService is null");
+    }
+
+    @GetMapping(value = "{id:.*}", produces = ALL_VALUE)
+    public void image(@Id CompositeAttachmentId id, @RequestParam(required = false) Integer width, ServletWebRequest webRequest) throws IOException {
+        if (width != null && width < 1) {
+            throw new ClientIllegalArgumentException("width must be greater than 0");
+        }
+
+        MailAttachment image = imageService.findImage(id);
+
+        if (width != null) {
+            image = imageService.findThumbnail(image, width);
+        }
+
+        HttpServletResponse response = webRequest.getResponse();
+        String eTag = image.getETag();
+
+        if (eTag != null) {
+            response.setHeader(CACHE_CONTROL, "private, max-age=31536000, immutable");
+
+            if (webRequest.checkNotModified(eTag)) {
+                return;
+            }
+        }
+
+        response.setHeader(CONTENT_TYPE, image.getMime());
+        // images are opened directly by the browser, scripts of an svg image must not run in the origin of the app
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setHeader("Content-Security-Policy", "sandbox");
+
+        long size = image.getSize();
+
+        if (size >= 0) {
+            response.setContentLengthLong(size);
+        }
+
+        try (InputStream data = image.getData()) {
+            IOUtils.copyLarge(data, response.getOutputStream());
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package org.minig.server.resource.folder;
 
 import org.minig.server.MailFolder;
+import org.minig.server.MailFolderList;
 import org.minig.server.resource.Id;
 import org.minig.server.service.FolderService;
+import org.minig.server.service.FolderTree;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -12,9 +15,12 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
 
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+
 @Controller
 @RequestMapping(value = "1", produces = "application/json; charset=UTF-8")
 public class FolderResource {
@@ -22,10 +28,53 @@ public class FolderResource {
     @Autowired
     private FolderService folderService;
 
+    /**
+     * @param counts {@code true} to add message and unread counts, this may cost a STATUS per folder on servers
+     *               without LIST-STATUS once the counts are outdated
+     */
     @RequestMapping(value = "folder", method = RequestMethod.GET)
     @ResponseBody
-    public List<MailFolder> findBySubscribed(@RequestParam(required = false) Boolean subscribed) {
-        return folderService.findBySubscribed(subscribed);
+    public List<MailFolder> findBySubscribed(@RequestParam(required = false) Boolean subscribed,
+                                             @RequestParam(defaultValue = "false") boolean counts, ServletWebRequest webRequest) {
+        FolderTree folderTree = folderService.findFolderTree();
+        List<MailFolder> folders = folderTree.getFolders(subscribed);
+        String eTag = folderTree.getETag(subscribed);
+
+        if (counts) {
+            // cached counts are revalidated without asking the server, outdated ones have to be asked for first
+            if (!folderService.countCachedMessages(folders)) {
+                folderService.countMessages(folders);
+            }
+            eTag = folderTree.getETag(subscribed, folders);
+        }
+
+        // folders may be changed by other clients, the browser has to revalidate every time
+        webRequest.getResponse().setHeader(CACHE_CONTROL, "private, no-cache");
+
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return folders;
+    }
+
+    /**
+     * Lists the direct children of a folder one page at a time, an empty parent lists the top level folders.
+     *
+     * @param counts {@code true} to add message and unread counts of the returned page
+     */
+    @RequestMapping(value = "folder", method = RequestMethod.GET, params = "parent")
+    @ResponseBody
+    public MailFolderList findChildren(@RequestParam String parent, @RequestParam(defaultValue = "0") int page,
+                                       @RequestParam(value = "page_length", defaultValue = "100") int pageLength,
+                                       @RequestParam(defaultValue = "false") boolean counts) {
+        Page<MailFolder> children = folderService.findChildren(parent, page, pageLength);
+
+        if (counts) {
+            folderService.countMessages(children.getContent());
+        }
+
+        return new MailFolderList(children.getContent(), children.getNumber(), children.getTotalElements());
     }
 
     @RequestMapping(value = "folder/**", method = RequestMethod.GET)
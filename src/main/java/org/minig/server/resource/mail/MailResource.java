@@ -1,29 +1,56 @@
 package org.minig.server.resource.mail;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.minig.server.FolderChanges;
 import org.minig.server.FullMailMessage;
 import org.minig.server.MailMessage;
 import org.minig.server.MailMessageList;
+import org.minig.server.MailThread;
+import org.minig.server.MessageBatchResult;
 import org.minig.server.PartialMailMessage;
+import org.minig.server.ProjectedMailMessage;
 import org.minig.server.resource.Id;
+import org.minig.server.resource.exception.ClientIllegalArgumentException;
 import org.minig.server.service.CompositeId;
+import org.minig.server.service.MessageField;
+import org.minig.server.service.MessageQuery;
+import org.minig.server.service.MessageSort;
 import org.minig.server.service.mail.MailService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import static org.minig.MinigConstants.API_VERSION;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.MediaType.TEXT_HTML_VALUE;
 
@@ -31,14 +58,27 @@ import static org.springframework.http.MediaType.TEXT_HTML_VALUE;
 @RequestMapping(value = API_VERSION + "/message")
 class MailResource {
 
+    private static final String HTML_BODY_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
     @Autowired
     private MailService mailService;
 
+    @Autowired
+    private RequestMappingHandlerAdapter handlerAdapter;
+
     @GetMapping({"", "/"})
     public Map<String, Object> findMessagesByFolder(@RequestParam String folder, @RequestParam(defaultValue = "0") int page,
-                                                    @RequestParam(value = "page_length", defaultValue = "10") int pageLength) {
+                                                    @RequestParam(value = "page_length", defaultValue = "10") int pageLength,
+                                                    @RequestParam(required = false) String sort,
+                                                    @RequestParam(defaultValue = "desc") String order) {
 
-        Page<PartialMailMessage> messagesByFolder = mailService.findMessagesByFolder(folder, page, pageLength);
+        Page<PartialMailMessage> messagesByFolder;
+
+        if (sort == null) {
+            messagesByFolder = mailService.findMessagesByFolder(folder, page, pageLength);
+        } else {
+            messagesByFolder = mailService.findMessagesByFolder(folder, page, pageLength, toMessageSort(sort), !"asc".equalsIgnoreCase(order));
+        }
 
         // maintain API compatibility
         Map<String, Object> response = new HashMap<>();
@@ -50,9 +90,105 @@ class MailResource {
         return response;
     }
 
+    /**
+     * Same as {@link #findMessagesByFolder(String, int, int, String, String)} with entries reduced to the given
+     * comma separated fields, e.g. {@code fields=subject,from,date,flags,size,hasAttachments}. Only the FETCH items
+     * these fields need are requested. Entries are written while later chunks of the page are still being fetched.
+     */
+    @GetMapping(value = {"", "/"}, params = "fields")
+    public void findMessagesByFolder(@RequestParam String folder, @RequestParam(defaultValue = "0") int page,
+                                     @RequestParam(value = "page_length", defaultValue = "10") int pageLength,
+                                     @RequestParam(required = false) String sort,
+                                     @RequestParam(defaultValue = "desc") String order,
+                                     @RequestParam String fields, HttpServletResponse response) throws IOException {
+        Set<MessageField> messageFields = toMessageFields(fields);
+        MessageSort messageSort = sort == null ? null : toMessageSort(sort);
+
+        response.setContentType(APPLICATION_JSON_UTF8_VALUE);
+
+        // nothing is flushed before the first chunk, earlier failures are answered by the exception handlers. A failure
+        // after the first chunk can not change the committed status anymore and leaves the client with incomplete JSON
+        JsonGenerator generator = objectMapper().getFactory().createGenerator(response.getOutputStream());
+        generator.writeStartObject();
+        generator.writeNumberField("page", page);
+        generator.writeArrayFieldStart("mailList");
+
+        long fullLength;
+
+        if (messageSort == null) {
+            fullLength = mailService.findMessagesByFolder(folder, page, pageLength, messageFields, chunk -> writeChunk(generator, chunk, messageFields));
+        } else {
+            Page<PartialMailMessage> messages = mailService.findMessagesByFolder(folder, page, pageLength, messageSort, !"asc".equalsIgnoreCase(order), messageFields);
+            writeChunk(generator, messages.getContent(), messageFields);
+            fullLength = messages.getTotalElements();
+        }
+
+        generator.writeEndArray();
+        generator.writeNumberField("fullLength", fullLength);
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    @GetMapping("thread")
+    public Map<String, Object> findThreadsByFolder(@RequestParam String folder, @RequestParam(defaultValue = "0") int page,
+                                                   @RequestParam(value = "page_length", defaultValue = "10") int pageLength) {
+
+        Page<MailThread> threadsByFolder = mailService.findThreadsByFolder(folder, page, pageLength);
+        Map<String, Object> response = new HashMap<>();
+
+        response.put("fullLength", threadsByFolder.getTotalElements());
+        response.put("page", threadsByFolder.getNumber());
+        response.put("threadList", threadsByFolder.getContent());
+
+        return response;
+    }
+
+    @GetMapping("search")
+    public Map<String, Object> searchMessagesByFolder(@RequestParam String folder, @RequestParam(required = false) String q,
+                                                      @RequestParam(required = false) String subject,
+                                                      @RequestParam(required = false) String from,
+                                                      @RequestParam(required = false) String body,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date since,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date before,
+                                                      @RequestParam(defaultValue = "0") int page,
+                                                      @RequestParam(value = "page_length", defaultValue = "10") int pageLength) {
+
+        MessageQuery query = new MessageQuery(q, subject, from, body, since, before);
+
+        if (query.isEmpty()) {
+            throw new ClientIllegalArgumentException("no search criteria given");
+        }
+
+        Page<PartialMailMessage> messages = mailService.searchMessagesByFolder(folder, query, page, pageLength);
+        Map<String, Object> response = new HashMap<>();
+
+        response.put("fullLength", messages.getTotalElements());
+        response.put("page", messages.getNumber());
+        response.put("mailList", messages.getContent());
+
+        return response;
+    }
+
+    @GetMapping("sync")
+    public FolderChanges findChangesByFolder(@RequestParam String folder, @RequestParam(required = false) String token) {
+        return mailService.findChangesByFolder(folder, token);
+    }
+
     @GetMapping(value = "{id:.*}/html", produces = TEXT_HTML_VALUE)
-    public String htmlBody(@Id CompositeId id) {
-        return mailService.findHtmlBodyByCompositeId(id);
+    public ResponseEntity<String> htmlBody(@Id CompositeId id, @RequestHeader HttpHeaders headers) {
+        String eTag = mailService.findHtmlBodyETag(id);
+
+        if (eTag == null) {
+            return ResponseEntity.ok(mailService.findHtmlBodyByCompositeId(id));
+        }
+
+        if (headers.getIfNoneMatch().contains(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).header(CACHE_CONTROL, HTML_BODY_CACHE_CONTROL).build();
+        }
+
+        // headers are set on success only, errors must not be cached
+        String html = mailService.findHtmlBodyByCompositeId(id);
+        return ResponseEntity.ok().eTag(eTag).header(CACHE_CONTROL, HTML_BODY_CACHE_CONTROL).body(html);
     }
 
     @GetMapping("{id:.*}")
@@ -72,8 +208,8 @@ class MailResource {
     }
 
     @PutMapping("flag")
-    public void updateMessages(@RequestBody MailMessageList messageList) {
-        mailService.updateMessagesFlags(messageList);
+    public MessageBatchResult updateMessages(@RequestBody MailMessageList messageList) {
+        return mailService.updateMessagesFlags(messageList);
     }
 
     @PutMapping("copy")
@@ -82,13 +218,13 @@ class MailResource {
     }
 
     @PutMapping("move")
-    public void moveMessagesToFolder(@RequestBody MessageCopyOrMoveRequest request) {
-        mailService.moveMessagesToFolder(request.getMessageIdList(), request.getFolder());
+    public MessageBatchResult moveMessagesToFolder(@RequestBody MessageCopyOrMoveRequest request) {
+        return mailService.moveMessagesToFolder(request.getMessageIdList(), request.getFolder());
     }
 
     @PutMapping("delete")
-    public void deleteMessagesToFolder(@RequestBody DeleteMessageRequest request) {
-        mailService.deleteMessages(request.getMessageIdList());
+    public MessageBatchResult deleteMessagesToFolder(@RequestBody DeleteMessageRequest request) {
+        return mailService.deleteMessages(request.getMessageIdList());
     }
 
     @ResponseStatus(value = HttpStatus.CREATED)
@@ -104,4 +240,55 @@ class MailResource {
         CompositeId updateDraftMessage = mailService.updateDraftMessage(message);
         return mailService.findMessage(updateDraftMessage);
     }
+
+    private static Set<MessageField> toMessageFields(String fields) {
+        Set<MessageField> messageFields = EnumSet.noneOf(MessageField.class);
+
+        for (String field : fields.split(",")) {
+            if (field.trim().isEmpty()) {
+                continue;
+            }
+
+            try {
+                messageFields.add(MessageField.of(field));
+            } catch (IllegalArgumentException e) {
+                throw new ClientIllegalArgumentException(e.getMessage());
+            }
+        }
+
+        return messageFields;
+    }
+
+    /**
+     * @return the mapper of the JSON message converter, so that streamed lists look like every other response
+     */
+    private ObjectMapper objectMapper() {
+        for (HttpMessageConverter<?> converter : handlerAdapter.getMessageConverters()) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                return ((MappingJackson2HttpMessageConverter) converter).getObjectMapper();
+            }
+        }
+        throw new IllegalStateException("no JSON message converter configured");
+    }
+
+    private static void writeChunk(JsonGenerator generator, List<PartialMailMessage> chunk, Set<MessageField> fields) {
+        try {
+            for (PartialMailMessage message : chunk) {
+                generator.writeObject(new ProjectedMailMessage(message, fields));
+            }
+
+            // hands the chunk to the client before the next one is fetched
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageSort toMessageSort(String sort) {
+        try {
+            return MessageSort.valueOf(sort.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new ClientIllegalArgumentException("unknown sort " + sort);
+        }
+    }
 }
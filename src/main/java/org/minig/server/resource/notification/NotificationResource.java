@@ -0,0 +1,129 @@
+package org.minig.server.resource.notification;
+
+import org.minig.server.MailboxEvent;
+import org.minig.server.service.MailboxWatcher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static org.minig.MinigConstants.API_VERSION;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+/**
+ * Server-Sent Events of the inbox of the current user. All tabs of a user share one IMAP IDLE connection. Events
+ * are named after {@link MailboxEvent#getType()}. The stream ends after {@code minig.idle.emitter-timeout} seconds,
+ * EventSource reconnects on its own. Events are written from a separate thread in the order they arrived, a slow
+ * client never holds up the javamail event thread.
+ *
+ * @author Kamill Sokol
+ */
+@Controller
+@RequestMapping(value = API_VERSION + "/notification")
+public class NotificationResource implements DisposableBean {
+
+    private final MailboxWatcher mailboxWatcher;
+    private final long timeout;
+    private final ExecutorService executor;
+
+    public NotificationResource(MailboxWatcher mailboxWatcher, @Value("${minig.idle.emitter-timeout:600}") long timeoutSeconds) {
+        this.mailboxWatcher = requireNonNull(mailboxWatcher, "mailboxWatcher is null");
+        this.timeout = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "notification-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @GetMapping(produces = "text/event-stream")
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeout);
+        MailboxWatcher.Subscription subscription = mailboxWatcher.subscribe(new EventStream(emitter));
+
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        return emitter;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues the events of one client and sends them one after another on the executor.
+     */
+    private final class EventStream implements Consumer<MailboxEvent>, Runnable {
+
+        private final Queue<MailboxEvent> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final SseEmitter emitter;
+
+        private EventStream(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void accept(MailboxEvent event) {
+            pending.add(event);
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            MailboxEvent event;
+
+            while ((event = pending.poll()) != null) {
+                send(event);
+            }
+
+            scheduled.set(false);
+
+            // an event queued after the last poll but before the flag was reset
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                pending.clear();
+            }
+        }
+
+        private void send(MailboxEvent event) {
+            try {
+                emitter.send(SseEmitter.event().name(event.getType()).data(event, APPLICATION_JSON));
+            } catch (IOException e) {
+                // client is gone, completion cancels the subscription
+                pending.clear();
+                emitter.completeWithError(e);
+            } catch (IllegalStateException e) {
+                // completed in the meantime, the subscription is cancelled already
+                pending.clear();
+            }
+        }
+    }
+}
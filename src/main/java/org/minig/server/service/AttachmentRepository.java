@@ -1,9 +1,13 @@
 package org.minig.server.service;
 
+import com.sun.mail.imap.AppendUID;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
 import org.minig.server.MailAttachment;
 import org.minig.server.service.impl.MailContext;
 import org.minig.server.service.impl.helper.mime.Mime4jAttachment;
 import org.minig.server.service.impl.helper.mime.Mime4jMessage;
+import org.minig.server.service.impl.helper.mime.StreamingDraft;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
@@ -11,19 +15,30 @@ import javax.activation.DataSource;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.search.MessageIDTerm;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static org.minig.server.service.impl.helper.mime.PartUtils.contentId;
+import static org.minig.server.service.impl.helper.mime.PartUtils.fileName;
+
 @Component
 public class AttachmentRepository {
 
     private final MailContext mailContext;
+    private final MessageResolver messageResolver;
 
-    public AttachmentRepository(MailContext mailContext) {
+    public AttachmentRepository(MailContext mailContext, MessageResolver messageResolver) {
         this.mailContext = mailContext;
+        this.messageResolver = messageResolver;
     }
 
     public List<MailAttachment> readMetadata(CompositeId id) {
@@ -42,7 +57,7 @@ public class AttachmentRepository {
 
         try {
             Folder folder = mailContext.getFolder(id.getFolder());
-            Message[] search = folder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] search = messageResolver.resolve(folder, id);
 
             if (search != null && search[0] != null) {
                 Mime4jAttachment attachment = new Mime4jMessage(search[0]).getAttachment(id.getFileName());
@@ -59,28 +74,66 @@ public class AttachmentRepository {
         throw new NotFoundException();
     }
 
+    /**
+     * Locates an attachment in the part tree of the message without loading the message. For IMAP messages the tree
+     * comes from the BODYSTRUCTURE and the returned data streams the decoded section from the server in chunks of
+     * {@code mail.imap.fetchsize} bytes, so the attachment is never held in memory as a whole.
+     *
+     * @return the attachment or {@link Optional#empty()} if no attachment or inline part carries the requested name
+     */
+    public Optional<MailAttachment> findAttachment(CompositeAttachmentId id) {
+        Assert.notNull(id);
+
+        try {
+            Folder folder = mailContext.getFolder(id.getFolder());
+            Message[] messages = messageResolver.resolve(folder, id);
+
+            if (messages.length == 0 || messages[0] == null) {
+                throw new NotFoundException();
+            }
+
+            return findPart(messages[0], messages[0], "", id.getFileName());
+        } catch (MessagingException | IOException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends a copy of a draft with an additional attachment. The copy carries the flags of the draft, the draft
+     * itself is left untouched.
+     *
+     * @return the id of the copy, with UID if the server supports UIDPLUS
+     */
     public CompositeId appendAttachment(CompositeId compositeId, DataSource dataSource) {
         Assert.notNull(compositeId);
         Assert.notNull(dataSource);
 
         try {
             Folder mailFolder = mailContext.getFolder(compositeId.getFolder());
-            Message[] messages = mailFolder.search(new MessageIDTerm(compositeId.getMessageId()));
+            Message[] messages = messageResolver.resolve(mailFolder, compositeId);
 
             if (messages == null || messages.length != 1) {
                 throw new RepositoryException(String.format("no message or no unique message found for %s", compositeId.getMessageId()));
             }
 
-            Mime4jMessage mime4jMessage = new Mime4jMessage(messages[0]);
-            mime4jMessage.addAttachment(dataSource);
-            Message mimeMessage = mime4jMessage.toMessage();
+            StreamingDraft draft = new StreamingDraft((MimeMessage) messages[0]);
+            draft.addAttachment(dataSource);
+            MimeMessage mimeMessage = draft.toMessage();
+            String messageId = mimeMessage.getMessageID();
+            AppendUID appendUID = null;
 
-            mimeMessage.saveChanges();
+            if (mailFolder instanceof IMAPFolder) {
+                appendUID = ((IMAPFolder) mailFolder).appendUIDMessages(new Message[]{mimeMessage})[0];
+            } else {
+                mailFolder.appendMessages(new Message[]{mimeMessage});
+            }
 
-            mailFolder.appendMessages(new Message[]{mimeMessage});
             mailFolder.close(false);
 
-            return new CompositeId(compositeId.getFolder(), mimeMessage.getHeader("Message-ID")[0]);
+            if (appendUID != null) {
+                return new CompositeId(compositeId.getFolder(), messageId, appendUID.uidvalidity, appendUID.uid);
+            }
+            return new CompositeId(compositeId.getFolder(), messageId);
         } catch (MessagingException exception) {
             throw new RepositoryException(exception.getMessage(), exception);
         }
@@ -95,6 +148,44 @@ public class AttachmentRepository {
         return mime4jMessage.getAttachments();
     }
 
+    private static Optional<MailAttachment> findPart(Message message, Part part, String section, String name) throws MessagingException, IOException {
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+
+            for (int i = 0; i < multipart.getCount(); i++) {
+                String childSection = section.isEmpty() ? String.valueOf(i + 1) : section + "." + (i + 1);
+                Optional<MailAttachment> found = findPart(message, multipart.getBodyPart(i), childSection, name);
+
+                if (found.isPresent()) {
+                    return found;
+                }
+            }
+
+            return Optional.empty();
+        }
+
+        // same naming as Mime4jAttachment, attachments by file name and inline parts by content id
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition()) && name.equals(fileName(part))) {
+            return Optional.of(toMailAttachment(message, part, section));
+        }
+        if (Part.INLINE.equalsIgnoreCase(part.getDisposition()) && name.equals(contentId(part))) {
+            return Optional.of(toMailAttachment(message, part, section));
+        }
+
+        return Optional.empty();
+    }
+
+    private static MailAttachment toMailAttachment(Message message, Part part, String section) throws MessagingException, IOException {
+        String disposition = part.getDisposition().toLowerCase(Locale.ENGLISH);
+        String contentId = contentId(part);
+        String name = Part.ATTACHMENT.equals(disposition) ? fileName(part) : contentId;
+        String mimeType = new ContentType(part.getContentType()).getBaseType().toLowerCase(Locale.ENGLISH);
+        CompositeAttachmentId id = new CompositeAttachmentId(new CompositeId((MimeMessage) message), name);
+        IMAPMessage imapMessage = message instanceof IMAPMessage ? (IMAPMessage) message : null;
+
+        return new MimePartAttachment(id, mimeType, contentId, disposition, part, imapMessage, section.isEmpty() ? "1" : section, message.getReceivedDate());
+    }
+
     private Mime4jMessage readInternal(CompositeId id) {
         Assert.notNull(id);
 
@@ -104,7 +195,7 @@ public class AttachmentRepository {
                 return null;
             }
 
-            Message[] search = folder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] search = messageResolver.resolve(folder, id);
             if (search != null && search.length > 0 && search[0] != null) {
                 return new Mime4jMessage(search[0]);
             }
@@ -10,6 +10,7 @@ import javax.activation.DataSource;
 import javax.mail.internet.MimeMessage;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
 
@@ -19,11 +20,14 @@ public class AttachmentService {
     private final MailRepository mailRepository;
     private final AttachmentRepository attachmentRepository;
     private final FolderRepository folderRepository;
+    private final StagedAttachmentStore stagedAttachmentStore;
 
-    public AttachmentService(MailRepository mailRepository, AttachmentRepository attachmentRepository, FolderRepository folderRepository) {
+    public AttachmentService(MailRepository mailRepository, AttachmentRepository attachmentRepository, FolderRepository folderRepository,
+                             StagedAttachmentStore stagedAttachmentStore) {
         this.mailRepository = requireNonNull(mailRepository, "mailRepository is null");
         this.attachmentRepository = requireNonNull(attachmentRepository, "attachmentRepository is null");
         this.folderRepository = requireNonNull(folderRepository, "folderRepository is null");
+        this.stagedAttachmentStore = requireNonNull(stagedAttachmentStore, "stagedAttachmentStore is null");
     }
 
     public List<MailAttachment> findAttachments(CompositeId id) {
@@ -39,6 +43,13 @@ public class AttachmentService {
     }
 
     public MailAttachment findById(CompositeAttachmentId id) {
+        Optional<MailAttachment> attachment = attachmentRepository.findAttachment(id);
+
+        if (attachment.isPresent()) {
+            return attachment.get();
+        }
+
+        // attached messages are only known to the mime4j model
         MimeMessage mimeMessage = mailRepository.findByCompositeId(id).orElseThrow(NotFoundException::new);
         return new Mime4jMessage(mimeMessage).getAttachment(id).map(MailAttachment::new).orElseThrow(NotFoundException::new);
     }
@@ -51,29 +62,27 @@ public class AttachmentService {
             throw new ServiceException("");
         }
 
+        // the new draft already carries the flags of the old one
         CompositeId appendAttachment = attachmentRepository.appendAttachment(attachmentId, dataSource);
-
-        MailMessage oldMessage = mailRepository.read(attachmentId);
-        MailMessage newMessage = mailRepository.read(appendAttachment);
-
-        //TODO check if all flags are written back
-        newMessage.setAnswered(oldMessage.getAnswered());
-        newMessage.setAskForDispositionNotification(oldMessage.getAskForDispositionNotification());
-        newMessage.setDeleted(oldMessage.getDeleted());
-        newMessage.setDispositionNotification(oldMessage.getDispositionNotification());
-        newMessage.setForwarded(oldMessage.getForwarded());
-        newMessage.setHighPriority(oldMessage.getHighPriority());
-        newMessage.setMdnSent(oldMessage.getMdnSent());
-        newMessage.setRead(oldMessage.getRead());
-        newMessage.setReceipt(oldMessage.getReceipt());
-        newMessage.setStarred(oldMessage.getStarred());
-
-        mailRepository.updateFlags(newMessage);
         mailRepository.delete(attachmentId);
 
         return appendAttachment;
     }
 
+    /**
+     * Keeps an upload on local disk until the draft is saved or sent with the id of the returned attachment in
+     * {@link MailMessage#getStagedAttachments()}.
+     */
+    public StagedAttachment stageAttachment(DataSource dataSource) {
+        Assert.notNull(dataSource);
+        return stagedAttachmentStore.stage(dataSource);
+    }
+
+    public void deleteStagedAttachment(String id) {
+        Assert.hasText(id);
+        stagedAttachmentStore.remove(id);
+    }
+
     public CompositeId deleteAttachment(CompositeAttachmentId attachmentId) {
         Assert.notNull(attachmentId);
 
@@ -0,0 +1,218 @@
+package org.minig.server.service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Map that evicts least recently used entries once the weight of all values exceeds the maximum weight. Hits and
+ * misses of {@link #get(Key)} are counted for the JMX attributes of the caches built on top of it. Evicted entries
+ * are handed to the eviction listener outside of the lock, all other removals are reported to the caller.
+ *
+ * @author Kamill Sokol
+ */
+final class BoundedLruCache<V> {
+
+    private final Map<Key, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<Key, V> evictionListener;
+    private long weight;
+    private long hits;
+    private long misses;
+
+    /**
+     * Bounded by the number of entries.
+     */
+    BoundedLruCache(long maxEntries) {
+        this(maxEntries, value -> 1);
+    }
+
+    BoundedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this(maxWeight, weigher, (key, value) -> {});
+    }
+
+    BoundedLruCache(long maxWeight, ToLongFunction<V> weigher, BiConsumer<Key, V> evictionListener) {
+        this.maxWeight = maxWeight;
+        this.weigher = Objects.requireNonNull(weigher, "weigher is null");
+        this.evictionListener = Objects.requireNonNull(evictionListener, "evictionListener is null");
+    }
+
+    /**
+     * @return the value or {@code null} if unknown
+     */
+    V get(Key key) {
+        return get(key, value -> true);
+    }
+
+    /**
+     * @param valid whether a value may still be used, an invalid value is removed and counted as miss
+     * @return the value or {@code null} if unknown or invalid
+     */
+    synchronized V get(Key key, Predicate<V> valid) {
+        V value = entries.get(key);
+
+        if (value != null && !valid.test(value)) {
+            remove(key, value);
+            value = null;
+        }
+
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the replaced value or {@code null}
+     */
+    V put(Key key, V value) {
+        Objects.requireNonNull(value, "value is null");
+
+        V previous;
+        List<Map.Entry<Key, V>> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            previous = entries.put(key, value);
+
+            if (previous != null) {
+                weight -= weigher.applyAsLong(previous);
+            }
+
+            weight += weigher.applyAsLong(value);
+
+            Iterator<Map.Entry<Key, V>> iterator = entries.entrySet().iterator();
+
+            while (weight > maxWeight && iterator.hasNext()) {
+                Map.Entry<Key, V> eldest = iterator.next();
+                weight -= weigher.applyAsLong(eldest.getValue());
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest));
+                iterator.remove();
+            }
+        }
+
+        evicted.forEach(entry -> evictionListener.accept(entry.getKey(), entry.getValue()));
+        return previous;
+    }
+
+    synchronized V remove(Key key) {
+        V removed = entries.remove(key);
+
+        if (removed != null) {
+            weight -= weigher.applyAsLong(removed);
+        }
+
+        return removed;
+    }
+
+    synchronized boolean remove(Key key, V value) {
+        if (entries.remove(key, value)) {
+            weight -= weigher.applyAsLong(value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the removed values
+     */
+    synchronized List<V> removeIf(Predicate<Key> filter) {
+        List<V> removed = new ArrayList<>();
+        Iterator<Map.Entry<Key, V>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Key, V> entry = iterator.next();
+
+            if (filter.test(entry.getKey())) {
+                weight -= weigher.applyAsLong(entry.getValue());
+                removed.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * @return the removed values
+     */
+    synchronized List<V> clear() {
+        List<V> removed = new ArrayList<>(entries.values());
+        entries.clear();
+        weight = 0;
+        return removed;
+    }
+
+    synchronized List<V> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    long getMaxWeight() {
+        return maxWeight;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Key of an entry of a user, equal to another key of the same user with equal parts. Keys of message content
+     * carry the UIDVALIDITY and UID of the message. The content of a message never changes under the same
+     * UIDVALIDITY and UID, entries under such a key are never invalidated and only age out.
+     */
+    static final class Key {
+
+        private final String user;
+        private final Object[] parts;
+
+        Key(String user, Object... parts) {
+            this.user = user;
+            this.parts = parts;
+        }
+
+        String getUser() {
+            return user;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return Objects.equals(user, that.user) && Arrays.equals(parts, that.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(user) + Arrays.hashCode(parts);
+        }
+
+        @Override
+        public String toString() {
+            return user + Arrays.toString(parts);
+        }
+    }
+}
@@ -17,6 +17,12 @@ public class CompositeAttachmentId extends CompositeId {
         buildId();
     }
 
+    public CompositeAttachmentId(CompositeId compositeId, String fileName) {
+        super(compositeId.getFolder(), compositeId.getMessageId(), compositeId.getUidValidity(), compositeId.getUid());
+        this.fileName = fileName;
+        buildId();
+    }
+
     public String getFileName() {
         return fileName;
     }
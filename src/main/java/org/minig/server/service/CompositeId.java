@@ -3,11 +3,15 @@ package org.minig.server.service;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.minig.server.resource.config.CompositeIdSerializer;
 
+import javax.mail.Folder;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -20,18 +24,33 @@ public class CompositeId {
 
     static final String SEPARATOR = "|";
 
+    /**
+     * Optional UID reference appended to the Message-ID, modelled after RFC 5092 IMAP URLs.
+     * e.g. {@code INBOX|<id@localhost>;UIDVALIDITY=385759045;UID=20}
+     */
+    private static final Pattern UID_REFERENCE = Pattern.compile("^(.*);UIDVALIDITY=(\\d+);UID=(\\d+)$");
+
     @JsonSerialize(using = CompositeIdSerializer.class)
     protected String id;
     private String messageId;
     private String folder;
+    private long uidValidity = -1;
+    private long uid = -1;
 
     public CompositeId() {
     }
 
     public CompositeId(MimeMessage mimeMessage) {
         try {
-            this.folder = mimeMessage.getFolder().getFullName();
+            Folder messageFolder = mimeMessage.getFolder();
+            this.folder = messageFolder.getFullName();
             this.messageId = mimeMessage.getMessageID();
+
+            if (messageFolder instanceof UIDFolder && messageFolder.isOpen()) {
+                UIDFolder uidFolder = (UIDFolder) messageFolder;
+                this.uidValidity = uidFolder.getUIDValidity();
+                this.uid = uidFolder.getUID(mimeMessage);
+            }
         } catch (MessagingException exception) {
             throw new IllegalArgumentException(exception.getMessage(), exception);
         }
@@ -47,6 +66,14 @@ public class CompositeId {
         buildId();
     }
 
+    public CompositeId(String folder, String messageId, long uidValidity, long uid) {
+        this.folder = folder;
+        this.messageId = messageId;
+        this.uidValidity = uidValidity;
+        this.uid = uid;
+        buildId();
+    }
+
     public String getId() {
         buildId();
         return id;
@@ -67,6 +94,21 @@ public class CompositeId {
         return folder;
     }
 
+    /**
+     * @return {@code true} if this id carries an UIDVALIDITY/UID pair which allows to address the message without a SEARCH
+     */
+    public boolean hasUid() {
+        return uidValidity > 0 && uid > 0;
+    }
+
+    public long getUidValidity() {
+        return uidValidity;
+    }
+
+    public long getUid() {
+        return uid;
+    }
+
     public void setFolder(String folder) {
         if (folder != null) {
             this.folder = folder;
@@ -90,7 +132,16 @@ public class CompositeId {
         String[] split = decodedId.split("\\" + SEPARATOR);
 
         if (split.length > 1) {
-            messageId = split[1];
+            Matcher matcher = UID_REFERENCE.matcher(split[1]);
+
+            if (matcher.matches()) {
+                messageId = matcher.group(1);
+                uidValidity = Long.parseLong(matcher.group(2));
+                uid = Long.parseLong(matcher.group(3));
+            } else {
+                messageId = split[1];
+            }
+
             folder = split[0];
             buildId();
         }
@@ -102,10 +153,17 @@ public class CompositeId {
 
     protected void buildId() {
         if (id == null && folder != null && messageId != null) {
-            id = folder + SEPARATOR + messageId;
+            id = folder + SEPARATOR + messageIdWithUidReference();
         }
     }
 
+    private String messageIdWithUidReference() {
+        if (hasUid()) {
+            return messageId + ";UIDVALIDITY=" + uidValidity + ";UID=" + uid;
+        }
+        return messageId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,8 +1,16 @@
 package org.minig.server.service;
 
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.BASE64MailboxEncoder;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.Status;
 import org.minig.server.MailFolder;
 import org.minig.server.service.impl.MailContext;
 import org.minig.server.service.impl.helper.FolderMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
@@ -11,11 +19,20 @@ import javax.mail.Folder;
 import javax.mail.MessagingException;
 import javax.mail.Store;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 public class FolderRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(FolderRepository.class);
+
+    private static final String[] STATUS_ITEMS = {"MESSAGES", "UNSEEN"};
+
     @Autowired
     private MailContext mailContext;
 
@@ -26,20 +43,24 @@ public class FolderRepository {
         return findBySubscribed(null);
     }
 
+    /**
+     * Lists all folders with one LIST and one LSUB instead of asking the server for the subscription of every folder.
+     */
     public List<MailFolder> findBySubscribed(Boolean subscribed) {
         try {
-            Store store = mailContext.getStore();
+            Folder defaultFolder = mailContext.getStore().getDefaultFolder();
+            Set<String> subscribedFolders = new HashSet<>();
             List<MailFolder> folderList = new ArrayList<MailFolder>();
 
-            for (Folder folder : store.getDefaultFolder().list("*")) {
-                if (subscribed == null) {
-                    MailFolder mailFolder = folderMapper.toMailFolder(folder);
-                    folderList.add(mailFolder);
-                } else {
-                    if (subscribed.equals(folder.isSubscribed())) {
-                        MailFolder mailFolder = folderMapper.toMailFolder(folder);
-                        folderList.add(mailFolder);
-                    }
+            for (Folder folder : defaultFolder.listSubscribed("*")) {
+                subscribedFolders.add(folder.getFullName());
+            }
+
+            for (Folder folder : defaultFolder.list("*")) {
+                boolean isSubscribed = subscribedFolders.contains(folder.getFullName());
+
+                if (subscribed == null || subscribed == isSubscribed) {
+                    folderList.add(folderMapper.toMailFolder(folder, isSubscribed));
                 }
             }
 
@@ -49,17 +70,80 @@ public class FolderRepository {
         }
     }
 
+    /**
+     * Message counts of the given folders without selecting them. A single LIST-STATUS (RFC 5819) is sent if the
+     * server supports it, one STATUS per folder over the same connection otherwise. Folders the server does not
+     * report, e.g. \Noselect folders, are missing in the result.
+     */
+    public Map<String, FolderStatus> findStatus(Collection<String> folders) {
+        Assert.notNull(folders, "folders is null");
+
+        Map<String, FolderStatus> statuses = new HashMap<>();
+
+        if (folders.isEmpty()) {
+            return statuses;
+        }
+
+        try {
+            Store store = mailContext.getStore();
+
+            if (store instanceof IMAPStore && ((IMAPStore) store).hasCapability("LIST-STATUS")) {
+                Map<String, String> byMailboxName = new HashMap<>();
+
+                for (String folder : folders) {
+                    byMailboxName.put(folder, folder);
+                    // in case the server's modified UTF-7 name is not decoded
+                    byMailboxName.put(BASE64MailboxEncoder.encode(folder), folder);
+                }
+
+                for (Status status : listStatus((IMAPFolder) store.getFolder(folders.iterator().next()))) {
+                    String folder = byMailboxName.get(status.mbox);
+
+                    if (folder != null) {
+                        statuses.put(folder, new FolderStatus(status.total, status.unseen));
+                    }
+                }
+
+                return statuses;
+            }
+
+            for (String folder : folders) {
+                try {
+                    statuses.put(folder, status(store.getFolder(folder)));
+                } catch (MessagingException e) {
+                    log.debug("no status for {}. reason {}", folder, e.getMessage());
+                }
+            }
+
+            return statuses;
+        } catch (MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists the direct children of a folder with one LIST "%" and one LSUB "%".
+     *
+     * @param id the parent folder or an empty string for the top level folders
+     */
     public List<MailFolder> findChildren(String id) {
-        Assert.hasLength(id, "id is null");
+        Assert.notNull(id, "id is null");
 
         try {
             Store store = mailContext.getStore();
+            Folder parent = id.isEmpty() ? store.getDefaultFolder() : store.getFolder(id);
+            Set<String> subscribedFolders = new HashSet<>();
             List<MailFolder> folderList = new ArrayList<MailFolder>();
 
-            for (Folder folder : store.getFolder(id).list("%")) {
-                MailFolder mailFolder = folderMapper.toMailFolder(folder);
+            for (Folder folder : parent.listSubscribed("%")) {
+                subscribedFolders.add(folder.getFullName());
+            }
 
-                if (id.equals(mailFolder.getParentFolderId())) {
+            for (Folder folder : parent.list("%")) {
+                MailFolder mailFolder = folderMapper.toMailFolder(folder, subscribedFolders.contains(folder.getFullName()));
+                String parentFolderId = mailFolder.getParentFolderId();
+
+                if (id.isEmpty() ? parentFolderId == null || parentFolderId.isEmpty() : id.equals(parentFolderId)) {
                     folderList.add(mailFolder);
                 }
             }
@@ -106,6 +190,53 @@ public class FolderRepository {
         }
     }
 
+    /**
+     * Moves a folder together with its subfolders and messages into a new parent with a single RENAME, nothing is
+     * copied. Subscriptions are carried over to the new names.
+     *
+     * @return the moved folder or {@code null} if the server rejects the rename, e.g. because the target exists
+     */
+    public MailFolder rename(String id, String parent) {
+        Assert.hasText(id, "id must not be null");
+        Assert.hasText(parent, "parent must not be null");
+
+        Folder source = mailContext.getFolder(id, false);
+        Folder target;
+        List<Folder> subscribed;
+
+        try {
+            target = mailContext.getFolder(parent, false).getFolder(source.getName());
+
+            if (!source.exists() || target.exists()) {
+                return null;
+            }
+
+            subscribed = subscribed(source);
+
+            if (!source.renameTo(target)) {
+                return null;
+            }
+        } catch (MessagingException e) {
+            log.debug("rename of {} to {} rejected. reason {}", id, parent, e.getMessage());
+            return null;
+        }
+
+        try {
+            String sourceName = source.getFullName();
+            String targetName = target.getFullName();
+            Store store = mailContext.getStore();
+
+            for (Folder folder : subscribed) {
+                folder.setSubscribed(false);
+                store.getFolder(targetName + folder.getFullName().substring(sourceName.length())).setSubscribed(true);
+            }
+
+            return folderMapper.toMailFolder(target);
+        } catch (MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+
     public MailFolder read(String folder) {
         Assert.hasText(folder, "folder is null");
 
@@ -176,4 +307,62 @@ public class FolderRepository {
             throw new RepositoryException("delete failed");
         }
     }
+
+    private static List<Folder> subscribed(Folder folder) throws MessagingException {
+        List<Folder> subscribed = new ArrayList<>();
+
+        if (folder.isSubscribed()) {
+            subscribed.add(folder);
+        }
+
+        for (Folder child : folder.listSubscribed("*")) {
+            if (!child.getFullName().equals(folder.getFullName())) {
+                subscribed.add(child);
+            }
+        }
+
+        return subscribed;
+    }
+
+    private static FolderStatus status(Folder folder) throws MessagingException {
+        if (folder instanceof IMAPFolder) {
+            String fullName = folder.getFullName();
+            Status status = (Status) ((IMAPFolder) folder).doCommand(protocol -> protocol.status(fullName, STATUS_ITEMS));
+            return new FolderStatus(status.total, status.unseen);
+        }
+
+        return new FolderStatus(folder.getMessageCount(), folder.getUnreadMessageCount());
+    }
+
+    private static List<Status> listStatus(IMAPFolder folder) throws MessagingException {
+        @SuppressWarnings("unchecked")
+        List<Status> statuses = (List<Status>) folder.doCommand(protocol -> {
+            Response[] responses = protocol.command("LIST \"\" \"*\" RETURN (STATUS (MESSAGES UNSEEN))", null);
+            Response result = responses[responses.length - 1];
+            List<Status> parsed = new ArrayList<>();
+
+            if (result.isOK()) {
+                for (int i = 0; i < responses.length; i++) {
+                    if (!(responses[i] instanceof IMAPResponse)) {
+                        continue;
+                    }
+
+                    IMAPResponse response = (IMAPResponse) responses[i];
+
+                    if (response.keyEquals("STATUS")) {
+                        parsed.add(new Status(response));
+                        responses[i] = null;
+                    } else if (response.keyEquals("LIST")) {
+                        responses[i] = null;
+                    }
+                }
+            }
+
+            protocol.notifyResponseHandlers(responses);
+            protocol.handleResult(result);
+            return parsed;
+        });
+
+        return statuses;
+    }
 }
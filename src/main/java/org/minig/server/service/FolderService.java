@@ -1,11 +1,20 @@
 package org.minig.server.service;
 
+import org.minig.security.MailAuthentication;
 import org.minig.server.MailFolder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+
+import static org.minig.server.util.PageUtils.slice;
 
 @Service
 public class FolderService {
@@ -19,6 +28,15 @@ public class FolderService {
     @Autowired
     private MailRepository mailRepository;
 
+    @Autowired
+    private FolderTreeCache folderTreeCache;
+
+    @Autowired
+    private FolderStatusCache folderStatusCache;
+
+    @Autowired
+    private MailAuthentication mailAuthentication;
+
     public void createFolderInInbox(String folder) {
         createFolderInParent(null, folder);
     }
@@ -40,18 +58,108 @@ public class FolderService {
             throw new ServiceException("no parent folder found");
         }
 
-        return folderRepository.create(parentFolder.getId(), folder);
+        try {
+            return folderRepository.create(parentFolder.getId(), folder);
+        } finally {
+            invalidateFolderTree();
+        }
     }
 
     public List<MailFolder> findBySubscribed(Boolean subscribed) {
-        List<MailFolder> mailFolders = folderRepository.findBySubscribed(subscribed);
+        return findFolderTree().getFolders(subscribed);
+    }
+
+    /**
+     * @return all folders of the current user, served from the {@link FolderTreeCache} if possible
+     */
+    public FolderTree findFolderTree() {
+        String user = mailAuthentication.getEmailAddress();
+        FolderTree folderTree = folderTreeCache.get(user);
+
+        if (folderTree != null) {
+            return folderTree;
+        }
+
+        List<MailFolder> mailFolders = folderRepository.findAll();
 
         for (MailFolder mailFolder : mailFolders) {
             boolean writable = permissionService.writable(mailFolder);
             mailFolder.setEditable(writable);
         }
 
-        return mailFolders;
+        return folderTreeCache.put(user, mailFolders);
+    }
+
+    /**
+     * Sets message and unread counts on the given folders. Counts are served from the {@link FolderStatusCache}
+     * if possible, the remaining folders are asked for in one go.
+     */
+    public void countMessages(List<MailFolder> folders) {
+        Assert.notNull(folders, "folders is null");
+
+        String user = mailAuthentication.getEmailAddress();
+        List<MailFolder> missing = setCachedCounts(user, folders);
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(missing.size());
+
+        for (MailFolder folder : missing) {
+            ids.add(folder.getId());
+        }
+
+        Map<String, FolderStatus> statuses = folderRepository.findStatus(ids);
+
+        for (MailFolder folder : missing) {
+            FolderStatus status = statuses.get(folder.getId());
+
+            if (status != null) {
+                folderStatusCache.put(user, folder.getId(), status);
+                setCounts(folder, status);
+            }
+        }
+    }
+
+    /**
+     * Sets the counts known to the {@link FolderStatusCache} on the given folders without asking the server.
+     *
+     * @return {@code true} if the counts of all folders were known
+     */
+    public boolean countCachedMessages(List<MailFolder> folders) {
+        Assert.notNull(folders, "folders is null");
+
+        return setCachedCounts(mailAuthentication.getEmailAddress(), folders).isEmpty();
+    }
+
+    /**
+     * Lists the direct children of a folder page by page, so that clients can expand large trees one level at a
+     * time. Children are ordered by id and served from the {@link FolderTreeCache} if possible.
+     *
+     * @param parent the parent folder or an empty string for the top level folders
+     */
+    public Page<MailFolder> findChildren(String parent, int page, int pageLength) {
+        Assert.notNull(parent, "parent is null");
+
+        String user = mailAuthentication.getEmailAddress();
+        FolderTree children = folderTreeCache.getChildren(user, parent);
+
+        if (children == null) {
+            List<MailFolder> mailFolders = folderRepository.findChildren(parent);
+            mailFolders.sort(Comparator.comparing(MailFolder::getId));
+
+            for (MailFolder mailFolder : mailFolders) {
+                boolean writable = permissionService.writable(mailFolder);
+                mailFolder.setEditable(writable);
+            }
+
+            children = folderTreeCache.putChildren(user, parent, mailFolders);
+        }
+
+        List<MailFolder> folders = children.getFolders(null);
+        PageRequest pageable = new PageRequest(page, pageLength);
+        return new PageImpl<>(slice(folders, pageable), pageable, folders.size());
     }
 
     public List<MailFolder> findByParent(String parent) {
@@ -64,7 +172,11 @@ public class FolderService {
 
         MailFolder target = folderRepository.read(source.getId());
 
-        if (target != null) {
+        if (target == null) {
+            return;
+        }
+
+        try {
             if (source.getSubscribed() != null) {
                 target.setSubscribed(source.getSubscribed());
             }
@@ -77,6 +189,8 @@ public class FolderService {
                     target.getParentFolderId())) {
                 move(source);
             }
+        } finally {
+            invalidateFolderTree();
         }
     }
 
@@ -98,7 +212,11 @@ public class FolderService {
         MailFolder trash = folderRepository.getTrash();
 
         if (folderToDelete.getParentFolderId().startsWith(trash.getId())) {
-            folderRepository.delete(folderToDelete.getId());
+            try {
+                folderRepository.delete(folderToDelete.getId());
+            } finally {
+                invalidateFolderTree();
+            }
         } else {
             folderToDelete.setParentFolderId(trash.getId());
             updateFolder(folderToDelete);
@@ -106,6 +224,11 @@ public class FolderService {
     }
 
     private void move(MailFolder source) {
+        // RENAME moves the whole subtree on the server, messages are copied only if the server rejects it
+        if (folderRepository.rename(source.getId(), source.getParentFolderId()) != null) {
+            return;
+        }
+
         MailFolder target = folderRepository.create(source.getParentFolderId(),
                 source.getName());
         target.setSubscribed(source.getSubscribed());
@@ -123,4 +246,32 @@ public class FolderService {
         folderRepository.delete(source.getId());
     }
 
+    /**
+     * @return the folders whose counts are not cached
+     */
+    private List<MailFolder> setCachedCounts(String user, List<MailFolder> folders) {
+        List<MailFolder> missing = new ArrayList<>();
+
+        for (MailFolder folder : folders) {
+            FolderStatus status = folderStatusCache.get(user, folder.getId());
+
+            if (status == null) {
+                missing.add(folder);
+            } else {
+                setCounts(folder, status);
+            }
+        }
+
+        return missing;
+    }
+
+    private static void setCounts(MailFolder folder, FolderStatus status) {
+        folder.setMessageCount(status.getMessages());
+        folder.setUnreadMessageCount(status.getUnread());
+    }
+
+    private void invalidateFolderTree() {
+        folderTreeCache.invalidate(mailAuthentication.getEmailAddress());
+    }
+
 }
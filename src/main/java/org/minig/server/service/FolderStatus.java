@@ -0,0 +1,25 @@
+package org.minig.server.service;
+
+/**
+ * Message counts of a folder as reported by STATUS.
+ *
+ * @author Kamill Sokol
+ */
+public final class FolderStatus {
+
+    private final int messages;
+    private final int unread;
+
+    public FolderStatus(int messages, int unread) {
+        this.messages = messages;
+        this.unread = unread;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public int getUnread() {
+        return unread;
+    }
+}
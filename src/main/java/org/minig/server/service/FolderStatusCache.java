@@ -0,0 +1,86 @@
+package org.minig.server.service;
+
+import org.minig.server.service.BoundedLruCache.Key;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps message counts per user and folder for {@code minig.folder-status.ttl} seconds, so that folder listings
+ * in quick succession do not ask the server again. Counts of the inbox are dropped as soon as the
+ * {@link MailboxWatcher} sees a change. Entries of the least recently listed folders are evicted first.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=FolderStatusCache")
+public class FolderStatusCache {
+
+    private final BoundedLruCache<Entry> entries;
+    private final long ttl;
+
+    @Autowired
+    public FolderStatusCache(@Value("${minig.folder-status.max-entries:20000}") int maxEntries,
+                             @Value("${minig.folder-status.ttl:30}") long ttlSeconds) {
+        this.entries = new BoundedLruCache<>(maxEntries);
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * @return the counts of the folder or {@code null} if they are unknown or outdated
+     */
+    public FolderStatus get(String user, String folder) {
+        Entry entry = entries.get(new Key(user, folder), cached -> System.currentTimeMillis() - cached.created < ttl);
+        return entry == null ? null : entry.status;
+    }
+
+    public void put(String user, String folder, FolderStatus status) {
+        Objects.requireNonNull(status, "status is null");
+        entries.put(new Key(user, folder), new Entry(status));
+    }
+
+    public void invalidate(String user, String folder) {
+        entries.remove(new Key(user, folder));
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        entries.clear();
+    }
+
+    @ManagedAttribute(description = "Number of cached folder counts")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Maximum number of cached folder counts")
+    public int getMaxEntries() {
+        return (int) entries.getMaxWeight();
+    }
+
+    @ManagedAttribute(description = "Number of folder counts served from the cache")
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of folder counts that had to be requested")
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    private static final class Entry {
+
+        private final FolderStatus status;
+        private final long created = System.currentTimeMillis();
+
+        private Entry(FolderStatus status) {
+            this.status = status;
+        }
+    }
+}
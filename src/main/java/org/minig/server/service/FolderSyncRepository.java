@@ -0,0 +1,375 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.ResyncData;
+import org.minig.security.MailAuthentication;
+import org.minig.server.FolderChanges;
+import org.minig.server.MessageFlags;
+import org.minig.server.PartialMailMessage;
+import org.minig.server.service.impl.MailContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.mail.FetchProfile;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.event.MailEvent;
+import javax.mail.event.MessageChangedEvent;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.minig.MinigConstants.FORWARDED;
+import static org.minig.MinigConstants.MDN_SENT;
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * Computes the changes of a folder since the state described by a sync token. Servers supporting QRESYNC report
+ * changed flags and vanished UIDs on SELECT. Other servers are diffed against a snapshot of UIDs and flags that is
+ * kept for every handed out token. A token can be used any number of times, its snapshot is dropped once the client
+ * syncs with the token that replaced it, after the configured ttl without use, or least recently used first once
+ * the configured number of messages is exceeded. A dropped token results in a reset.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class FolderSyncRepository {
+
+    private static final int SEEN = 1;
+    private static final int FLAGGED = 1 << 1;
+    private static final int ANSWERED = 1 << 2;
+    private static final int DELETED = 1 << 3;
+    private static final int DRAFT = 1 << 4;
+    private static final int FORWARDED_FLAG = 1 << 5;
+    private static final int MDN_SENT_FLAG = 1 << 6;
+
+    private final MailContext mailContext;
+    private final MailAuthentication mailAuthentication;
+    private final Map<SnapshotKey, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong snapshotSequence = new AtomicLong();
+    private final long maxSnapshotMessages;
+    private final long snapshotTtl;
+    private long snapshotMessages;
+
+    @Autowired
+    public FolderSyncRepository(MailContext mailContext, MailAuthentication mailAuthentication,
+                                @Value("${minig.sync.max-snapshot-messages:2000000}") long maxSnapshotMessages,
+                                @Value("${minig.sync.snapshot-ttl:86400}") long snapshotTtl) {
+        this.mailContext = mailContext;
+        this.mailAuthentication = mailAuthentication;
+        this.maxSnapshotMessages = maxSnapshotMessages;
+        this.snapshotTtl = TimeUnit.SECONDS.toMillis(snapshotTtl);
+    }
+
+    public FolderChanges findChanges(String folder, String token) {
+        Objects.requireNonNull(folder, "folder is null");
+
+        return rethrowCheckedAsUnchecked(() -> {
+            SyncToken syncToken = SyncToken.parse(token);
+            Folder storeFolder = mailContext.getFolder(folder, false);
+
+            if (storeFolder == null || !storeFolder.exists()) {
+                throw new NotFoundException();
+            }
+
+            if (storeFolder instanceof IMAPFolder && ((IMAPStore) storeFolder.getStore()).hasCapability("QRESYNC")) {
+                return findChangesByQresync((IMAPFolder) storeFolder, syncToken);
+            }
+
+            if (!storeFolder.isOpen()) {
+                storeFolder.open(Folder.READ_ONLY);
+            }
+
+            return findChangesBySnapshot(storeFolder, syncToken);
+        });
+    }
+
+    private FolderChanges findChangesByQresync(IMAPFolder folder, SyncToken token) throws MessagingException {
+        if (token == null || token.modSeq <= 0) {
+            folder.open(Folder.READ_ONLY);
+            return new FolderChanges(currentToken(folder).toString(), true);
+        }
+
+        List<MailEvent> events = folder.open(Folder.READ_ONLY, new ResyncData(token.uidValidity, token.modSeq));
+
+        if (folder.getUIDValidity() != token.uidValidity) {
+            return new FolderChanges(currentToken(folder).toString(), true);
+        }
+
+        FolderChanges changes = new FolderChanges(currentToken(folder).toString(), false);
+
+        for (MailEvent event : events == null ? new ArrayList<MailEvent>() : events) {
+            if (event instanceof MessageVanishedEvent) {
+                for (long uid : ((MessageVanishedEvent) event).getUIDs()) {
+                    changes.getVanished().add(uid);
+                }
+            } else if (event instanceof MessageChangedEvent) {
+                Message message = ((MessageChangedEvent) event).getMessage();
+                long uid = folder.getUID(message);
+
+                if (uid < token.uidNext) {
+                    changes.getChanged().add(new MessageFlags(uid, message.getFlags()));
+                }
+            }
+        }
+
+        List<Message> added = new ArrayList<>();
+
+        for (Message message : folder.getMessagesByUID(token.uidNext, UIDFolder.LASTUID)) {
+            // n:* always matches the last message
+            if (message != null && folder.getUID(message) >= token.uidNext) {
+                added.add(message);
+            }
+        }
+
+        addMessages(folder, added, changes);
+        return changes;
+    }
+
+    private FolderChanges findChangesBySnapshot(Folder folder, SyncToken token) throws MessagingException {
+        if (!(folder instanceof UIDFolder)) {
+            // without UIDs there is nothing a client could hold on to
+            return new FolderChanges(null, true);
+        }
+
+        UIDFolder uidFolder = (UIDFolder) folder;
+        long uidValidity = uidFolder.getUIDValidity();
+        Message[] messages = folder.getMessages();
+        FetchProfile fp = new FetchProfile();
+        fp.add(UIDFolder.FetchProfileItem.UID);
+        fp.add(FetchProfile.Item.FLAGS);
+        folder.fetch(messages, fp);
+
+        // sequence numbers and UIDs ascend in the same order
+        long[] uids = new long[messages.length];
+        int[] flags = new int[messages.length];
+
+        for (int i = 0; i < messages.length; i++) {
+            uids[i] = uidFolder.getUID(messages[i]);
+            flags[i] = toBits(messages[i].getFlags());
+        }
+
+        String user = mailAuthentication.getEmailAddress();
+        String folderName = folder.getFullName();
+        Snapshot previous = null;
+        Snapshot current;
+
+        synchronized (snapshots) {
+            expireSnapshots();
+
+            if (token != null) {
+                previous = snapshots.get(new SnapshotKey(user, folderName, token.snapshot));
+
+                if (previous != null) {
+                    previous.lastUsed = System.currentTimeMillis();
+                    // the client holds this token, so the token it was handed out for is not used anymore
+                    removeSnapshot(new SnapshotKey(user, folderName, previous.predecessor));
+                }
+            }
+
+            if (previous != null && previous.hasState(uidValidity, uids, flags)) {
+                current = previous;
+            } else {
+                current = new Snapshot(snapshotSequence.incrementAndGet(), previous == null ? 0 : previous.id, uidValidity, uids, flags);
+                snapshots.put(new SnapshotKey(user, folderName, current.id), current);
+                snapshotMessages += uids.length;
+                evictSnapshots();
+            }
+        }
+
+        SyncToken next = new SyncToken(uidValidity, 0, uids.length == 0 ? 1 : uids[uids.length - 1] + 1, current.id);
+
+        if (previous == null || previous.uidValidity != uidValidity || token.uidValidity != uidValidity) {
+            return new FolderChanges(next.toString(), true);
+        }
+
+        FolderChanges changes = new FolderChanges(next.toString(), false);
+        List<Message> added = new ArrayList<>();
+        int p = 0;
+        int c = 0;
+
+        while (p < previous.uids.length || c < uids.length) {
+            if (c == uids.length || (p < previous.uids.length && previous.uids[p] < uids[c])) {
+                changes.getVanished().add(previous.uids[p++]);
+            } else if (p == previous.uids.length || uids[c] < previous.uids[p]) {
+                added.add(messages[c++]);
+            } else {
+                if (previous.flags[p] != flags[c]) {
+                    changes.getChanged().add(new MessageFlags(uids[c], messages[c].getFlags()));
+                }
+                p++;
+                c++;
+            }
+        }
+
+        addMessages(folder, added, changes);
+        return changes;
+    }
+
+    private static void addMessages(Folder folder, List<Message> messages, FolderChanges changes) throws MessagingException {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Message[] added = messages.toArray(new Message[messages.size()]);
+        folder.fetch(added, MailRepository.partialMailProfile());
+
+        for (Message message : added) {
+            changes.getAdded().add(new PartialMailMessage((MimeMessage) message));
+        }
+    }
+
+    private void removeSnapshot(SnapshotKey key) {
+        Snapshot removed = snapshots.remove(key);
+
+        if (removed != null) {
+            snapshotMessages -= removed.uids.length;
+        }
+    }
+
+    private void expireSnapshots() {
+        Iterator<Snapshot> iterator = snapshots.values().iterator();
+        long now = System.currentTimeMillis();
+
+        while (iterator.hasNext()) {
+            Snapshot snapshot = iterator.next();
+
+            // access order, all following snapshots were used later
+            if (now - snapshot.lastUsed < snapshotTtl) {
+                break;
+            }
+
+            snapshotMessages -= snapshot.uids.length;
+            iterator.remove();
+        }
+    }
+
+    private void evictSnapshots() {
+        Iterator<Snapshot> iterator = snapshots.values().iterator();
+
+        // the latest snapshot is always kept
+        while (snapshotMessages > maxSnapshotMessages && snapshots.size() > 1 && iterator.hasNext()) {
+            snapshotMessages -= iterator.next().uids.length;
+            iterator.remove();
+        }
+    }
+
+    private static SyncToken currentToken(IMAPFolder folder) throws MessagingException {
+        return new SyncToken(folder.getUIDValidity(), folder.getHighestModSeq(), folder.getUIDNext(), 0);
+    }
+
+    private static int toBits(Flags flags) {
+        int bits = 0;
+        bits |= flags.contains(Flags.Flag.SEEN) ? SEEN : 0;
+        bits |= flags.contains(Flags.Flag.FLAGGED) ? FLAGGED : 0;
+        bits |= flags.contains(Flags.Flag.ANSWERED) ? ANSWERED : 0;
+        bits |= flags.contains(Flags.Flag.DELETED) ? DELETED : 0;
+        bits |= flags.contains(Flags.Flag.DRAFT) ? DRAFT : 0;
+        bits |= flags.contains(FORWARDED) ? FORWARDED_FLAG : 0;
+        bits |= flags.contains(MDN_SENT) ? MDN_SENT_FLAG : 0;
+        return bits;
+    }
+
+    /**
+     * {@code UIDVALIDITY.HIGHESTMODSEQ.UIDNEXT.SNAPSHOT}, HIGHESTMODSEQ is 0 for snapshot based tokens and SNAPSHOT
+     * is 0 for QRESYNC based tokens.
+     */
+    static final class SyncToken {
+
+        private final long uidValidity;
+        private final long modSeq;
+        private final long uidNext;
+        private final long snapshot;
+
+        SyncToken(long uidValidity, long modSeq, long uidNext, long snapshot) {
+            this.uidValidity = uidValidity;
+            this.modSeq = modSeq;
+            this.uidNext = uidNext;
+            this.snapshot = snapshot;
+        }
+
+        static SyncToken parse(String token) {
+            if (token == null) {
+                return null;
+            }
+
+            String[] split = token.split("\\.");
+
+            if (split.length != 4) {
+                return null;
+            }
+
+            try {
+                return new SyncToken(Long.parseLong(split[0]), Long.parseLong(split[1]), Long.parseLong(split[2]), Long.parseLong(split[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return uidValidity + "." + modSeq + "." + uidNext + "." + snapshot;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long id;
+        private final long predecessor;
+        private final long uidValidity;
+        private final long[] uids;
+        private final int[] flags;
+        private long lastUsed = System.currentTimeMillis();
+
+        private Snapshot(long id, long predecessor, long uidValidity, long[] uids, int[] flags) {
+            this.id = id;
+            this.predecessor = predecessor;
+            this.uidValidity = uidValidity;
+            this.uids = uids;
+            this.flags = flags;
+        }
+
+        private boolean hasState(long uidValidity, long[] uids, int[] flags) {
+            return this.uidValidity == uidValidity && Arrays.equals(this.uids, uids) && Arrays.equals(this.flags, flags);
+        }
+    }
+
+    private static final class SnapshotKey {
+
+        private final String user;
+        private final String folder;
+        private final long id;
+
+        private SnapshotKey(String user, String folder, long id) {
+            this.user = user;
+            this.folder = folder;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SnapshotKey)) return false;
+            SnapshotKey that = (SnapshotKey) o;
+            return id == that.id && Objects.equals(user, that.user) && Objects.equals(folder, that.folder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, folder, id);
+        }
+    }
+}
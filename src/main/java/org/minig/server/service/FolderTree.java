@@ -0,0 +1,85 @@
+package org.minig.server.service;
+
+import org.minig.server.MailFolder;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * All folders of a user as held by the {@link FolderTreeCache}. Folders handed out are copies, the tree itself never
+ * changes. The entity tag is derived from the content, a reloaded but unchanged tree keeps its entity tag.
+ *
+ * @author Kamill Sokol
+ */
+public final class FolderTree {
+
+    private final List<MailFolder> folders;
+    private final String hash;
+
+    public FolderTree(List<MailFolder> folders) {
+        Objects.requireNonNull(folders, "folders is null");
+
+        List<MailFolder> copies = new ArrayList<>(folders.size());
+        StringBuilder content = new StringBuilder(folders.size() * 32);
+
+        for (MailFolder folder : folders) {
+            copies.add(new MailFolder(folder));
+            content.append(folder.getId()).append('\0')
+                    .append(folder.getName()).append('\0')
+                    .append(folder.getParentFolderId()).append('\0')
+                    .append(folder.getSubscribed()).append('\0')
+                    .append(folder.getEditable()).append('\0')
+                    .append(folder.getHasChildren()).append('\n');
+        }
+
+        this.folders = Collections.unmodifiableList(copies);
+        this.hash = DigestUtils.md5DigestAsHex(content.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * @param subscribed {@code null} for all folders
+     */
+    public List<MailFolder> getFolders(Boolean subscribed) {
+        List<MailFolder> result = new ArrayList<>(folders.size());
+
+        for (MailFolder folder : folders) {
+            if (subscribed == null || subscribed.equals(folder.getSubscribed())) {
+                result.add(new MailFolder(folder));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param subscribed {@code null} for all folders
+     */
+    public String getETag(Boolean subscribed) {
+        return "\"" + hash + (subscribed == null ? "" : "-" + subscribed) + "\"";
+    }
+
+    /**
+     * @param subscribed {@code null} for all folders
+     * @param counted folders of this tree carrying message counts
+     * @return an entity tag that changes with the counts of the given folders as well
+     */
+    public String getETag(Boolean subscribed, List<MailFolder> counted) {
+        StringBuilder content = new StringBuilder(hash);
+
+        for (MailFolder folder : counted) {
+            content.append('\n').append(folder.getMessageCount()).append('/').append(folder.getUnreadMessageCount());
+        }
+
+        String countedHash = DigestUtils.md5DigestAsHex(content.toString().getBytes(UTF_8));
+        return "\"" + countedHash + (subscribed == null ? "" : "-" + subscribed) + "\"";
+    }
+
+    int size() {
+        return folders.size();
+    }
+}
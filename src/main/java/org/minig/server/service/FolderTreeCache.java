@@ -0,0 +1,116 @@
+package org.minig.server.service;
+
+import org.minig.server.MailFolder;
+import org.minig.server.service.BoundedLruCache.Key;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the folder tree per user and the children of single folders loaded on demand. {@link FolderService} drops
+ * all entries of a user whenever it creates, moves, subscribes or deletes a folder. Changes made by other clients
+ * show up after {@code minig.folder-tree.ttl} seconds at the latest. Least recently used entries are evicted first.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=FolderTreeCache")
+public class FolderTreeCache {
+
+    private final BoundedLruCache<Entry> entries;
+    private final long ttl;
+
+    @Autowired
+    public FolderTreeCache(@Value("${minig.folder-tree.max-entries:10000}") int maxEntries,
+                           @Value("${minig.folder-tree.ttl:300}") long ttlSeconds) {
+        this.entries = new BoundedLruCache<>(maxEntries);
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * @return the tree of the user or {@code null} if it is unknown or outdated
+     */
+    public FolderTree get(String user) {
+        return get(new Key(user));
+    }
+
+    /**
+     * @return the children of the folder or {@code null} if they are unknown or outdated
+     */
+    public FolderTree getChildren(String user, String parent) {
+        return get(new Key(user, Objects.requireNonNull(parent, "parent is null")));
+    }
+
+    public FolderTree put(String user, List<MailFolder> folders) {
+        return put(new Key(user), folders);
+    }
+
+    public FolderTree putChildren(String user, String parent, List<MailFolder> children) {
+        return put(new Key(user, Objects.requireNonNull(parent, "parent is null")), children);
+    }
+
+    /**
+     * Drops the tree and all children of the user.
+     */
+    public void invalidate(String user) {
+        entries.removeIf(key -> Objects.equals(user, key.getUser()));
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        entries.clear();
+    }
+
+    @ManagedAttribute(description = "Number of cached folder trees and children")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Number of folders over all cached trees")
+    public long getFolders() {
+        return entries.values().stream().mapToLong(entry -> entry.tree.size()).sum();
+    }
+
+    @ManagedAttribute(description = "Maximum number of cached folder trees and children")
+    public int getMaxEntries() {
+        return (int) entries.getMaxWeight();
+    }
+
+    @ManagedAttribute(description = "Number of folder trees and children served from the cache")
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of folder trees and children that had to be listed")
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    private FolderTree get(Key key) {
+        Entry entry = entries.get(key, cached -> System.currentTimeMillis() - cached.created < ttl);
+        return entry == null ? null : entry.tree;
+    }
+
+    private FolderTree put(Key key, List<MailFolder> folders) {
+        FolderTree tree = new FolderTree(folders);
+        entries.put(key, new Entry(tree));
+        return tree;
+    }
+
+    private static final class Entry {
+
+        private final FolderTree tree;
+        private final long created = System.currentTimeMillis();
+
+        private Entry(FolderTree tree) {
+            this.tree = tree;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.IOUtils;
+import org.minig.security.MailAuthentication;
+import org.minig.server.MailAttachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Serves inline images of messages and downscales them on demand with ImageIO. Scaled images are kept in the
+ * {@link ThumbnailCache} as long as the image can be identified by its entity tag.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class ImageService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageService.class);
+
+    static final long MAX_SOURCE_SIZE = 20 * 1024 * 1024;
+    static final long MAX_SOURCE_PIXELS = 100_000_000;
+
+    private static final Set<String> SCALABLE = new HashSet<>(Arrays.asList("image/png", "image/jpeg", "image/jpg", "image/pjpeg", "image/gif", "image/bmp"));
+
+    private final AttachmentService attachmentService;
+    private final ThumbnailCache thumbnailCache;
+    private final MailAuthentication mailAuthentication;
+    private final int maxWidth;
+
+    @Autowired
+    public ImageService(AttachmentService attachmentService, ThumbnailCache thumbnailCache, MailAuthentication mailAuthentication,
+                        @Value("${minig.thumbnail.max-width:1600}") int maxWidth) {
+        Assert.isTrue(maxWidth > 0, "maxWidth must be greater than 0");
+
+        this.attachmentService = Objects.requireNonNull(attachmentService, "attachmentService is null");
+        this.thumbnailCache = Objects.requireNonNull(thumbnailCache, "thumbnailCache is null");
+        this.mailAuthentication = Objects.requireNonNull(mailAuthentication, "mailAuthentication is null");
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * @throws NotFoundException if the attachment does not exist or is not an image
+     */
+    public MailAttachment findImage(CompositeAttachmentId id) {
+        MailAttachment attachment = attachmentService.findById(id);
+        String mime = attachment.getMime();
+
+        if (mime == null || !mime.toLowerCase(Locale.ENGLISH).startsWith("image/")) {
+            throw new NotFoundException();
+        }
+
+        return attachment;
+    }
+
+    /**
+     * The returned attachment is scaled when its data is read, so that its entity tag can be checked before.
+     *
+     * @param width maximum width in pixels, bounded by {@code minig.thumbnail.max-width}
+     * @return the image scaled to the given width or the image itself if it can not be scaled
+     */
+    public MailAttachment findThumbnail(MailAttachment image, int width) {
+        Objects.requireNonNull(image, "image is null");
+        Assert.isTrue(width > 0, "width must be greater than 0");
+
+        long size = image.getSize();
+
+        if (!SCALABLE.contains(image.getMime().toLowerCase(Locale.ENGLISH)) || size < 0 || size > MAX_SOURCE_SIZE) {
+            return image;
+        }
+
+        return new ThumbnailAttachment(image, Math.min(width, maxWidth), mailAuthentication.getEmailAddress());
+    }
+
+    /**
+     * @return the scaled image or {@code null} if the image is not wider than the given width or can not be decoded
+     */
+    static Thumbnail scale(byte[] image, int width) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, false, true);
+
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+
+                // animations are kept as they are
+                if (sourceWidth <= width || (long) sourceWidth * sourceHeight > MAX_SOURCE_PIXELS || reader.getNumImages(true) > 1) {
+                    return null;
+                }
+
+                // decodes every n-th pixel only, but still twice the target resolution for a smooth result
+                int subsampling = Math.max(1, sourceWidth / (width * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage source = reader.read(0, param);
+                int height = (int) Math.max(1, Math.round((double) sourceHeight * width / sourceWidth));
+                boolean alpha = source.getColorModel().hasAlpha();
+                BufferedImage scaled = resize(source, width, height, alpha);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                if (!ImageIO.write(scaled, alpha ? "png" : "jpeg", out)) {
+                    return null;
+                }
+
+                return new Thumbnail(alpha ? "image/png" : "image/jpeg", out.toByteArray());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Halves the image until the target size is reached, a single bilinear step loses too much detail.
+     */
+    private static BufferedImage resize(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            current = next;
+        } while (currentWidth > width || currentHeight > height);
+
+        return current;
+    }
+
+    private final class ThumbnailAttachment extends MailAttachment {
+
+        private final MailAttachment image;
+        private final int width;
+        private final String user;
+        private Thumbnail thumbnail;
+
+        private ThumbnailAttachment(MailAttachment image, int width, String user) {
+            super(image, image.getMime(), image.getContentId(), image.getDispositionType(), null);
+            this.image = image;
+            this.width = width;
+            this.user = user;
+        }
+
+        @Override
+        public String getMime() {
+            return load().getMime();
+        }
+
+        @Override
+        public InputStream getData() {
+            return new ByteArrayInputStream(load().getData());
+        }
+
+        @Override
+        public long getSize() {
+            return load().getData().length;
+        }
+
+        @Override
+        public String getETag() {
+            String eTag = image.getETag();
+            return eTag == null ? null : String.format("%s-w%d\"", eTag.substring(0, eTag.length() - 1), width);
+        }
+
+        @Override
+        public Date getLastModified() {
+            return image.getLastModified();
+        }
+
+        private synchronized Thumbnail load() {
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+
+            String eTag = image.getETag();
+
+            if (eTag != null) {
+                thumbnail = thumbnailCache.get(user, image.getFolder(), eTag, width);
+
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+
+            byte[] data;
+
+            try (InputStream inputStream = image.getData()) {
+                data = IOUtils.toByteArray(inputStream);
+            } catch (IOException e) {
+                throw new RepositoryException(e.getMessage(), e);
+            }
+
+            try {
+                thumbnail = scale(data, width);
+            } catch (IOException | RuntimeException e) {
+                log.debug("could not scale {}: {}", image.getFileName(), e.getMessage());
+            }
+
+            if (thumbnail == null) {
+                thumbnail = new Thumbnail(image.getMime(), data);
+            }
+
+            if (eTag != null) {
+                thumbnailCache.put(user, image.getFolder(), eTag, width, thumbnail);
+            }
+
+            return thumbnail;
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package org.minig.server.service;
 
 import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.minig.security.MailAuthentication;
 import org.minig.server.MailMessage;
+import org.minig.server.MessageBatchResult;
+import org.minig.server.PartialMailMessage;
 import org.minig.server.service.impl.MailContext;
 import org.minig.server.service.impl.helper.MessageMapper;
 import org.minig.server.service.impl.helper.mime.Mime4jMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -19,14 +24,20 @@ import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
 import javax.mail.search.MessageIDTerm;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.minig.MinigConstants.FORWARDED;
 import static org.minig.MinigConstants.MDN_SENT;
@@ -47,45 +58,195 @@ public class MailRepository {
     @Autowired
     private MessageMapper mapper;
 
+    @Autowired
+    private MessageResolver messageResolver;
+
+    @Autowired
+    private MessageHeaderCache messageHeaderCache;
+
+    @Autowired
+    private MailAuthentication mailAuthentication;
+
+    @Value("${minig.list.fetch-chunk-size:100}")
+    private int fetchChunkSize;
+
+    @Value("${minig.folder.copy-chunk-size:1000}")
+    private int copyChunkSize;
+
     public Page<MimeMessage> findByFolderOrderByDateDesc(String folder, Pageable pageable) {
         Objects.requireNonNull(folder, "folder is null");
         Objects.requireNonNull(pageable, "pageable is null");
 
+        return rethrowCheckedAsUnchecked(() -> findByFolderOrderByDateDesc(mailContext.getFolder(folder), pageable));
+    }
+
+    /**
+     * Same as {@link #findByFolderOrderByDateDesc(String, Pageable)} but envelopes of IMAP folders are served from
+     * the {@link MessageHeaderCache}. Only flags of already known messages are fetched again, servers supporting
+     * CONDSTORE just send flags that changed since the last listing.
+     */
+    public Page<PartialMailMessage> findPartialByFolderOrderByDateDesc(String folder, Pageable pageable) {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(pageable, "pageable is null");
+
+        return rethrowCheckedAsUnchecked(() -> {
+            Folder storeFolder = mailContext.getFolder(folder);
+
+            if (!(storeFolder instanceof IMAPFolder)) {
+                return findByFolderOrderByDateDesc(storeFolder, pageable).map(PartialMailMessage::new);
+            }
+
+            IMAPFolder imapFolder = (IMAPFolder) storeFolder;
+            int messageCount = imapFolder.getMessageCount();
+            Message[] messages = getPage(imapFolder, messageCount, pageable);
+
+            if (messages.length == 0) {
+                return new PageImpl<>(Collections.emptyList(), pageable, messageCount);
+            }
+
+            return new PageImpl<>(findCached(imapFolder, messages), pageable, messageCount);
+        });
+    }
+
+    /**
+     * Lists a page like {@link #findPartialByFolderOrderByDateDesc(String, Pageable)} but fetches only the items the
+     * given fields need. The page is fetched in chunks of {@code minig.list.fetch-chunk-size} messages, every chunk
+     * is handed to the consumer, newest first, as soon as it has arrived.
+     *
+     * @return the number of messages in the folder
+     */
+    public int findPartialByFolderOrderByDateDesc(String folder, Pageable pageable, Set<MessageField> fields,
+                                                  Consumer<List<PartialMailMessage>> consumer) {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(pageable, "pageable is null");
+        Objects.requireNonNull(fields, "fields is null");
+        Objects.requireNonNull(consumer, "consumer is null");
+
         return rethrowCheckedAsUnchecked(() -> {
-            List<MimeMessage> mimeMessages = new ArrayList<>();
             Folder storeFolder = mailContext.getFolder(folder);
             int messageCount = storeFolder.getMessageCount();
+            Message[] messages = getPage(storeFolder, messageCount, pageable);
+            boolean cached = storeFolder instanceof IMAPFolder && MessageField.CACHED.containsAll(fields);
+            FetchProfile fetchProfile = MessageField.fetchProfile(fields);
+            int chunkSize = Math.max(1, fetchChunkSize);
+
+            for (int end = messages.length; end > 0; end -= chunkSize) {
+                Message[] chunk = Arrays.copyOfRange(messages, Math.max(0, end - chunkSize), end);
+
+                if (cached) {
+                    consumer.accept(findCached((IMAPFolder) storeFolder, chunk));
+                } else {
+                    consumer.accept(fetch(storeFolder, chunk, fetchProfile));
+                }
+            }
 
-            if (messageCount == 0) {
-                return new PageImpl<>(Collections.emptyList(), pageable, 0);
+            return messageCount;
+        });
+    }
+
+    /**
+     * @return the given messages newest first, envelopes are served from the {@link MessageHeaderCache}
+     */
+    private List<PartialMailMessage> findCached(IMAPFolder imapFolder, Message[] messages) throws MessagingException {
+        MessageHeaderCache.Entry[] entries = findEnvelopes(imapFolder, messages, true);
+        long uidValidity = imapFolder.getUIDValidity();
+        List<PartialMailMessage> partialMailMessages = new ArrayList<>();
+
+        for (int i = messages.length - 1; i >= 0; i--) {
+            CompositeId compositeId = new CompositeId(imapFolder.getFullName(), entries[i].getMessageId(), uidValidity, imapFolder.getUID(messages[i]));
+            partialMailMessages.add(new PartialMailMessage(compositeId, entries[i].toMimeMessage()));
+        }
+
+        return partialMailMessages;
+    }
+
+    /**
+     * Looks up the envelopes of the given messages in the {@link MessageHeaderCache}. Only UIDs and the envelopes of
+     * messages not cached yet are fetched.
+     *
+     * @param refreshFlags whether flags of cached envelopes are fetched again
+     * @return the envelopes in the order of the given messages
+     */
+    MessageHeaderCache.Entry[] findEnvelopes(IMAPFolder imapFolder, Message[] messages, boolean refreshFlags) throws MessagingException {
+        FetchProfile uidProfile = new FetchProfile();
+        uidProfile.add(UIDFolder.FetchProfileItem.UID);
+        imapFolder.fetch(messages, uidProfile);
+
+        String user = mailAuthentication.getEmailAddress();
+        long uidValidity = imapFolder.getUIDValidity();
+        boolean condstore = ((IMAPStore) imapFolder.getStore()).hasCapability("CONDSTORE");
+        long highestModSeq = condstore ? imapFolder.getHighestModSeq() : 0;
+
+        long[] uids = new long[messages.length];
+        MessageHeaderCache.Entry[] entries = new MessageHeaderCache.Entry[messages.length];
+        List<Message> missing = new ArrayList<>();
+
+        for (int i = 0; i < messages.length; i++) {
+            uids[i] = imapFolder.getUID(messages[i]);
+            entries[i] = messageHeaderCache.get(user, imapFolder.getFullName(), uidValidity, uids[i]);
+
+            if (entries[i] == null) {
+                missing.add(messages[i]);
             }
+        }
 
-            int end = Math.max(messageCount - pageable.getPageNumber() * pageable.getPageSize(), 0);
-            int start = Math.max(end - pageable.getPageSize() + 1, 1);
+        if (refreshFlags) {
+            refreshFlags(imapFolder, messages, uids, entries, condstore, highestModSeq);
+        }
 
-            if (end < 0) {
-                return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        if (!missing.isEmpty()) {
+            Message[] missingMessages = missing.toArray(new Message[missing.size()]);
+            // the cache keeps envelope data and flags only
+            imapFolder.fetch(missingMessages, MessageField.fetchProfile(MessageField.CACHED));
+            messageResolver.index(imapFolder, missingMessages);
+
+            for (int i = 0; i < messages.length; i++) {
+                if (entries[i] == null) {
+                    MimeMessage m = (MimeMessage) messages[i];
+                    entries[i] = messageHeaderCache.put(user, imapFolder.getFullName(), uidValidity, uids[i],
+                            m.getMessageID(), m.getSubject(), m.getFrom(), m.getSentDate(), m.getFlags(), highestModSeq);
+                }
             }
+        }
 
-            Message[] messages = storeFolder.getMessages(start, end);
-            storeFolder.fetch(messages, partialMailProfile());
+        return entries;
+    }
 
-            for (Message m : messages) {
-                mimeMessages.add((MimeMessage) m);
+    /**
+     * @return the given messages newest first
+     */
+    private List<PartialMailMessage> fetch(Folder storeFolder, Message[] messages, FetchProfile fetchProfile) throws MessagingException {
+        storeFolder.fetch(messages, fetchProfile);
+        messageResolver.index(storeFolder, messages);
+
+        List<PartialMailMessage> partialMailMessages = new ArrayList<>();
+
+        for (int i = messages.length - 1; i >= 0; i--) {
+            MimeMessage m = (MimeMessage) messages[i];
+            // read from the fetched header, the ENVELOPE might not have been fetched
+            String[] messageId = m.getHeader(MESSAGE_ID);
+            String id = messageId == null || messageId.length == 0 ? null : messageId[0];
+            CompositeId compositeId;
+
+            if (storeFolder instanceof UIDFolder) {
+                UIDFolder uidFolder = (UIDFolder) storeFolder;
+                compositeId = new CompositeId(storeFolder.getFullName(), id, uidFolder.getUIDValidity(), uidFolder.getUID(m));
+            } else {
+                compositeId = new CompositeId(storeFolder.getFullName(), id);
             }
 
-            Collections.reverse(mimeMessages);
+            partialMailMessages.add(new PartialMailMessage(compositeId, m));
+        }
 
-            return new PageImpl<>(mimeMessages, pageable, messageCount);
-        });
+        return partialMailMessages;
     }
 
     public Optional<MimeMessage> findByCompositeId(CompositeId compositeId) {
         Objects.requireNonNull(compositeId, "compositeId is null");
         return rethrowCheckedAsUnchecked(() -> {
             Folder storeFolder = mailContext.getFolder(compositeId.getFolder());
-            Message[] search = storeFolder.search(new MessageIDTerm(compositeId.getMessageId()));
-            storeFolder.fetch(search, fullMailProfile());
+            Message[] search = messageResolver.resolve(storeFolder, compositeId);
+            storeFolder.fetch(search, structureMailProfile());
             return Arrays.stream(search).findFirst().map(message -> (MimeMessage) message);
         });
     }
@@ -104,7 +265,7 @@ public class MailRepository {
                 return null;
             }
 
-            Message[] search = storeFolder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] search = messageResolver.resolve(storeFolder, id);
             storeFolder.fetch(search, fullMailProfile());
 
             if (search.length > 0) {
@@ -126,7 +287,7 @@ public class MailRepository {
 
         try {
             Folder storeFolder = mailContext.openFolder(folder);
-            Message[] search = storeFolder.search(new MessageIDTerm(messageId));
+            Message[] search = messageResolver.resolve(storeFolder, new CompositeId(folder, messageId));
 
             if (search != null && search.length == 1 && search[0] != null) {
                 return new Mime4jMessage(search[0]);
@@ -152,7 +313,7 @@ public class MailRepository {
             Folder storeFolder = mailContext.getFolder(folder);
 
             if (storeFolder.exists()) {
-                Message[] search = storeFolder.search(new MessageIDTerm(messageId));
+                Message[] search = messageResolver.resolve(storeFolder, new CompositeId(folder, messageId));
 
                 if (search != null && search.length == 1 && search[0] != null) {
 
@@ -171,7 +332,7 @@ public class MailRepository {
 
         try {
             Folder folder = mailContext.getFolder(message.getFolder());
-            Message[] search = folder.search(new MessageIDTerm(message.getMessageId()));
+            Message[] search = messageResolver.resolve(folder, message);
 
             if (search != null) {
                 for (Message m : search) {
@@ -196,6 +357,55 @@ public class MailRepository {
         }
     }
 
+    /**
+     * Applies the flags of all messages of one folder. Every distinct flag change is issued as one STORE over the
+     * set of affected messages. Flags that are {@code null} are left untouched.
+     */
+    public MessageBatchResult updateFlags(String folder, List<? extends MailMessage> messages) {
+        Assert.hasText(folder, "folder is null");
+        Assert.notNull(messages, "messages is null");
+
+        MessageBatchResult result = new MessageBatchResult();
+
+        try {
+            Folder storeFolder = mailContext.getFolder(folder);
+            Message[] resolved = messageResolver.resolve(storeFolder, messages);
+            Map<FlagChange, List<Message>> changes = new LinkedHashMap<>();
+
+            for (int i = 0; i < resolved.length; i++) {
+                MailMessage message = messages.get(i);
+                Message target = resolved[i];
+
+                if (target == null) {
+                    continue;
+                }
+
+                addFlagChange(changes, new Flags(Flags.Flag.SEEN), message.getRead(), target);
+                addFlagChange(changes, new Flags(Flags.Flag.FLAGGED), message.getStarred(), target);
+                addFlagChange(changes, new Flags(Flags.Flag.ANSWERED), message.getAnswered(), target);
+                addFlagChange(changes, new Flags("$Forwarded"), message.getForwarded(), target);
+                addFlagChange(changes, new Flags("$MDNSent"), message.getMdnSent(), target);
+            }
+
+            for (Map.Entry<FlagChange, List<Message>> change : changes.entrySet()) {
+                List<Message> targets = change.getValue();
+                storeFolder.setFlags(targets.toArray(new Message[targets.size()]), change.getKey().flags, change.getKey().set);
+            }
+
+            for (int i = 0; i < resolved.length; i++) {
+                if (resolved[i] == null) {
+                    result.failed(messages.get(i), "not found");
+                } else {
+                    result.succeeded(messages.get(i));
+                }
+            }
+        } catch (MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
+        return result;
+    }
+
     public void moveMessage(CompositeId message, String folder) {
         Assert.notNull(message);
         Assert.hasText(folder);
@@ -205,7 +415,7 @@ public class MailRepository {
                 Folder targetFolder = mailContext.getFolder(folder);
                 Folder sourceFolder = mailContext.getFolder(message.getFolder());
 
-                Message[] search = sourceFolder.search(new MessageIDTerm(message.getMessageId()));
+                Message[] search = messageResolver.resolve(sourceFolder, message);
                 sourceFolder.copyMessages(search, targetFolder);
 
                 if (search != null) {
@@ -215,6 +425,7 @@ public class MailRepository {
                 }
 
                 // expunge
+                messageResolver.expunged(sourceFolder, message);
                 sourceFolder.close(true);
             }
         } catch (Exception e) {
@@ -222,10 +433,80 @@ public class MailRepository {
         }
     }
 
+    /**
+     * Moves all given messages of one folder with a single MOVE. Servers without the MOVE extension get a
+     * COPY, a STORE of the deleted flag and an UID EXPUNGE of the moved messages.
+     */
+    public MessageBatchResult moveMessages(String source, List<? extends CompositeId> ids, String target, boolean markSeen) {
+        Assert.hasText(source, "source is null");
+        Assert.notNull(ids, "ids is null");
+        Assert.hasText(target, "target is null");
+
+        MessageBatchResult result = new MessageBatchResult();
+
+        try {
+            Folder sourceFolder = mailContext.getFolder(source);
+            List<CompositeId> resolvedIds = new ArrayList<>();
+            Message[] messages = found(ids, messageResolver.resolve(sourceFolder, ids), resolvedIds, result);
+
+            if (messages.length > 0 && !source.equals(target)) {
+                if (markSeen) {
+                    sourceFolder.setFlags(messages, new Flags(Flags.Flag.SEEN), true);
+                }
+
+                Folder targetFolder = mailContext.getFolder(target);
+
+                moveMessages(sourceFolder, messages, targetFolder);
+                expunged(sourceFolder, resolvedIds);
+
+                // closing with expunge would remove messages flagged as deleted by other clients
+                sourceFolder.close(false);
+                targetFolder.close(false);
+            }
+
+            resolvedIds.forEach(result::succeeded);
+        } catch (MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Deletes all given messages of one folder with a single STORE and an UID EXPUNGE of these messages.
+     */
+    public MessageBatchResult deleteMessages(String folder, List<? extends CompositeId> ids) {
+        Assert.hasText(folder, "folder is null");
+        Assert.notNull(ids, "ids is null");
+
+        MessageBatchResult result = new MessageBatchResult();
+
+        try {
+            Folder storeFolder = mailContext.getFolder(folder);
+            List<CompositeId> resolvedIds = new ArrayList<>();
+            Message[] messages = found(ids, messageResolver.resolve(storeFolder, ids), resolvedIds, result);
+
+            if (messages.length > 0) {
+                storeFolder.setFlags(messages, new Flags(Flags.Flag.DELETED), true);
+                expunge(storeFolder, messages);
+                expunged(storeFolder, resolvedIds);
+
+                // closing with expunge would remove messages flagged as deleted by other clients
+                storeFolder.close(false);
+            }
+
+            resolvedIds.forEach(result::succeeded);
+        } catch (MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
+        return result;
+    }
+
     public void delete(CompositeId id) {
         try {
             Folder storeFolder = mailContext.getFolder(id.getFolder());
-            Message[] search = storeFolder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] search = messageResolver.resolve(storeFolder, id);
 
             if (search != null) {
                 for (Message msg : search) {
@@ -234,6 +515,7 @@ public class MailRepository {
             }
 
             // expunge
+            messageResolver.expunged(storeFolder, id);
             storeFolder.close(true);
         } catch (Exception e) {
             e.printStackTrace();
@@ -249,14 +531,33 @@ public class MailRepository {
         Assert.notNull(message, "message is null");
         Assert.hasText(folder, "folder is null");
 
+        Message target;
+
         try {
-            Message target = message.toMessage();
+            target = message.toMessage();
             target.saveChanges();
+        } catch (Exception e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
+        return append(target, folder);
+    }
+
+    /**
+     * Appends the message as it is, unlike {@link #save(Mime4jMessage, String)} no header is updated.
+     *
+     * @return the Message-ID of the appended message
+     */
+    public String append(Message message, String folder) {
+        Assert.notNull(message, "message is null");
+        Assert.hasText(folder, "folder is null");
+
+        try {
             Folder storeFolder = mailContext.openFolder(folder);
-            storeFolder.appendMessages(new Message[] { target });
+            storeFolder.appendMessages(new Message[] { message });
             storeFolder.close(false);
 
-            return target.getHeader("Message-ID")[0];
+            return message.getHeader("Message-ID")[0];
         } catch (Exception e) {
             throw new RepositoryException(e.getMessage(), e);
         }
@@ -271,7 +572,13 @@ public class MailRepository {
             Folder targetFolder = mailContext.getFolder(target);
 
             if (sourceFolder.exists() && targetFolder.exists()) {
-                sourceFolder.copyMessages(sourceFolder.getMessages(), targetFolder);
+                Message[] messages = sourceFolder.getMessages();
+                int chunkSize = Math.max(1, copyChunkSize);
+
+                // one COPY per chunk, a single COPY of a large folder may outlast the read timeout
+                for (int start = 0; start < messages.length; start += chunkSize) {
+                    sourceFolder.copyMessages(Arrays.copyOfRange(messages, start, Math.min(messages.length, start + chunkSize)), targetFolder);
+                }
             }
         } catch (MessagingException e) {
             throw new RepositoryException(e.getMessage(), e);
@@ -284,7 +591,7 @@ public class MailRepository {
 
         try {
             Folder sourceFolder = mailContext.getFolder(id.getFolder());
-            Message[] search = sourceFolder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] search = messageResolver.resolve(sourceFolder, id);
 
             if (search != null) {
                 Folder targetFolder = mailContext.getFolder(target);
@@ -306,7 +613,7 @@ public class MailRepository {
         try {
             log.debug("setting flagAsAnswered to {} on message {}", answered, id);
             Folder folder = mailContext.openFolder(id.getFolder());
-            Message[] messages = folder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] messages = messageResolver.resolve(folder, id);
 
             for (Message m : messages) {
                 m.setFlag(Flags.Flag.ANSWERED, answered);
@@ -324,7 +631,7 @@ public class MailRepository {
         try {
             log.debug("setting flagAsForwarded to {} on message {}", answered, id);
             Folder folder = mailContext.openFolder(id.getFolder());
-            Message[] messages = folder.search(new MessageIDTerm(id.getMessageId()));
+            Message[] messages = messageResolver.resolve(folder, id);
 
             for (Message m : messages) {
                 Flags forwardedFlag = new Flags("$Forwarded");
@@ -378,26 +685,170 @@ public class MailRepository {
                 compositeId = new CompositeId(folder.getFullName(), message.getHeader("Message-ID")[0]);
             }
 
-            if(search.length == 0) {
-                folder.close(false);
-            }
+            // connections are pooled, do not leave untracked folders open
+            folder.close(false);
         } catch (MessagingException e) {
             throw new RepositoryException(e.getMessage(), e);
         }
         return compositeId;
     }
 
-    private static FetchProfile partialMailProfile() {
+    private Page<MimeMessage> findByFolderOrderByDateDesc(Folder storeFolder, Pageable pageable) throws MessagingException {
+        int messageCount = storeFolder.getMessageCount();
+        Message[] messages = getPage(storeFolder, messageCount, pageable);
+
+        if (messages.length == 0) {
+            return new PageImpl<>(Collections.emptyList(), pageable, messageCount);
+        }
+
+        storeFolder.fetch(messages, partialMailProfile());
+        messageResolver.index(storeFolder, messages);
+
+        List<MimeMessage> mimeMessages = new ArrayList<>();
+
+        for (Message m : messages) {
+            mimeMessages.add((MimeMessage) m);
+        }
+
+        Collections.reverse(mimeMessages);
+
+        return new PageImpl<>(mimeMessages, pageable, messageCount);
+    }
+
+    private static Message[] getPage(Folder storeFolder, int messageCount, Pageable pageable) throws MessagingException {
+        if (messageCount == 0) {
+            return new Message[0];
+        }
+
+        int end = Math.max(messageCount - pageable.getPageNumber() * pageable.getPageSize(), 0);
+        int start = Math.max(end - pageable.getPageSize() + 1, 1);
+
+        return storeFolder.getMessages(start, end);
+    }
+
+    /**
+     * Fetches the flags of all messages of a listing that have been served from the {@link MessageHeaderCache}.
+     */
+    private static void refreshFlags(IMAPFolder folder, Message[] messages, long[] uids, MessageHeaderCache.Entry[] entries,
+                                     boolean condstore, long highestModSeq) throws MessagingException {
+        List<Message> cached = new ArrayList<>();
+        long since = Long.MAX_VALUE;
+        long first = Long.MAX_VALUE;
+        long last = 0;
+
+        for (int i = 0; i < messages.length; i++) {
+            if (entries[i] != null) {
+                cached.add(messages[i]);
+                since = Math.min(since, entries[i].getModSeq());
+                first = Math.min(first, uids[i]);
+                last = Math.max(last, uids[i]);
+            }
+        }
+
+        if (cached.isEmpty()) {
+            return;
+        }
+
+        if (condstore && since > 0) {
+            if (since < highestModSeq) {
+                Map<Long, Message> changed = new HashMap<>();
+
+                for (Message message : folder.getMessagesByUIDChangedSince(first, last, since)) {
+                    changed.put(folder.getUID(message), message);
+                }
+
+                for (int i = 0; i < messages.length; i++) {
+                    Message message = entries[i] == null ? null : changed.get(uids[i]);
+
+                    if (message != null) {
+                        entries[i].updateFlags(message.getFlags(), highestModSeq);
+                    } else if (entries[i] != null) {
+                        entries[i].updateModSeq(highestModSeq);
+                    }
+                }
+            }
+            return;
+        }
+
+        FetchProfile flagsProfile = new FetchProfile();
+        flagsProfile.add(FetchProfile.Item.FLAGS);
+        folder.fetch(cached.toArray(new Message[cached.size()]), flagsProfile);
+
+        for (int i = 0; i < messages.length; i++) {
+            if (entries[i] != null) {
+                entries[i].updateFlags(messages[i].getFlags(), highestModSeq);
+            }
+        }
+    }
+
+    private static void moveMessages(Folder source, Message[] messages, Folder target) throws MessagingException {
+        if (source instanceof IMAPFolder && ((IMAPStore) source.getStore()).hasCapability("MOVE")) {
+            ((IMAPFolder) source).moveMessages(messages, target);
+            return;
+        }
+
+        source.copyMessages(messages, target);
+        source.setFlags(messages, new Flags(Flags.Flag.DELETED), true);
+        expunge(source, messages);
+    }
+
+    private static void expunge(Folder folder, Message[] messages) throws MessagingException {
+        if (folder instanceof IMAPFolder && ((IMAPStore) folder.getStore()).hasCapability("UIDPLUS")) {
+            // UID EXPUNGE leaves messages flagged as deleted by other clients alone, servers without UIDPLUS expunge all
+            ((IMAPFolder) folder).expunge(messages);
+        } else {
+            folder.expunge();
+        }
+    }
+
+    private void expunged(Folder folder, List<? extends CompositeId> ids) {
+        for (CompositeId id : ids) {
+            messageResolver.expunged(folder, id);
+        }
+    }
+
+    private static Message[] found(List<? extends CompositeId> ids, Message[] resolved, List<CompositeId> resolvedIds, MessageBatchResult result) {
+        List<Message> found = new ArrayList<>();
+
+        for (int i = 0; i < resolved.length; i++) {
+            if (resolved[i] == null) {
+                result.failed(ids.get(i), "not found");
+            } else {
+                found.add(resolved[i]);
+                resolvedIds.add(ids.get(i));
+            }
+        }
+
+        return found.toArray(new Message[found.size()]);
+    }
+
+    private static void addFlagChange(Map<FlagChange, List<Message>> changes, Flags flags, Boolean set, Message message) {
+        if (set != null) {
+            changes.computeIfAbsent(new FlagChange(flags, set), key -> new ArrayList<>()).add(message);
+        }
+    }
+
+    static FetchProfile partialMailProfile() {
         FetchProfile fp = new FetchProfile();
         fp.add(FetchProfile.Item.ENVELOPE);
         fp.add(FetchProfile.Item.FLAGS);
         fp.add(FetchProfile.Item.CONTENT_INFO);
+        fp.add(UIDFolder.FetchProfileItem.UID);
         fp.add(FORWARDED);
         fp.add(MDN_SENT);
         fp.add(MESSAGE_ID);
         return fp;
     }
 
+    /**
+     * Headers and BODYSTRUCTURE only, parts are fetched on demand.
+     */
+    private static FetchProfile structureMailProfile() {
+        FetchProfile fp = partialMailProfile();
+        fp.add(IMAPFolder.FetchProfileItem.HEADERS);
+        return fp;
+    }
+
     private static FetchProfile fullMailProfile() {
         FetchProfile fp = partialMailProfile();
         fp.add(IMAPFolder.FetchProfileItem.MESSAGE);
@@ -409,4 +860,28 @@ public class MailRepository {
         fp.add("User-Agent");
         return fp;
     }
+
+    private static final class FlagChange {
+
+        private final Flags flags;
+        private final boolean set;
+
+        private FlagChange(Flags flags, boolean set) {
+            this.flags = flags;
+            this.set = set;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FlagChange)) return false;
+            FlagChange that = (FlagChange) o;
+            return set == that.set && flags.equals(that.flags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(flags, set);
+        }
+    }
 }
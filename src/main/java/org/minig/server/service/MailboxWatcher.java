@@ -0,0 +1,366 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.minig.security.MailAuthentication;
+import org.minig.server.MailboxEvent;
+import org.minig.server.MessageFlags;
+import org.minig.server.service.impl.JavaMailPropertyBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.event.MessageChangedEvent;
+import javax.mail.event.MessageChangedListener;
+import javax.mail.event.MessageCountEvent;
+import javax.mail.event.MessageCountListener;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Watches the inbox of every user with at least one subscriber, e.g. an open tab, over a single IMAP connection
+ * per user that waits in IDLE. EXISTS, EXPUNGE and flag changes are handed to all subscribers of that user.
+ * Servers without IDLE are polled with NOOP every {@code minig.idle.poll-interval} seconds. The connection is
+ * opened next to the {@link org.minig.server.service.impl.MailStorePool}, so that watched users never take
+ * connections away from requests, and closed once the last subscriber is gone. Every change drops the counts of
+ * the inbox from the {@link FolderStatusCache}.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=MailboxWatcher")
+public class MailboxWatcher implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MailboxWatcher.class);
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+    private final AtomicLong publishedEvents = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final MailAuthentication mailAuthentication;
+    private final FolderStatusCache folderStatusCache;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final int maxUsers;
+    private final long pollInterval;
+    private final long refreshInterval;
+
+    @Autowired
+    public MailboxWatcher(MailAuthentication mailAuthentication, FolderStatusCache folderStatusCache,
+                          @Value("${minig.idle.max-users:500}") int maxUsers,
+                          @Value("${minig.idle.poll-interval:60}") long pollIntervalSeconds,
+                          @Value("${minig.idle.refresh-interval:1500}") long refreshIntervalSeconds) {
+        Assert.isTrue(maxUsers > 0, "maxUsers must be greater than 0");
+        Assert.isTrue(pollIntervalSeconds > 0, "pollInterval must be greater than 0");
+        Assert.isTrue(refreshIntervalSeconds > 0, "refreshInterval must be greater than 0");
+
+        this.mailAuthentication = Objects.requireNonNull(mailAuthentication, "mailAuthentication is null");
+        this.folderStatusCache = Objects.requireNonNull(folderStatusCache, "folderStatusCache is null");
+        this.maxUsers = maxUsers;
+        this.pollInterval = TimeUnit.SECONDS.toMillis(pollIntervalSeconds);
+        this.refreshInterval = TimeUnit.SECONDS.toMillis(refreshIntervalSeconds);
+
+        // IDLE blocks the thread for as long as the user is watched
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mailbox-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mailbox-watcher-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes the current user to changes of the inbox. The listener is called from a javamail event thread
+     * and must not block, e.g. by writing to a client.
+     *
+     * @throws RepositoryException if {@code minig.idle.max-users} users are watched already
+     */
+    public Subscription subscribe(Consumer<MailboxEvent> listener) {
+        Objects.requireNonNull(listener, "listener is null");
+
+        String user = mailAuthentication.getEmailAddress();
+
+        synchronized (watches) {
+            Watch watch = watches.get(user);
+
+            if (watch == null) {
+                if (watches.size() >= maxUsers) {
+                    throw new RepositoryException(String.format("limit of %d watched mailboxes reached", maxUsers));
+                }
+
+                watch = new Watch(user, mailAuthentication.getDomain(), mailAuthentication.getUserMail(),
+                        mailAuthentication.getPassword(), mailAuthentication.getInboxFolder());
+                watches.put(user, watch);
+                executor.execute(watch);
+            }
+
+            watch.listeners.add(listener);
+        }
+
+        return () -> unsubscribe(user, listener);
+    }
+
+    @ManagedAttribute(description = "Number of users whose inbox is watched")
+    public int getWatchedUsers() {
+        return watches.size();
+    }
+
+    @ManagedAttribute(description = "Number of subscribers over all users")
+    public int getSubscribers() {
+        int subscribers = 0;
+        for (Watch watch : watches.values()) {
+            subscribers += watch.listeners.size();
+        }
+        return subscribers;
+    }
+
+    @ManagedAttribute(description = "Number of open IDLE connections, not part of the MailStorePool")
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @ManagedAttribute(description = "Total number of events handed to subscribers")
+    public long getPublishedEvents() {
+        return publishedEvents.get();
+    }
+
+    @ManagedAttribute(description = "Maximum number of watched users")
+    public int getMaxUsers() {
+        return maxUsers;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        synchronized (watches) {
+            for (Watch watch : watches.values()) {
+                watch.stop();
+            }
+            watches.clear();
+        }
+
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void unsubscribe(String user, Consumer<MailboxEvent> listener) {
+        synchronized (watches) {
+            Watch watch = watches.get(user);
+
+            if (watch != null && watch.listeners.remove(listener) && watch.listeners.isEmpty()) {
+                watches.remove(user);
+                watch.stop();
+            }
+        }
+    }
+
+    /**
+     * Ends a subscription, may be called more than once.
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    private final class Watch implements Runnable, MessageCountListener, MessageChangedListener {
+
+        private final Set<Consumer<MailboxEvent>> listeners = new CopyOnWriteArraySet<>();
+        private final String key;
+        private final String domain;
+        private final String user;
+        private final String password;
+        private final String folderName;
+        private volatile boolean stopped;
+        private volatile Folder folder;
+
+        private Watch(String key, String domain, String user, String password, String folderName) {
+            this.key = key;
+            this.domain = domain;
+            this.user = user;
+            this.password = password;
+            this.folderName = folderName;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                Store store = null;
+                boolean connected = false;
+
+                try {
+                    store = Session.getInstance(new JavaMailPropertyBuilder(domain).build(), null).getStore();
+                    store.connect(domain, user, password);
+                    connected = true;
+                    openConnections.incrementAndGet();
+                    watch(store);
+                } catch (Exception e) {
+                    // closing the folder on stop ends IDLE with an exception
+                    if (!stopped) {
+                        log.debug("watching {} of {} failed, reconnecting. reason {}", folderName, user, e.getMessage());
+                        pause(pollInterval);
+                    }
+                } finally {
+                    if (connected) {
+                        openConnections.decrementAndGet();
+                        closeQuietly(store);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void messagesAdded(MessageCountEvent event) {
+            publish(MailboxEvent.exists(folderName, event.getMessages().length));
+        }
+
+        @Override
+        public void messagesRemoved(MessageCountEvent event) {
+            publish(MailboxEvent.expunge(folderName, event.getMessages().length));
+        }
+
+        @Override
+        public void messageChanged(MessageChangedEvent event) {
+            if (event.getMessageChangeType() != MessageChangedEvent.FLAGS_CHANGED) {
+                return;
+            }
+
+            Message message = event.getMessage();
+
+            try {
+                Folder source = message.getFolder();
+                long uid = source instanceof UIDFolder ? ((UIDFolder) source).getUID(message) : -1;
+
+                publish(MailboxEvent.flags(folderName, new MessageFlags(uid, message.getFlags())));
+            } catch (MessagingException e) {
+                log.debug("can not read changed flags of {}. reason {}", user, e.getMessage());
+            }
+        }
+
+        private void watch(Store store) throws MessagingException {
+            Folder inbox = store.getFolder(folderName);
+            inbox.open(Folder.READ_ONLY);
+            inbox.addMessageCountListener(this);
+            inbox.addMessageChangedListener(this);
+            folder = inbox;
+
+            boolean idle = inbox instanceof IMAPFolder && ((IMAPStore) store).hasCapability("IDLE");
+            // servers end IDLE after 30 minutes, a NOOP from another thread ends it earlier and it is sent again
+            ScheduledFuture<?> refresh = idle ? scheduler.scheduleWithFixedDelay(this::noop, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS) : null;
+
+            try {
+                while (!stopped) {
+                    if (idle) {
+                        ((IMAPFolder) inbox).idle();
+                    } else {
+                        pause(pollInterval);
+                        noop();
+                    }
+                }
+            } finally {
+                if (refresh != null) {
+                    refresh.cancel(false);
+                }
+
+                folder = null;
+                closeQuietly(inbox);
+            }
+        }
+
+        private void noop() {
+            Folder current = folder;
+
+            if (current == null || stopped) {
+                return;
+            }
+
+            try {
+                // answered with NOOP on an open IMAP folder, pending changes are delivered to the listeners
+                current.getMessageCount();
+            } catch (MessagingException e) {
+                log.debug("NOOP for {} failed. reason {}", user, e.getMessage());
+            }
+        }
+
+        private void publish(MailboxEvent event) {
+            folderStatusCache.invalidate(key, folderName);
+
+            for (Consumer<MailboxEvent> listener : listeners) {
+                try {
+                    listener.accept(event);
+                    publishedEvents.incrementAndGet();
+                } catch (RuntimeException e) {
+                    log.debug("can not hand {} event to subscriber of {}. reason {}", event.getType(), user, e.getMessage());
+                }
+            }
+        }
+
+        private synchronized void pause(long millis) {
+            if (stopped) {
+                return;
+            }
+
+            try {
+                wait(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+
+            synchronized (this) {
+                notifyAll();
+            }
+
+            // ends a running IDLE
+            closeQuietly(folder);
+        }
+
+        private void closeQuietly(Store store) {
+            try {
+                store.close();
+            } catch (MessagingException e) {
+                log.debug("can not close connection of {}. reason {}", user, e.getMessage());
+            }
+        }
+
+        private void closeQuietly(Folder inbox) {
+            if (inbox == null || !inbox.isOpen()) {
+                return;
+            }
+
+            try {
+                inbox.close(false);
+            } catch (Exception e) {
+                log.debug("can not close {} of {}. reason {}", folderName, user, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.minig.server.service;
+
+import javax.mail.FetchProfile;
+import javax.mail.UIDFolder;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.minig.MinigConstants.MESSAGE_ID;
+
+/**
+ * Fields of a message list entry a client can ask for. Each field maps to the FETCH items it needs, so that a
+ * listing fetches no more than what is serialised.
+ *
+ * @author Kamill Sokol
+ */
+public enum MessageField {
+
+    SUBJECT("subject", FetchProfile.Item.ENVELOPE),
+    FROM("from", FetchProfile.Item.ENVELOPE),
+    DATE("date", FetchProfile.Item.ENVELOPE),
+    FLAGS("flags", FetchProfile.Item.FLAGS),
+    SIZE("size", FetchProfile.Item.SIZE),
+    HAS_ATTACHMENTS("hasAttachments", FetchProfile.Item.CONTENT_INFO);
+
+    /**
+     * Fields kept by the {@link MessageHeaderCache}.
+     */
+    public static final Set<MessageField> CACHED = Collections.unmodifiableSet(EnumSet.of(SUBJECT, FROM, DATE, FLAGS));
+
+    private final String name;
+    private final FetchProfile.Item item;
+
+    MessageField(String name, FetchProfile.Item item) {
+        this.name = name;
+        this.item = item;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static MessageField of(String name) {
+        for (MessageField field : values()) {
+            if (field.name.equalsIgnoreCase(name.trim())) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("unknown field " + name);
+    }
+
+    /**
+     * @return the FETCH items of the given fields together with UID and Message-ID that identify an entry
+     */
+    public static FetchProfile fetchProfile(Set<MessageField> fields) {
+        FetchProfile fp = new FetchProfile();
+
+        for (MessageField field : fields) {
+            if (!fp.contains(field.item)) {
+                fp.add(field.item);
+            }
+        }
+
+        fp.add(UIDFolder.FetchProfileItem.UID);
+        fp.add(MESSAGE_ID);
+        return fp;
+    }
+}
@@ -0,0 +1,160 @@
+package org.minig.server.service;
+
+import org.minig.server.service.BoundedLruCache.Key;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.mail.Address;
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the envelope data shown in message lists per user, folder and UID, so that a listing only has to fetch
+ * flags for messages it has seen before. Entries are evicted least recently used once the estimated size
+ * exceeds the configured limit.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=MessageHeaderCache")
+public class MessageHeaderCache {
+
+    private final BoundedLruCache<Entry> entries;
+
+    @Autowired
+    public MessageHeaderCache(@Value("${minig.header-cache.max-size-mb:32}") long maxSizeMegabytes) {
+        this.entries = new BoundedLruCache<>(maxSizeMegabytes * 1024 * 1024, entry -> entry.size);
+    }
+
+    public Entry get(String user, String folder, long uidValidity, long uid) {
+        return entries.get(new Key(user, folder, uidValidity, uid));
+    }
+
+    public Entry put(String user, String folder, long uidValidity, long uid, String messageId, String subject,
+                     Address[] from, Date sentDate, Flags flags, long modSeq) {
+        Entry entry = new Entry(messageId, subject, from, sentDate, flags, modSeq);
+        entries.put(new Key(user, folder, uidValidity, uid), entry);
+        return entry;
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        entries.clear();
+    }
+
+    @ManagedAttribute(description = "Number of cached envelopes")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Estimated size of all cached envelopes in bytes")
+    public long getSize() {
+        return entries.getWeight();
+    }
+
+    @ManagedAttribute(description = "Maximum size of all cached envelopes in bytes")
+    public long getMaxSize() {
+        return entries.getMaxWeight();
+    }
+
+    @ManagedAttribute(description = "Number of envelopes served from the cache")
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of envelopes that had to be fetched")
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    /**
+     * Envelope of a message. Flags are replaced whenever they have been fetched again.
+     */
+    public static final class Entry {
+
+        private final String messageId;
+        private final String subject;
+        private final Address[] from;
+        private final Date sentDate;
+        private final long size;
+        private Flags flags;
+        private long modSeq;
+
+        private Entry(String messageId, String subject, Address[] from, Date sentDate, Flags flags, long modSeq) {
+            this.messageId = messageId;
+            this.subject = subject;
+            this.from = from == null ? null : from.clone();
+            this.sentDate = sentDate == null ? null : new Date(sentDate.getTime());
+            this.flags = new Flags(flags);
+            this.modSeq = modSeq;
+            this.size = estimateSize();
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * @return the mod-sequence the flags are known for or {@code 0} if the folder does not support CONDSTORE
+         */
+        public synchronized long getModSeq() {
+            return modSeq;
+        }
+
+        public synchronized void updateFlags(Flags flags, long modSeq) {
+            this.flags = new Flags(flags);
+            this.modSeq = modSeq;
+        }
+
+        public synchronized void updateModSeq(long modSeq) {
+            this.modSeq = Math.max(this.modSeq, modSeq);
+        }
+
+        /**
+         * @return a detached message carrying the cached envelope and flags
+         */
+        public MimeMessage toMimeMessage() throws MessagingException {
+            MimeMessage mimeMessage = new MimeMessage((Session) null);
+
+            if (subject != null) {
+                mimeMessage.setSubject(subject, UTF_8.name());
+            }
+            if (from != null) {
+                mimeMessage.addFrom(from);
+            }
+            if (sentDate != null) {
+                mimeMessage.setSentDate(sentDate);
+            }
+
+            synchronized (this) {
+                mimeMessage.setFlags(flags, true);
+            }
+
+            return mimeMessage;
+        }
+
+        private long estimateSize() {
+            long estimate = 128;
+
+            estimate += messageId == null ? 0 : 2 * messageId.length();
+            estimate += subject == null ? 0 : 2 * subject.length();
+
+            if (from != null) {
+                for (Address address : from) {
+                    estimate += 64 + 2 * address.toString().length();
+                }
+            }
+
+            return estimate;
+        }
+    }
+}
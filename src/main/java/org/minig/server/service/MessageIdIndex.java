@@ -0,0 +1,148 @@
+package org.minig.server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the UID of messages per user and folder by their Message-ID. Entries are collected while folders
+ * are listed and allow to resolve a Message-ID based {@link CompositeId} without a SEARCH. A folder index is
+ * dropped as soon as the UIDVALIDITY of the folder changes.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class MessageIdIndex {
+
+    private final Map<FolderKey, FolderIndex> folders;
+    private final int maxEntriesPerFolder;
+
+    @Autowired
+    public MessageIdIndex(@Value("${minig.index.max-folders:1000}") int maxFolders,
+                          @Value("${minig.index.max-entries-per-folder:10000}") int maxEntriesPerFolder) {
+        this.maxEntriesPerFolder = maxEntriesPerFolder;
+        this.folders = new LinkedHashMap<FolderKey, FolderIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FolderKey, FolderIndex> eldest) {
+                return size() > maxFolders;
+            }
+        };
+    }
+
+    public void put(String user, String folder, long uidValidity, String messageId, long uid) {
+        if (messageId == null || uidValidity <= 0 || uid <= 0) {
+            return;
+        }
+
+        FolderKey key = new FolderKey(user, folder);
+        FolderIndex folderIndex;
+
+        synchronized (folders) {
+            folderIndex = folders.get(key);
+
+            if (folderIndex == null || folderIndex.uidValidity != uidValidity) {
+                folderIndex = new FolderIndex(uidValidity, maxEntriesPerFolder);
+                folders.put(key, folderIndex);
+            }
+        }
+
+        folderIndex.put(messageId, uid);
+    }
+
+    /**
+     * @return the UID or {@code null} if unknown or the UIDVALIDITY of the folder has changed
+     */
+    public Long get(String user, String folder, long uidValidity, String messageId) {
+        FolderKey key = new FolderKey(user, folder);
+        FolderIndex folderIndex;
+
+        synchronized (folders) {
+            folderIndex = folders.get(key);
+
+            if (folderIndex == null) {
+                return null;
+            }
+
+            if (folderIndex.uidValidity != uidValidity) {
+                folders.remove(key);
+                return null;
+            }
+        }
+
+        return folderIndex.get(messageId);
+    }
+
+    public void remove(String user, String folder, String messageId) {
+        FolderIndex folderIndex;
+
+        synchronized (folders) {
+            folderIndex = folders.get(new FolderKey(user, folder));
+        }
+
+        if (folderIndex != null) {
+            folderIndex.remove(messageId);
+        }
+    }
+
+    public void invalidate(String user, String folder) {
+        synchronized (folders) {
+            folders.remove(new FolderKey(user, folder));
+        }
+    }
+
+    private static final class FolderIndex {
+
+        private final long uidValidity;
+        private final Map<String, Long> uids;
+
+        private FolderIndex(long uidValidity, int maxEntries) {
+            this.uidValidity = uidValidity;
+            this.uids = new LinkedHashMap<String, Long>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private synchronized void put(String messageId, long uid) {
+            uids.put(messageId, uid);
+        }
+
+        private synchronized Long get(String messageId) {
+            return uids.get(messageId);
+        }
+
+        private synchronized void remove(String messageId) {
+            uids.remove(messageId);
+        }
+    }
+
+    private static final class FolderKey {
+
+        private final String user;
+        private final String folder;
+
+        private FolderKey(String user, String folder) {
+            this.user = user;
+            this.folder = folder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FolderKey)) return false;
+            FolderKey that = (FolderKey) o;
+            return Objects.equals(user, that.user) && Objects.equals(folder, that.folder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, folder);
+        }
+    }
+}
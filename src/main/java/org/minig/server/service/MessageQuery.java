@@ -0,0 +1,78 @@
+package org.minig.server.service;
+
+import javax.mail.search.AndTerm;
+import javax.mail.search.BodyTerm;
+import javax.mail.search.ComparisonTerm;
+import javax.mail.search.FromStringTerm;
+import javax.mail.search.OrTerm;
+import javax.mail.search.ReceivedDateTerm;
+import javax.mail.search.SearchTerm;
+import javax.mail.search.SubjectTerm;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Predicates of a message search. All given predicates must match. {@code text} matches subject, sender or body.
+ * Dates are compared against the internal date of a message like IMAP SINCE and BEFORE do.
+ *
+ * @author Kamill Sokol
+ */
+public class MessageQuery {
+
+    private final String text;
+    private final String subject;
+    private final String from;
+    private final String body;
+    private final Date since;
+    private final Date before;
+
+    public MessageQuery(String text, String subject, String from, String body, Date since, Date before) {
+        this.text = text;
+        this.subject = subject;
+        this.from = from;
+        this.body = body;
+        this.since = since;
+        this.before = before;
+    }
+
+    public boolean isEmpty() {
+        return toSearchTerm() == null;
+    }
+
+    /**
+     * @return the search term or {@code null} if no predicate is given
+     */
+    public SearchTerm toSearchTerm() {
+        List<SearchTerm> terms = new ArrayList<>(6);
+
+        if (hasText(text)) {
+            terms.add(new OrTerm(new SearchTerm[] { new SubjectTerm(text), new FromStringTerm(text), new BodyTerm(text) }));
+        }
+        if (hasText(subject)) {
+            terms.add(new SubjectTerm(subject));
+        }
+        if (hasText(from)) {
+            terms.add(new FromStringTerm(from));
+        }
+        if (hasText(body)) {
+            terms.add(new BodyTerm(body));
+        }
+        if (since != null) {
+            terms.add(new ReceivedDateTerm(ComparisonTerm.GE, since));
+        }
+        if (before != null) {
+            terms.add(new ReceivedDateTerm(ComparisonTerm.LT, before));
+        }
+
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        return terms.size() == 1 ? terms.get(0) : new AndTerm(terms.toArray(new SearchTerm[terms.size()]));
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
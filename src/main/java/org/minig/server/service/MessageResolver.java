@@ -0,0 +1,179 @@
+package org.minig.server.service;
+
+import org.minig.security.MailAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.search.MessageIDTerm;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Resolves a {@link CompositeId} to messages of an opened folder. Ids carrying an UIDVALIDITY/UID pair are
+ * resolved with {@link UIDFolder#getMessageByUID(long)}. Message-ID based ids are looked up in the
+ * {@link MessageIdIndex} first. A SEARCH for the Message-ID is only issued if neither yields an UID or the
+ * UIDVALIDITY of the folder has changed since the id was handed out.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class MessageResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageResolver.class);
+
+    private static final Message[] EMPTY = new Message[0];
+
+    private final MessageIdIndex messageIdIndex;
+    private final MailAuthentication mailAuthentication;
+
+    @Autowired
+    public MessageResolver(MessageIdIndex messageIdIndex, MailAuthentication mailAuthentication) {
+        this.messageIdIndex = Objects.requireNonNull(messageIdIndex, "messageIdIndex is null");
+        this.mailAuthentication = Objects.requireNonNull(mailAuthentication, "mailAuthentication is null");
+    }
+
+    public Message[] resolve(Folder folder, CompositeId id) throws MessagingException {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(id, "id is null");
+
+        if (folder instanceof UIDFolder) {
+            UIDFolder uidFolder = (UIDFolder) folder;
+            long uidValidity = uidFolder.getUIDValidity();
+
+            if (id.hasUid()) {
+                if (uidValidity == id.getUidValidity()) {
+                    Message message = uidFolder.getMessageByUID(id.getUid());
+                    return message == null ? EMPTY : new Message[] { message };
+                }
+
+                log.debug("UIDVALIDITY of {} changed, falling back to Message-ID {}", folder.getFullName(), id.getMessageId());
+            }
+
+            if (id.getMessageId() != null) {
+                String user = mailAuthentication.getEmailAddress();
+                Long uid = messageIdIndex.get(user, folder.getFullName(), uidValidity, id.getMessageId());
+
+                if (uid != null) {
+                    Message message = uidFolder.getMessageByUID(uid);
+
+                    if (message != null) {
+                        return new Message[] { message };
+                    }
+
+                    // expunged by another client
+                    messageIdIndex.remove(user, folder.getFullName(), id.getMessageId());
+                }
+            }
+        }
+
+        if (id.getMessageId() == null) {
+            return EMPTY;
+        }
+
+        return folder.search(new MessageIDTerm(id.getMessageId()));
+    }
+
+    /**
+     * Resolves several ids of the same folder at once. Ids with a known UID are resolved with a single UID FETCH,
+     * the remaining ids are searched by Message-ID.
+     *
+     * @return messages in the order of the given ids, {@code null} for an id that could not be resolved
+     */
+    public Message[] resolve(Folder folder, List<? extends CompositeId> ids) throws MessagingException {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(ids, "ids is null");
+
+        Message[] resolved = new Message[ids.size()];
+        boolean[] uidResolved = new boolean[ids.size()];
+        boolean[] indexed = new boolean[ids.size()];
+
+        if (folder instanceof UIDFolder) {
+            UIDFolder uidFolder = (UIDFolder) folder;
+            long uidValidity = uidFolder.getUIDValidity();
+            String user = mailAuthentication.getEmailAddress();
+            long[] uids = new long[ids.size()];
+            int[] positions = new int[ids.size()];
+            int count = 0;
+
+            for (int i = 0; i < ids.size(); i++) {
+                CompositeId id = ids.get(i);
+                Long uid = null;
+
+                if (id.hasUid() && uidValidity == id.getUidValidity()) {
+                    uid = id.getUid();
+                    uidResolved[i] = true;
+                } else if (id.getMessageId() != null) {
+                    uid = messageIdIndex.get(user, folder.getFullName(), uidValidity, id.getMessageId());
+                    indexed[i] = uid != null;
+                }
+
+                if (uid != null) {
+                    uids[count] = uid;
+                    positions[count++] = i;
+                }
+            }
+
+            if (count > 0) {
+                Message[] messages = uidFolder.getMessagesByUID(Arrays.copyOf(uids, count));
+
+                for (int i = 0; i < count; i++) {
+                    resolved[positions[i]] = messages[i];
+                }
+            }
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            if (resolved[i] == null && !uidResolved[i]) {
+                CompositeId id = ids.get(i);
+
+                if (indexed[i]) {
+                    // expunged by another client
+                    expunged(folder, id);
+                }
+
+                Message[] search = id.getMessageId() == null ? EMPTY : folder.search(new MessageIDTerm(id.getMessageId()));
+                resolved[i] = search.length > 0 ? search[0] : null;
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Records the UIDs of already fetched messages. Messages must have been fetched with
+     * {@link UIDFolder.FetchProfileItem#UID} and the Message-ID header, otherwise every message costs a round trip.
+     */
+    public void index(Folder folder, Message[] messages) throws MessagingException {
+        if (!(folder instanceof UIDFolder)) {
+            return;
+        }
+
+        UIDFolder uidFolder = (UIDFolder) folder;
+        String user = mailAuthentication.getEmailAddress();
+        long uidValidity = uidFolder.getUIDValidity();
+
+        for (Message message : messages) {
+            String[] messageId = message.getHeader("Message-ID");
+
+            if (messageId != null && messageId.length > 0) {
+                messageIdIndex.put(user, folder.getFullName(), uidValidity, messageId[0], uidFolder.getUID(message));
+            }
+        }
+    }
+
+    /**
+     * Drops the index entry of a message that is about to be expunged.
+     */
+    public void expunged(Folder folder, CompositeId id) {
+        if (id.getMessageId() != null) {
+            messageIdIndex.remove(mailAuthentication.getEmailAddress(), folder.getFullName(), id.getMessageId());
+        }
+    }
+}
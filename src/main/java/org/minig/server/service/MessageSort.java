@@ -0,0 +1,80 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.SortTerm;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * Sort keys of message lists. Each key knows the IMAP SORT criterion (RFC 5256) and a comparator for servers
+ * without the SORT extension.
+ *
+ * @author Kamill Sokol
+ */
+public enum MessageSort {
+
+    DATE(SortTerm.DATE, Comparator.comparing(MessageSort::sentDate, Comparator.nullsFirst(Comparator.naturalOrder()))),
+    ARRIVAL(SortTerm.ARRIVAL, Comparator.comparingInt(MimeMessage::getMessageNumber)),
+    FROM(SortTerm.FROM, Comparator.comparing(MessageSort::from)),
+    SUBJECT(SortTerm.SUBJECT, Comparator.comparing(MessageSort::baseSubject)),
+    SIZE(SortTerm.SIZE, Comparator.comparingInt(MessageSort::size));
+
+    private static final Pattern SUBJECT_PREFIX = Pattern.compile("^((re|fwd?|aw|wg)(\\[\\d+\\])?:\\s*)+", Pattern.CASE_INSENSITIVE);
+
+    private final SortTerm sortTerm;
+    private final Comparator<MimeMessage> comparator;
+
+    MessageSort(SortTerm sortTerm, Comparator<MimeMessage> comparator) {
+        this.sortTerm = sortTerm;
+        this.comparator = comparator;
+    }
+
+    public SortTerm[] getSortTerms(boolean reverse) {
+        return reverse ? new SortTerm[] { SortTerm.REVERSE, sortTerm } : new SortTerm[] { sortTerm };
+    }
+
+    /**
+     * @param envelope envelope data to compare a message by, e.g. served from the {@link MessageHeaderCache}
+     */
+    public Comparator<Message> getComparator(boolean reverse, Function<Message, MimeMessage> envelope) {
+        Comparator<Message> byEnvelope = Comparator.comparing(envelope, comparator);
+        // ties are ordered by arrival like servers do
+        return (reverse ? byEnvelope.reversed() : byEnvelope).thenComparingInt(Message::getMessageNumber);
+    }
+
+    /**
+     * @return the subject without reply and forward prefixes as defined by the base subject of RFC 5256
+     */
+    static String baseSubject(MimeMessage message) {
+        String subject = rethrowCheckedAsUnchecked(message::getSubject);
+        return subject == null ? "" : SUBJECT_PREFIX.matcher(subject.trim()).replaceFirst("").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static Date sentDate(MimeMessage message) {
+        return rethrowCheckedAsUnchecked(message::getSentDate);
+    }
+
+    private static String from(MimeMessage message) {
+        return rethrowCheckedAsUnchecked(() -> {
+            Address[] from = message.getFrom();
+
+            if (from == null || from.length == 0 || !(from[0] instanceof InternetAddress) || ((InternetAddress) from[0]).getAddress() == null) {
+                return "";
+            }
+            return ((InternetAddress) from[0]).getAddress().toLowerCase(Locale.ENGLISH);
+        });
+    }
+
+    private static int size(MimeMessage message) {
+        return rethrowCheckedAsUnchecked(message::getSize);
+    }
+}
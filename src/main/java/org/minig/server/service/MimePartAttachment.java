@@ -0,0 +1,302 @@
+package org.minig.server.service;
+
+import com.sun.mail.iap.ByteArray;
+import com.sun.mail.imap.IMAPBodyPart;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.protocol.BODY;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.minig.server.MailAttachment;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimePart;
+import javax.mail.internet.MimeUtility;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * An attachment backed by a part of a message. Parts of IMAP messages that are not encoded or base64 encoded are read
+ * with partial fetches ({@code BODY.PEEK[section]<offset.length>}) from the requested offset on. The decoded size of
+ * a base64 part is derived from the line layout of the first and last line, a part with irregular lines is read from
+ * the beginning like parts of every other encoding.
+ *
+ * @author Kamill Sokol
+ */
+class MimePartAttachment extends MailAttachment {
+
+    static final int CHUNK_SIZE = 16384;
+
+    private final Part part;
+    private final IMAPMessage imapMessage;
+    private final String section;
+    private final Date lastModified;
+
+    private Base64Layout base64Layout;
+    private long size = -2;
+
+    /**
+     * @param imapMessage the message the part belongs to or {@code null} if it is not an IMAP message
+     * @param section IMAP section of the part, e.g. {@code 2.1}
+     */
+    MimePartAttachment(CompositeAttachmentId id, String mime, String contentId, String dispositionType,
+                       Part part, IMAPMessage imapMessage, String section, Date lastModified) {
+        super(id, mime, contentId, dispositionType, null);
+        this.part = part;
+        this.imapMessage = part instanceof IMAPBodyPart ? imapMessage : null;
+        this.section = section;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public InputStream getData() {
+        return rethrowCheckedAsUnchecked(part::getInputStream);
+    }
+
+    @Override
+    public InputStream getData(long offset) throws IOException {
+        if (offset > 0 && isIdentityEncoded()) {
+            return new SectionInputStream(offset, rethrowCheckedAsUnchecked(part::getSize));
+        }
+
+        if (offset > 0 && getBase64Layout() != null) {
+            Base64Layout layout = getBase64Layout();
+            long line = offset / layout.decodedLineLength;
+            InputStream encoded = new SectionInputStream(line * layout.encodedLineLength, rethrowCheckedAsUnchecked(part::getSize));
+            InputStream decoded = rethrowCheckedAsUnchecked(() -> MimeUtility.decode(encoded, "base64"));
+
+            IOUtils.skipFully(decoded, offset - line * layout.decodedLineLength);
+            return decoded;
+        }
+
+        return super.getData(offset);
+    }
+
+    @Override
+    public synchronized long getSize() {
+        if (size == -2) {
+            size = computeSize();
+        }
+        return size;
+    }
+
+    /**
+     * Only the size of parts that are not encoded is known from BODYSTRUCTURE, the decoded size of every other part
+     * needs at least one more round trip.
+     */
+    @Override
+    public synchronized long getKnownSize() {
+        if (size != -2) {
+            return size;
+        }
+        return isIdentityEncoded() ? rethrowCheckedAsUnchecked(part::getSize) : -1;
+    }
+
+    /**
+     * Made of UIDVALIDITY, UID and section, so that it stays valid as long as the part can be addressed at all.
+     */
+    @Override
+    public String getETag() {
+        if (!hasUid()) {
+            return null;
+        }
+        return String.format("\"%d-%d-%s\"", getUidValidity(), getUid(), section);
+    }
+
+    @Override
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    private long computeSize() {
+        try {
+            if (isIdentityEncoded()) {
+                return part.getSize();
+            }
+            if (getBase64Layout() != null) {
+                return getBase64Layout().decodedSize;
+            }
+
+            try (InputStream data = getData()) {
+                return IOUtils.copyLarge(data, NullOutputStream.NULL_OUTPUT_STREAM);
+            }
+        } catch (IOException | MessagingException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+
+    private boolean isIdentityEncoded() {
+        if (imapMessage == null) {
+            return false;
+        }
+
+        String encoding = rethrowCheckedAsUnchecked(((MimePart) part)::getEncoding);
+        return encoding == null || encoding.equalsIgnoreCase("7bit") || encoding.equalsIgnoreCase("8bit") || encoding.equalsIgnoreCase("binary");
+    }
+
+    private synchronized Base64Layout getBase64Layout() throws IOException {
+        if (base64Layout != null || imapMessage == null) {
+            return base64Layout;
+        }
+
+        try {
+            if (!"base64".equalsIgnoreCase(((MimePart) part).getEncoding())) {
+                return null;
+            }
+
+            long encodedSize = part.getSize();
+            byte[] head = fetch(0, (int) Math.min(encodedSize, 1024));
+            byte[] tail = fetch(Math.max(0, encodedSize - 1024), (int) Math.min(encodedSize, 1024));
+
+            base64Layout = Base64Layout.of(head, tail, encodedSize);
+            return base64Layout;
+        } catch (MessagingException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private byte[] fetch(long start, int length) throws MessagingException {
+        IMAPFolder folder = (IMAPFolder) imapMessage.getFolder();
+        int messageNumber = imapMessage.getMessageNumber();
+
+        BODY body = (BODY) folder.doCommand(protocol -> protocol.peekBody(messageNumber, section, (int) start, length));
+        ByteArray byteArray = body == null ? null : body.getByteArray();
+
+        if (byteArray == null) {
+            return new byte[0];
+        }
+        return Arrays.copyOfRange(byteArray.getBytes(), byteArray.getStart(), byteArray.getStart() + byteArray.getCount());
+    }
+
+    /**
+     * Line layout of a base64 encoded body. Every line but the last one is expected to have the same length.
+     */
+    static final class Base64Layout {
+
+        final long encodedLineLength;
+        final long decodedLineLength;
+        final long decodedSize;
+
+        private Base64Layout(long encodedLineLength, long decodedLineLength, long decodedSize) {
+            this.encodedLineLength = encodedLineLength;
+            this.decodedLineLength = decodedLineLength;
+            this.decodedSize = decodedSize;
+        }
+
+        /**
+         * @param head the first bytes of the encoded body, at least one line
+         * @param tail the last bytes of the encoded body, at least one line
+         * @return the layout or {@code null} if the lines of the body are not of equal length
+         */
+        static Base64Layout of(byte[] head, byte[] tail, long encodedSize) {
+            int lineLength = 0;
+
+            while (lineLength < head.length && head[lineLength] != '\r' && head[lineLength] != '\n') {
+                lineLength++;
+            }
+
+            if (lineLength == head.length || lineLength == 0 || lineLength % 4 != 0) {
+                return null;
+            }
+
+            int separator = head[lineLength] == '\r' && lineLength + 1 < head.length && head[lineLength + 1] == '\n' ? 2 : 1;
+            int end = tail.length;
+
+            while (end > 0 && (tail[end - 1] == '\r' || tail[end - 1] == '\n')) {
+                end--;
+            }
+
+            int start = end;
+
+            while (start > 0 && tail[start - 1] != '\r' && tail[start - 1] != '\n') {
+                start--;
+            }
+
+            int lastLineLength = end - start;
+
+            if (lastLineLength == 0 || lastLineLength % 4 != 0 || lastLineLength > lineLength || (start == 0 && tail.length < encodedSize)) {
+                return null;
+            }
+
+            long leading = encodedSize - (tail.length - start);
+
+            if (leading % (lineLength + separator) != 0) {
+                return null;
+            }
+
+            int padding = 0;
+
+            for (int i = end - 1; i >= start && tail[i] == '='; i--) {
+                padding++;
+            }
+
+            long decodedLineLength = lineLength / 4 * 3;
+            long decodedSize = leading / (lineLength + separator) * decodedLineLength + lastLineLength / 4 * 3 - padding;
+
+            return new Base64Layout(lineLength + separator, decodedLineLength, decodedSize);
+        }
+    }
+
+    /**
+     * Reads a section of an IMAP message chunk by chunk.
+     */
+    private final class SectionInputStream extends InputStream {
+
+        private final long end;
+        private long position;
+        private byte[] buffer = new byte[0];
+        private int bufferPosition;
+
+        private SectionInputStream(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer[bufferPosition++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.length - bufferPosition);
+            System.arraycopy(buffer, bufferPosition, b, off, count);
+            bufferPosition += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (bufferPosition < buffer.length) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+
+            try {
+                buffer = fetch(position, (int) Math.min(CHUNK_SIZE, end - position));
+            } catch (MessagingException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            bufferPosition = 0;
+            position += buffer.length;
+            return buffer.length > 0;
+        }
+    }
+}
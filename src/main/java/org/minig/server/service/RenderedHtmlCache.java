@@ -0,0 +1,181 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.FileUtils;
+import org.minig.server.service.BoundedLruCache.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps sanitised html bodies per user, folder, UID, render version and attachment uri. Entries are evicted least
+ * recently used once the estimated size exceeds the configured limit. If an overflow directory is configured,
+ * evicted bodies are written to local disk and read from there until the overflow limit is exceeded as well.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=RenderedHtmlCache")
+public class RenderedHtmlCache implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderedHtmlCache.class);
+
+    private final BoundedLruCache<String> entries;
+    private final BoundedLruCache<Overflow> overflows;
+    private final File overflowDirectory;
+
+    @Autowired
+    public RenderedHtmlCache(@Value("${minig.html-cache.max-size-mb:16}") long maxSizeMegabytes,
+                             @Value("${minig.html-cache.overflow-directory:}") String overflowDirectory,
+                             @Value("${minig.html-cache.overflow-max-size-mb:256}") long maxOverflowSizeMegabytes) throws IOException {
+        this.overflowDirectory = StringUtils.hasText(overflowDirectory) ? new File(overflowDirectory) : null;
+        this.entries = new BoundedLruCache<>(maxSizeMegabytes * 1024 * 1024, RenderedHtmlCache::estimateSize, this::overflow);
+        this.overflows = new BoundedLruCache<>(maxOverflowSizeMegabytes * 1024 * 1024, overflow -> overflow.size, (key, overflow) -> delete(overflow.file));
+
+        if (this.overflowDirectory != null && !this.overflowDirectory.isDirectory() && !this.overflowDirectory.mkdirs()) {
+            throw new IOException("cannot create overflow directory " + this.overflowDirectory);
+        }
+    }
+
+    /**
+     * @param renderVersion version of the renderer the body has been rendered with
+     * @param attachmentUri base uri of inline attachments the body has been rendered with
+     * @return the body or {@code null} if unknown
+     */
+    public String get(String user, String folder, long uidValidity, long uid, int renderVersion, String attachmentUri) {
+        Key key = new Key(user, folder, uidValidity, uid, renderVersion, attachmentUri);
+        String html = entries.get(key);
+
+        if (html != null || overflowDirectory == null) {
+            return html;
+        }
+
+        Overflow overflow = overflows.get(key);
+
+        if (overflow != null) {
+            try {
+                return FileUtils.readFileToString(overflow.file, UTF_8);
+            } catch (IOException e) {
+                log.debug("overflow of {} is gone: {}", key, e.getMessage());
+
+                if (overflows.remove(key, overflow)) {
+                    delete(overflow.file);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    public void put(String user, String folder, long uidValidity, long uid, int renderVersion, String attachmentUri, String html) {
+        Objects.requireNonNull(html, "html is null");
+        entries.put(new Key(user, folder, uidValidity, uid, renderVersion, attachmentUri), html);
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        entries.clear();
+        overflows.clear().forEach(overflow -> delete(overflow.file));
+    }
+
+    @Override
+    public void destroy() {
+        clear();
+    }
+
+    @ManagedAttribute(description = "Number of bodies held in memory")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Estimated size of all bodies held in memory in bytes")
+    public long getSize() {
+        return entries.getWeight();
+    }
+
+    @ManagedAttribute(description = "Maximum size of all bodies held in memory in bytes")
+    public long getMaxSize() {
+        return entries.getMaxWeight();
+    }
+
+    @ManagedAttribute(description = "Number of bodies written to the overflow directory")
+    public int getOverflowEntries() {
+        return overflows.size();
+    }
+
+    @ManagedAttribute(description = "Size of all bodies in the overflow directory in bytes")
+    public long getOverflowSize() {
+        return overflows.getWeight();
+    }
+
+    @ManagedAttribute(description = "Number of bodies served from memory")
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of bodies served from the overflow directory")
+    public long getOverflowHits() {
+        return overflows.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of bodies that had to be rendered")
+    public long getMisses() {
+        return overflowDirectory == null ? entries.getMisses() : overflows.getMisses();
+    }
+
+    private void overflow(Key key, String html) {
+        if (overflowDirectory == null) {
+            return;
+        }
+
+        File file = new File(overflowDirectory, UUID.randomUUID().toString());
+
+        try {
+            FileUtils.writeStringToFile(file, html, UTF_8);
+        } catch (IOException e) {
+            log.warn("could not write overflow {}: {}", file, e.getMessage());
+            delete(file);
+            return;
+        }
+
+        Overflow previous = overflows.put(key, new Overflow(file, file.length()));
+
+        if (previous != null) {
+            delete(previous.file);
+        }
+    }
+
+    private static long estimateSize(String html) {
+        return 128 + 2L * html.length();
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("could not delete overflow {}", file);
+        }
+    }
+
+    private static final class Overflow {
+
+        private final File file;
+        private final long size;
+
+        private Overflow(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
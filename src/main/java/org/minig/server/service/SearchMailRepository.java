@@ -0,0 +1,59 @@
+package org.minig.server.service;
+
+import org.minig.server.PartialMailMessage;
+import org.minig.server.service.impl.MailContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+import static org.minig.server.util.PageUtils.slice;
+
+/**
+ * Searches a folder with IMAP SEARCH. Only the matching sequence numbers travel over the wire, the envelopes are
+ * fetched for the requested page only. Hits are ordered by UID, most recently arrived message first.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class SearchMailRepository {
+
+    private final MailContext mailContext;
+
+    public SearchMailRepository(MailContext mailContext) {
+        this.mailContext = mailContext;
+    }
+
+    public Page<PartialMailMessage> search(String folder, MessageQuery query, Pageable pageable) {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(query, "query is null");
+        Objects.requireNonNull(pageable, "pageable is null");
+
+        return rethrowCheckedAsUnchecked(() -> {
+            Folder storeFolder = mailContext.getFolder(folder);
+            List<Message> hits = Arrays.asList(storeFolder.search(query.toSearchTerm()));
+
+            // sequence numbers grow with the UID
+            Collections.reverse(hits);
+
+            List<Message> page = slice(hits, pageable);
+
+            if (!page.isEmpty()) {
+                storeFolder.fetch(page.toArray(new Message[page.size()]), MailRepository.partialMailProfile());
+            }
+
+            List<PartialMailMessage> content = page.stream().map(m -> new PartialMailMessage((MimeMessage) m)).collect(Collectors.toList());
+            return new PageImpl<>(content, pageable, hits.size());
+        });
+    }
+}
@@ -0,0 +1,272 @@
+package org.minig.server.service;
+
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import org.minig.server.MailThread;
+import org.minig.server.PartialMailMessage;
+import org.minig.server.service.impl.MailContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+import static org.minig.server.util.PageUtils.slice;
+
+/**
+ * Sorted and threaded message lists. Sorting and threading is left to the server if it announces SORT and
+ * THREAD=REFERENCES (RFC 5256), only the requested page is fetched. Other servers get the whole folder sorted in
+ * memory, threads are then built from the base subject like THREAD=ORDEREDSUBJECT. Envelopes are served from the
+ * {@link MessageHeaderCache}, hence after the first listing only the UIDs of the folder are fetched again.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+public class SortedMailRepository {
+
+    private final MailContext mailContext;
+    private final MailRepository mailRepository;
+
+    public SortedMailRepository(MailContext mailContext, MailRepository mailRepository) {
+        this.mailContext = mailContext;
+        this.mailRepository = mailRepository;
+    }
+
+    public Page<PartialMailMessage> findByFolder(String folder, MessageSort sort, boolean reverse, Pageable pageable) {
+        return findByFolder(folder, sort, reverse, pageable, MailRepository.partialMailProfile());
+    }
+
+    /**
+     * @param fetchProfile items fetched for the messages of the page
+     */
+    public Page<PartialMailMessage> findByFolder(String folder, MessageSort sort, boolean reverse, Pageable pageable, FetchProfile fetchProfile) {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(sort, "sort is null");
+        Objects.requireNonNull(pageable, "pageable is null");
+        Objects.requireNonNull(fetchProfile, "fetchProfile is null");
+
+        return rethrowCheckedAsUnchecked(() -> {
+            Folder storeFolder = mailContext.getFolder(folder);
+            Message[] sorted = sort(storeFolder, sort, reverse);
+            List<Message> page = slice(Arrays.asList(sorted), pageable);
+            Message[] messages = page.toArray(new Message[page.size()]);
+
+            if (messages.length > 0) {
+                storeFolder.fetch(messages, fetchProfile);
+            }
+
+            List<PartialMailMessage> content = page.stream().map(m -> new PartialMailMessage((MimeMessage) m)).collect(Collectors.toList());
+            return new PageImpl<>(content, pageable, sorted.length);
+        });
+    }
+
+    /**
+     * @return threads with the most recently arrived message first
+     */
+    public Page<MailThread> findThreadsByFolder(String folder, Pageable pageable) {
+        Objects.requireNonNull(folder, "folder is null");
+        Objects.requireNonNull(pageable, "pageable is null");
+
+        return rethrowCheckedAsUnchecked(() -> {
+            Folder storeFolder = mailContext.getFolder(folder);
+            List<List<Message>> threads;
+            int total;
+
+            if (hasCapability(storeFolder, "THREAD=REFERENCES")) {
+                List<long[]> uidThreads = threadByReferences((IMAPFolder) storeFolder);
+                total = uidThreads.size();
+                threads = resolve((IMAPFolder) storeFolder, slice(uidThreads, pageable));
+            } else {
+                List<List<Message>> subjectThreads = threadBySubject(storeFolder);
+                total = subjectThreads.size();
+                threads = slice(subjectThreads, pageable);
+            }
+
+            List<Message> messages = threads.stream().flatMap(List::stream).collect(Collectors.toList());
+
+            if (!messages.isEmpty()) {
+                storeFolder.fetch(messages.toArray(new Message[messages.size()]), MailRepository.partialMailProfile());
+            }
+
+            List<MailThread> content = threads.stream()
+                    .map(thread -> new MailThread(thread.stream().map(m -> new PartialMailMessage((MimeMessage) m)).collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+
+            return new PageImpl<>(content, pageable, total);
+        });
+    }
+
+    private Message[] sort(Folder folder, MessageSort sort, boolean reverse) throws MessagingException {
+        if (hasCapability(folder, "SORT")) {
+            return ((IMAPFolder) folder).getSortedMessages(sort.getSortTerms(reverse));
+        }
+
+        Message[] messages = allMessages(folder);
+        Function<Message, MimeMessage> envelope = MimeMessage.class::cast;
+
+        if (sort == MessageSort.SIZE) {
+            // the size is not cached
+            FetchProfile fp = new FetchProfile();
+            fp.add(FetchProfile.Item.SIZE);
+            folder.fetch(messages, fp);
+        } else if (sort != MessageSort.ARRIVAL) {
+            envelope = envelopes(folder, messages);
+        }
+
+        return Arrays.stream(messages).sorted(sort.getComparator(reverse, envelope)).toArray(Message[]::new);
+    }
+
+    private static List<long[]> threadByReferences(IMAPFolder folder) throws MessagingException {
+        @SuppressWarnings("unchecked")
+        List<long[]> threads = (List<long[]>) folder.doCommand(protocol -> {
+            Response[] responses = protocol.command("UID THREAD REFERENCES UTF-8 ALL", null);
+            Response result = responses[responses.length - 1];
+            List<long[]> parsed = new ArrayList<>();
+
+            if (result.isOK()) {
+                for (int i = 0; i < responses.length; i++) {
+                    if (responses[i] instanceof IMAPResponse && ((IMAPResponse) responses[i]).keyEquals("THREAD")) {
+                        parsed.addAll(parseThreads(responses[i].getRest()));
+                        responses[i] = null;
+                    }
+                }
+            }
+
+            protocol.notifyResponseHandlers(responses);
+            protocol.handleResult(result);
+            return parsed;
+        });
+
+        threads.sort(Comparator.<long[]>comparingLong(SortedMailRepository::max).reversed());
+        return threads;
+    }
+
+    private static List<List<Message>> resolve(IMAPFolder folder, List<long[]> threads) throws MessagingException {
+        long[] uids = threads.stream().flatMapToLong(Arrays::stream).toArray();
+        Message[] messages = uids.length == 0 ? new Message[0] : folder.getMessagesByUID(uids);
+        List<List<Message>> resolved = new ArrayList<>();
+        int index = 0;
+
+        for (long[] thread : threads) {
+            List<Message> resolvedThread = new ArrayList<>();
+
+            for (int i = 0; i < thread.length; i++, index++) {
+                // expunged in the meantime
+                if (messages[index] != null) {
+                    resolvedThread.add(messages[index]);
+                }
+            }
+
+            if (!resolvedThread.isEmpty()) {
+                resolved.add(resolvedThread);
+            }
+        }
+
+        return resolved;
+    }
+
+    private List<List<Message>> threadBySubject(Folder folder) throws MessagingException {
+        Message[] messages = allMessages(folder);
+        Function<Message, MimeMessage> envelope = envelopes(folder, messages);
+        Map<String, List<Message>> bySubject = new LinkedHashMap<>();
+
+        for (Message message : messages) {
+            bySubject.computeIfAbsent(MessageSort.baseSubject(envelope.apply(message)), subject -> new ArrayList<>()).add(message);
+        }
+
+        Comparator<Message> date = MessageSort.DATE.getComparator(false, envelope);
+        List<List<Message>> threads = new ArrayList<>();
+
+        for (List<Message> thread : bySubject.values()) {
+            thread.sort(date);
+            threads.add(thread);
+        }
+
+        threads.sort(Comparator.comparingInt((List<Message> thread) -> thread.stream().mapToInt(Message::getMessageNumber).max().orElse(0)).reversed());
+        return threads;
+    }
+
+    /**
+     * Flattens every top level thread of a THREAD response, e.g. {@code (2)(3 6 (4 23)(44 7 96))} into
+     * {@code [2], [3, 6, 4, 23, 44, 7, 96]}.
+     */
+    static List<long[]> parseThreads(String response) {
+        List<long[]> threads = new ArrayList<>();
+        List<Long> thread = new ArrayList<>();
+        int depth = 0;
+        long number = -1;
+
+        for (char c : (response == null ? "" : response).toCharArray()) {
+            if (Character.isDigit(c)) {
+                number = (number < 0 ? 0 : number * 10) + (c - '0');
+                continue;
+            }
+
+            if (number >= 0) {
+                thread.add(number);
+                number = -1;
+            }
+
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && depth > 0 && --depth == 0) {
+                threads.add(thread.stream().mapToLong(Long::longValue).toArray());
+                thread.clear();
+            }
+        }
+
+        return threads;
+    }
+
+    /**
+     * @return envelopes of the given messages, served from the {@link MessageHeaderCache} for IMAP folders
+     */
+    private Function<Message, MimeMessage> envelopes(Folder folder, Message[] messages) throws MessagingException {
+        if (!(folder instanceof IMAPFolder)) {
+            FetchProfile fp = new FetchProfile();
+            fp.add(FetchProfile.Item.ENVELOPE);
+            folder.fetch(messages, fp);
+            return MimeMessage.class::cast;
+        }
+
+        MessageHeaderCache.Entry[] entries = mailRepository.findEnvelopes((IMAPFolder) folder, messages, false);
+        Map<Message, MimeMessage> envelopes = new IdentityHashMap<>();
+
+        for (int i = 0; i < messages.length; i++) {
+            envelopes.put(messages[i], entries[i].toMimeMessage());
+        }
+
+        return envelopes::get;
+    }
+
+    private static Message[] allMessages(Folder folder) throws MessagingException {
+        int count = folder.getMessageCount();
+        return count == 0 ? new Message[0] : folder.getMessages(1, count);
+    }
+
+    private static long max(long[] thread) {
+        return Arrays.stream(thread).max().orElse(0);
+    }
+
+    private static boolean hasCapability(Folder folder, String capability) throws MessagingException {
+        return folder instanceof IMAPFolder && ((IMAPStore) folder.getStore()).hasCapability(capability);
+    }
+}
@@ -0,0 +1,59 @@
+package org.minig.server.service;
+
+import javax.activation.FileDataSource;
+import java.io.File;
+
+/**
+ * An uploaded attachment that is kept on local disk until the draft it belongs to is saved or sent.
+ *
+ * @author Kamill Sokol
+ */
+public class StagedAttachment extends FileDataSource {
+
+    private final String id;
+    private final String user;
+    private final String name;
+    private final String contentType;
+    private final long size;
+    private volatile long lastAccess;
+
+    StagedAttachment(String id, String user, File file, String name, String contentType, long size) {
+        super(file);
+        this.id = id;
+        this.user = user;
+        this.name = name;
+        this.contentType = contentType;
+        this.size = size;
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    String getUser() {
+        return user;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,274 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.IOUtils;
+import org.minig.security.MailAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import javax.activation.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local staging area for attachments of a draft that is being composed. Uploads are written to local disk and
+ * only become part of a message when the draft is saved or sent, so that uploading several files costs one APPEND
+ * instead of one per file. The space per user is bounded and staged attachments that have not been accessed for
+ * the configured time are deleted.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=StagedAttachmentStore")
+public class StagedAttachmentStore implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(StagedAttachmentStore.class);
+
+    private final Map<String, StagedAttachment> attachments = new HashMap<>();
+    private final Map<String, Long> usedBytes = new HashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    private final MailAuthentication mailAuthentication;
+    private final File directory;
+    private final boolean temporaryDirectory;
+    private final long maxBytesPerUser;
+    private final long ttl;
+
+    @Autowired
+    public StagedAttachmentStore(MailAuthentication mailAuthentication,
+                                 @Value("${minig.staging.directory:}") String directory,
+                                 @Value("${minig.staging.max-size-mb-per-user:50}") long maxSizeMbPerUser,
+                                 @Value("${minig.staging.ttl:3600}") long ttlSeconds) throws IOException {
+        Assert.isTrue(maxSizeMbPerUser > 0, "maxSizeMbPerUser must be greater than 0");
+        Assert.isTrue(ttlSeconds > 0, "ttl must be greater than 0");
+
+        this.mailAuthentication = Objects.requireNonNull(mailAuthentication, "mailAuthentication is null");
+        this.temporaryDirectory = !StringUtils.hasText(directory);
+        this.directory = temporaryDirectory ? Files.createTempDirectory("minig-staging").toFile() : new File(directory);
+        this.maxBytesPerUser = maxSizeMbPerUser * 1024 * 1024;
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("cannot create staging directory " + this.directory);
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "staged-attachment-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = Math.max(1, ttlSeconds / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Copies the data of the given source to local disk.
+     *
+     * @throws StagingLimitExceededException if the staged attachments of the user would exceed the configured size
+     */
+    public StagedAttachment stage(DataSource dataSource) {
+        Assert.notNull(dataSource, "dataSource is null");
+
+        String user = mailAuthentication.getEmailAddress();
+        long remaining;
+
+        synchronized (attachments) {
+            remaining = maxBytesPerUser - usedBytes.getOrDefault(user, 0L);
+        }
+
+        String id = UUID.randomUUID().toString();
+        File file = new File(directory, id);
+        long size;
+
+        try (InputStream inputStream = dataSource.getInputStream(); OutputStream outputStream = new FileOutputStream(file)) {
+            // one byte more than allowed to detect an exceeded limit without reading the whole upload
+            size = IOUtils.copyLarge(inputStream, outputStream, 0, remaining + 1);
+        } catch (IOException e) {
+            delete(file);
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
+        StagedAttachment attachment = new StagedAttachment(id, user, file, dataSource.getName(), dataSource.getContentType(), size);
+
+        synchronized (attachments) {
+            long used = usedBytes.getOrDefault(user, 0L);
+
+            // checked again, uploads of the same user may run concurrently
+            if (used + size <= maxBytesPerUser) {
+                usedBytes.put(user, used + size);
+                attachments.put(id, attachment);
+                return attachment;
+            }
+        }
+
+        delete(file);
+        throw new StagingLimitExceededException(String.format("staged attachments exceed %d bytes", maxBytesPerUser));
+    }
+
+    /**
+     * @throws NotFoundException if there is no staged attachment with the given id for the current user
+     */
+    public StagedAttachment get(String id) {
+        String user = mailAuthentication.getEmailAddress();
+
+        synchronized (attachments) {
+            StagedAttachment attachment = attachments.get(id);
+
+            if (attachment == null || !attachment.getUser().equals(user)) {
+                throw new NotFoundException();
+            }
+
+            attachment.touch();
+            return attachment;
+        }
+    }
+
+    public List<StagedAttachment> get(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<StagedAttachment> staged = new ArrayList<>(ids.size());
+
+        for (String id : ids) {
+            staged.add(get(id));
+        }
+
+        return staged;
+    }
+
+    public void remove(String id) {
+        remove(Collections.singletonList(get(id)));
+    }
+
+    /**
+     * Deletes staged attachments once they have become part of a message.
+     */
+    public void remove(Collection<StagedAttachment> staged) {
+        List<StagedAttachment> removed = new ArrayList<>(staged.size());
+
+        synchronized (attachments) {
+            for (StagedAttachment attachment : staged) {
+                if (attachments.remove(attachment.getId(), attachment)) {
+                    release(attachment);
+                    removed.add(attachment);
+                }
+            }
+        }
+
+        removed.forEach(attachment -> delete(attachment.getFile()));
+    }
+
+    @ManagedAttribute(description = "Number of staged attachments")
+    public int getSize() {
+        synchronized (attachments) {
+            return attachments.size();
+        }
+    }
+
+    @ManagedAttribute(description = "Total size of staged attachments in bytes")
+    public long getBytes() {
+        synchronized (attachments) {
+            return usedBytes.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    @ManagedAttribute(description = "Maximum size of staged attachments per user in bytes")
+    public long getMaxBytesPerUser() {
+        return maxBytesPerUser;
+    }
+
+    @ManagedAttribute(description = "Time to live of a staged attachment since its last access in seconds")
+    public long getTtlSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(ttl);
+    }
+
+    @ManagedOperation(description = "Deletes all staged attachments")
+    public void clear() {
+        List<StagedAttachment> removed;
+
+        synchronized (attachments) {
+            removed = new ArrayList<>(attachments.values());
+            attachments.clear();
+            usedBytes.clear();
+        }
+
+        removed.forEach(attachment -> delete(attachment.getFile()));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        evictor.shutdownNow();
+        clear();
+
+        if (temporaryDirectory) {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    void evictExpired() {
+        long expired = System.currentTimeMillis() - ttl;
+        List<StagedAttachment> removed = new ArrayList<>();
+
+        synchronized (attachments) {
+            Iterator<StagedAttachment> iterator = attachments.values().iterator();
+
+            while (iterator.hasNext()) {
+                StagedAttachment attachment = iterator.next();
+
+                if (attachment.getLastAccess() < expired) {
+                    iterator.remove();
+                    release(attachment);
+                    removed.add(attachment);
+                }
+            }
+        }
+
+        for (StagedAttachment attachment : removed) {
+            log.debug("evicting staged attachment {} of {}", attachment.getId(), attachment.getUser());
+            delete(attachment.getFile());
+        }
+    }
+
+    private void release(StagedAttachment attachment) {
+        long used = usedBytes.getOrDefault(attachment.getUser(), 0L) - attachment.getSize();
+
+        if (used > 0) {
+            usedBytes.put(attachment.getUser(), used);
+        } else {
+            usedBytes.remove(attachment.getUser());
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("could not delete staged attachment {}", file);
+        }
+    }
+}
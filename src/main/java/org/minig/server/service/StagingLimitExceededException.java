@@ -0,0 +1,17 @@
+package org.minig.server.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author Kamill Sokol
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class StagingLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StagingLimitExceededException(String message) {
+        super(message);
+    }
+}
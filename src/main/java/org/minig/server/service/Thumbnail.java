@@ -0,0 +1,27 @@
+package org.minig.server.service;
+
+import java.util.Objects;
+
+/**
+ * Encoded image as held by the {@link ThumbnailCache}.
+ *
+ * @author Kamill Sokol
+ */
+public final class Thumbnail {
+
+    private final String mime;
+    private final byte[] data;
+
+    public Thumbnail(String mime, byte[] data) {
+        this.mime = Objects.requireNonNull(mime, "mime is null");
+        this.data = Objects.requireNonNull(data, "data is null");
+    }
+
+    public String getMime() {
+        return mime;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,183 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.FileUtils;
+import org.minig.server.service.BoundedLruCache.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Keeps downscaled inline images on local disk per user, folder, entity tag of the image and width. Images are
+ * identified by UIDVALIDITY, UID and section, entries are evicted least recently used once the size of all files
+ * exceeds the configured limit. Files left behind in a configured directory by a previous run are deleted on startup.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=ThumbnailCache")
+public class ThumbnailCache implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private final BoundedLruCache<Entry> entries;
+    private final File directory;
+    private final boolean temporaryDirectory;
+
+    @Autowired
+    public ThumbnailCache(@Value("${minig.thumbnail.directory:}") String directory,
+                          @Value("${minig.thumbnail.max-size-mb:256}") long maxSizeMegabytes) throws IOException {
+        Assert.isTrue(maxSizeMegabytes > 0, "maxSizeMegabytes must be greater than 0");
+
+        this.entries = new BoundedLruCache<>(maxSizeMegabytes * 1024 * 1024, entry -> entry.size, (key, entry) -> delete(entry.file));
+        this.temporaryDirectory = !StringUtils.hasText(directory);
+        this.directory = temporaryDirectory ? Files.createTempDirectory("minig-thumbnails").toFile() : new File(directory);
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("cannot create thumbnail directory " + this.directory);
+        }
+
+        deleteUnknownFiles();
+    }
+
+    /**
+     * @return the image or {@code null} if unknown
+     */
+    public Thumbnail get(String user, String folder, String eTag, int width) {
+        Key key = new Key(user, folder, eTag, width);
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            return new Thumbnail(entry.mime, FileUtils.readFileToByteArray(entry.file));
+        } catch (IOException e) {
+            // evicted concurrently
+            log.debug("thumbnail {} is gone: {}", entry.file, e.getMessage());
+
+            if (entries.remove(key, entry)) {
+                delete(entry.file);
+            }
+
+            return null;
+        }
+    }
+
+    public void put(String user, String folder, String eTag, int width, Thumbnail thumbnail) {
+        Objects.requireNonNull(eTag, "eTag is null");
+        Objects.requireNonNull(thumbnail, "thumbnail is null");
+
+        File file = new File(directory, UUID.randomUUID().toString());
+
+        try {
+            FileUtils.writeByteArrayToFile(file, thumbnail.getData());
+        } catch (IOException e) {
+            log.warn("could not write thumbnail {}: {}", file, e.getMessage());
+            delete(file);
+            return;
+        }
+
+        Entry previous = entries.put(new Key(user, folder, eTag, width), new Entry(file, thumbnail.getMime(), thumbnail.getData().length));
+
+        if (previous != null) {
+            delete(previous.file);
+        }
+    }
+
+    @ManagedOperation(description = "Removes all entries")
+    public void clear() {
+        entries.clear().forEach(entry -> delete(entry.file));
+    }
+
+    @Override
+    public void destroy() {
+        clear();
+
+        if (temporaryDirectory) {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of images on disk")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Size of all images on disk in bytes")
+    public long getSize() {
+        return entries.getWeight();
+    }
+
+    @ManagedAttribute(description = "Maximum size of all images on disk in bytes")
+    public long getMaxSize() {
+        return entries.getMaxWeight();
+    }
+
+    @ManagedAttribute(description = "Number of images served from disk")
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    @ManagedAttribute(description = "Number of images that had to be scaled")
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    private void deleteUnknownFiles() {
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            // only files named like the ones this cache writes, the directory might be shared
+            if (file.isFile() && isUuid(file.getName())) {
+                delete(file);
+            }
+        }
+    }
+
+    private static boolean isUuid(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("could not delete thumbnail {}", file);
+        }
+    }
+
+    private static final class Entry {
+
+        private final File file;
+        private final String mime;
+        private final long size;
+
+        private Entry(File file, String mime, long size) {
+            this.file = file;
+            this.mime = mime;
+            this.size = size;
+        }
+    }
+}
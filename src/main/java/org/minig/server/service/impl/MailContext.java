@@ -10,6 +10,7 @@ import javax.mail.MessagingException;
 import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.StoreClosedException;
 
 import org.minig.security.MailAuthentication;
 import org.minig.server.service.NotFoundException;
@@ -35,6 +36,9 @@ public class MailContext implements DisposableBean {
     @Autowired
     private MailAuthentication authentication;
 
+    @Autowired
+    private MailStorePool mailStorePool;
+
     private Deque<Folder> trackFetchedFolder = new ConcurrentLinkedDeque<Folder>();
     private Session session;
     private Store store;
@@ -45,13 +49,13 @@ public class MailContext implements DisposableBean {
     }
 
     public Store getStore() {
-        checkSession();
+        checkStore();
         return store;
     }
 
     public Folder getFolder(String parent, String path) {
         try {
-            char separator = store.getDefaultFolder().getSeparator();
+            char separator = getStore().getDefaultFolder().getSeparator();
 
             return getFolder(parent + separator + path);
         } catch (MessagingException e) {
@@ -61,21 +65,15 @@ public class MailContext implements DisposableBean {
 
     @Deprecated
     public Folder getFolder(String path, boolean writeMode) {
-        checkSession();
+        checkStore();
 
         if (path == null) {
             return null;
         }
 
         try {
-            Folder folder = store.getFolder(path);
-
-            if (folder != null && folder.exists() && writeMode) {
-                folder.open(Folder.READ_WRITE);
-            }
-
+            Folder folder = getFolderReconnecting(path, writeMode);
             trackFetchedFolder.addLast(folder);
-
             return folder;
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
@@ -84,13 +82,12 @@ public class MailContext implements DisposableBean {
 
     @Deprecated
     public Folder openFolder(String path) {
-        checkSession();
+        checkStore();
 
         try {
-            Folder folder = store.getFolder(path);
+            Folder folder = getFolderReconnecting(path, true);
 
             if (folder != null && folder.exists()) {
-                folder.open(Folder.READ_WRITE);
                 trackFetchedFolder.addLast(folder);
                 return folder;
             }
@@ -167,7 +164,8 @@ public class MailContext implements DisposableBean {
         }
 
         if (this.store != null) {
-            this.store.close();
+            mailStorePool.release(this.store);
+            this.store = null;
         }
 
         if (this.session != null) {
@@ -177,6 +175,32 @@ public class MailContext implements DisposableBean {
         trackFetchedFolder.clear();
     }
 
+    private Folder getFolderReconnecting(String path, boolean writeMode) throws MessagingException {
+        try {
+            return getFolderInternal(path, writeMode);
+        } catch (StoreClosedException e) {
+            log.debug("store closed, reconnecting. reason {}", e.getMessage());
+            reconnect();
+            return getFolderInternal(path, writeMode);
+        }
+    }
+
+    private Folder getFolderInternal(String path, boolean writeMode) throws MessagingException {
+        Folder folder = store.getFolder(path);
+
+        if (folder != null && folder.exists() && writeMode) {
+            folder.open(Folder.READ_WRITE);
+        }
+
+        return folder;
+    }
+
+    private synchronized void reconnect() {
+        mailStorePool.invalidate(this.store);
+        this.store = null;
+        checkStore();
+    }
+
     private void checkSession() {
         if (this.session == null) {
             synchronized (this) {
@@ -188,13 +212,16 @@ public class MailContext implements DisposableBean {
                             return new PasswordAuthentication(authentication.getUserMail(), authentication.getPassword());
                         }
                     });
+                }
+            }
+        }
+    }
 
-                    try {
-                        this.store = this.session.getStore();
-                        store.connect(authentication.getDomain(), authentication.getUserMail(), authentication.getPassword());
-                    } catch (Exception e) {
-                        throw new RuntimeException(e.getMessage(), e);
-                    }
+    private void checkStore() {
+        if (this.store == null) {
+            synchronized (this) {
+                if (this.store == null) {
+                    this.store = mailStorePool.borrow(authentication.getDomain(), authentication.getUserMail(), authentication.getPassword());
                 }
             }
         }
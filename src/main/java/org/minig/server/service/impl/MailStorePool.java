@@ -0,0 +1,504 @@
+package org.minig.server.service.impl;
+
+import org.minig.server.service.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps connected {@link Store} instances per user so that a request does not have to pay
+ * the STARTTLS handshake and LOGIN on every call. Open connections are bounded per user and
+ * globally. Idle connections are health checked with {@link Store#isConnected()} (a NOOP on
+ * IMAP) before they are handed out and closed after {@code minig.imap.pool.idle-timeout} seconds.
+ * Connections are shared by all requests of a user, callers must have verified the password beforehand.
+ *
+ * @author Kamill Sokol
+ */
+@Component
+@ManagedResource(objectName = "org.minig:type=MailStorePool")
+public class MailStorePool implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MailStorePool.class);
+
+    private final ConcurrentMap<String, UserPool> pools = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Store, PooledStore> borrowed = new ConcurrentHashMap<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong createdConnections = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final AtomicLong evictedConnections = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+
+    private final int maxPerUser;
+    private final int maxTotal;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+
+    @Autowired
+    public MailStorePool(@Value("${minig.imap.pool.max-per-user:4}") int maxPerUser,
+                         @Value("${minig.imap.pool.max-total:200}") int maxTotal,
+                         @Value("${minig.imap.pool.idle-timeout:300}") long idleTimeoutSeconds,
+                         @Value("${minig.imap.pool.borrow-timeout:30}") long borrowTimeoutSeconds) {
+        Assert.isTrue(maxPerUser > 0, "maxPerUser must be greater than 0");
+        Assert.isTrue(maxTotal >= maxPerUser, "maxTotal must not be less than maxPerUser");
+        Assert.isTrue(idleTimeoutSeconds > 0, "idleTimeout must be greater than 0");
+
+        this.maxPerUser = maxPerUser;
+        this.maxTotal = maxTotal;
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        this.borrowTimeout = TimeUnit.SECONDS.toMillis(borrowTimeoutSeconds);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-store-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = Math.max(1, idleTimeoutSeconds / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands out a connected store for the given user. Must be returned with {@link #release(Store)}
+     * or {@link #invalidate(Store)}.
+     */
+    public Store borrow(String domain, String user, String password) {
+        Assert.hasText(domain, "domain is null");
+        Assert.hasText(user, "user is null");
+
+        PoolKey key = new PoolKey(domain, user, password);
+
+        while (true) {
+            UserPool userPool = pools.computeIfAbsent(user, UserPool::new);
+            PooledStore pooledStore = userPool.take(key);
+
+            if (pooledStore == null) {
+                // pool got retired by the evictor in between, try again with a fresh one
+                continue;
+            }
+
+            if (pooledStore.store == null) {
+                return connect(userPool, pooledStore);
+            }
+
+            if (isUsable(pooledStore, key)) {
+                reusedConnections.incrementAndGet();
+                borrowed.put(pooledStore.store, pooledStore);
+                return pooledStore.store;
+            }
+
+            close(userPool, pooledStore);
+        }
+    }
+
+    /**
+     * Adopts a store that has been connected outside of the pool, e.g. to verify a login. The store is closed if
+     * the limits do not allow another connection.
+     */
+    public void offer(String domain, String user, String password, Store store) {
+        Assert.hasText(domain, "domain is null");
+        Assert.hasText(user, "user is null");
+        Assert.notNull(store, "store is null");
+
+        if (openConnections.incrementAndGet() > maxTotal) {
+            openConnections.decrementAndGet();
+            closeQuietly(store);
+            return;
+        }
+
+        PooledStore pooledStore = new PooledStore(new PoolKey(domain, user, password));
+        pooledStore.store = store;
+
+        if (!pools.computeIfAbsent(user, UserPool::new).adopt(pooledStore)) {
+            openConnections.decrementAndGet();
+            closeQuietly(store);
+            return;
+        }
+
+        createdConnections.incrementAndGet();
+    }
+
+    /**
+     * Returns a store to the pool. Open folders must have been closed by the caller.
+     */
+    public void release(Store store) {
+        if (store == null) {
+            return;
+        }
+
+        PooledStore pooledStore = borrowed.remove(store);
+
+        if (pooledStore == null) {
+            log.warn("releasing unknown store {}", store);
+            closeQuietly(store);
+            return;
+        }
+
+        UserPool userPool = pools.get(pooledStore.key.user);
+
+        if (userPool == null || !store.isConnected()) {
+            close(userPool, pooledStore);
+            return;
+        }
+
+        pooledStore.lastUsed = System.currentTimeMillis();
+        userPool.giveBack(pooledStore);
+    }
+
+    /**
+     * Closes a broken store (e.g. after a {@link javax.mail.StoreClosedException}) instead of returning it to the pool.
+     */
+    public void invalidate(Store store) {
+        if (store == null) {
+            return;
+        }
+
+        PooledStore pooledStore = borrowed.remove(store);
+
+        if (pooledStore == null) {
+            closeQuietly(store);
+            return;
+        }
+
+        close(pools.get(pooledStore.key.user), pooledStore);
+    }
+
+    @ManagedAttribute(description = "Number of open connections (active and idle)")
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @ManagedAttribute(description = "Number of connections currently borrowed by requests")
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    @ManagedAttribute(description = "Number of idle connections")
+    public int getIdleConnections() {
+        int idle = 0;
+        for (UserPool userPool : pools.values()) {
+            idle += userPool.idleCount();
+        }
+        return idle;
+    }
+
+    @ManagedAttribute(description = "Number of users with at least one pooled connection")
+    public int getUsers() {
+        return pools.size();
+    }
+
+    @ManagedAttribute(description = "Total number of connections created")
+    public long getCreatedConnections() {
+        return createdConnections.get();
+    }
+
+    @ManagedAttribute(description = "Total number of borrows served from an idle connection")
+    public long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    @ManagedAttribute(description = "Total number of idle connections closed because of the idle timeout")
+    public long getEvictedConnections() {
+        return evictedConnections.get();
+    }
+
+    @ManagedAttribute(description = "Maximum number of open connections per user")
+    public int getMaxPerUser() {
+        return maxPerUser;
+    }
+
+    @ManagedAttribute(description = "Maximum number of open connections")
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    @ManagedAttribute(description = "Idle timeout in seconds")
+    public long getIdleTimeoutSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(idleTimeout);
+    }
+
+    @ManagedOperation(description = "Closes all idle connections")
+    public void clear() {
+        for (UserPool userPool : pools.values()) {
+            for (PooledStore pooledStore : userPool.drainIdle(Long.MAX_VALUE)) {
+                close(userPool, pooledStore);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        evictor.shutdownNow();
+        clear();
+    }
+
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+
+        for (UserPool userPool : pools.values()) {
+            for (PooledStore pooledStore : userPool.drainIdle(now - idleTimeout)) {
+                log.debug("evicting idle connection for {}", pooledStore.key.user);
+                evictedConnections.incrementAndGet();
+                close(userPool, pooledStore);
+            }
+
+            if (userPool.retireIfUnused()) {
+                pools.remove(userPool.user, userPool);
+            }
+        }
+    }
+
+    private Store connect(UserPool userPool, PooledStore pooledStore) {
+        if (openConnections.incrementAndGet() > maxTotal && !evictOldestIdle()) {
+            openConnections.decrementAndGet();
+            userPool.discard();
+            throw new RepositoryException(String.format("connection limit of %d reached", maxTotal));
+        }
+
+        PoolKey key = pooledStore.key;
+
+        try {
+            Session session = Session.getInstance(new JavaMailPropertyBuilder(key.domain).build(), null);
+            Store store = session.getStore();
+            store.connect(key.domain, key.user, key.password);
+
+            pooledStore.store = store;
+            createdConnections.incrementAndGet();
+            borrowed.put(store, pooledStore);
+            return store;
+        } catch (Exception e) {
+            openConnections.decrementAndGet();
+            userPool.discard();
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+
+    private boolean evictOldestIdle() {
+        UserPool oldestPool = null;
+        long oldest = Long.MAX_VALUE;
+
+        for (UserPool userPool : pools.values()) {
+            long lastUsed = userPool.oldestIdle();
+            if (lastUsed < oldest) {
+                oldest = lastUsed;
+                oldestPool = userPool;
+            }
+        }
+
+        if (oldestPool == null) {
+            return false;
+        }
+
+        PooledStore pooledStore = oldestPool.pollOldestIdle();
+
+        if (pooledStore == null) {
+            return false;
+        }
+
+        // keep the slot of the evicted connection for the caller
+        oldestPool.discard();
+        openConnections.decrementAndGet();
+        closeQuietly(pooledStore.store);
+        return true;
+    }
+
+    private boolean isUsable(PooledStore pooledStore, PoolKey key) {
+        return key.equals(pooledStore.key)
+                && System.currentTimeMillis() - pooledStore.lastUsed < idleTimeout
+                && pooledStore.store.isConnected();
+    }
+
+    private void close(UserPool userPool, PooledStore pooledStore) {
+        openConnections.decrementAndGet();
+
+        if (userPool != null) {
+            userPool.discard();
+        }
+
+        closeQuietly(pooledStore.store);
+    }
+
+    private static void closeQuietly(Store store) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (MessagingException e) {
+            log.debug("can not close store. reason {}", e.getMessage());
+        }
+    }
+
+    private final class UserPool {
+
+        private final String user;
+        private final Deque<PooledStore> idle = new ArrayDeque<>();
+        private int open;
+        private boolean retired;
+
+        private UserPool(String user) {
+            this.user = user;
+        }
+
+        /**
+         * @return an idle store, a placeholder without store if the caller may open a new connection or
+         * {@code null} if this pool has been retired.
+         */
+        private synchronized PooledStore take(PoolKey key) {
+            long deadline = System.currentTimeMillis() + borrowTimeout;
+
+            while (true) {
+                if (retired) {
+                    return null;
+                }
+
+                PooledStore pooledStore = idle.pollFirst();
+
+                if (pooledStore != null) {
+                    return pooledStore;
+                }
+
+                if (open < maxPerUser) {
+                    open++;
+                    return new PooledStore(key);
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    throw new RepositoryException(String.format("no connection available for %s within %d ms", user, borrowTimeout));
+                }
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RepositoryException(e.getMessage(), e);
+                }
+            }
+        }
+
+        private synchronized boolean adopt(PooledStore pooledStore) {
+            if (retired || open >= maxPerUser) {
+                return false;
+            }
+
+            open++;
+            idle.addFirst(pooledStore);
+            notifyAll();
+            return true;
+        }
+
+        private synchronized void giveBack(PooledStore pooledStore) {
+            idle.addFirst(pooledStore);
+            notifyAll();
+        }
+
+        private synchronized void discard() {
+            open--;
+            notifyAll();
+        }
+
+        private synchronized int idleCount() {
+            return idle.size();
+        }
+
+        private synchronized long oldestIdle() {
+            PooledStore last = idle.peekLast();
+            return last == null ? Long.MAX_VALUE : last.lastUsed;
+        }
+
+        private synchronized PooledStore pollOldestIdle() {
+            return idle.pollLast();
+        }
+
+        private synchronized Deque<PooledStore> drainIdle(long usedBefore) {
+            Deque<PooledStore> drained = new ArrayDeque<>();
+            Iterator<PooledStore> iterator = idle.iterator();
+
+            while (iterator.hasNext()) {
+                PooledStore pooledStore = iterator.next();
+                if (pooledStore.lastUsed < usedBefore) {
+                    iterator.remove();
+                    drained.add(pooledStore);
+                }
+            }
+
+            return drained;
+        }
+
+        private synchronized boolean retireIfUnused() {
+            if (open == 0) {
+                retired = true;
+            }
+            return retired;
+        }
+    }
+
+    private static final class PooledStore {
+
+        private final PoolKey key;
+        private Store store;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledStore(PoolKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Identifies the account of a connection. The password is only needed to connect, a request with another
+     * password of the same verified user may reuse the connection.
+     */
+    private static final class PoolKey {
+
+        private final String domain;
+        private final String user;
+        private final String password;
+
+        private PoolKey(String domain, String user, String password) {
+            this.domain = domain;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PoolKey)) return false;
+            PoolKey that = (PoolKey) o;
+            return Objects.equals(domain, that.domain) && Objects.equals(user, that.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(domain, user);
+        }
+
+        @Override
+        public String toString() {
+            return user + "@" + domain;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.minig.server.service.impl.helper;
 
+import com.sun.mail.imap.IMAPFolder;
+
 import javax.mail.Folder;
 import javax.mail.MessagingException;
 
@@ -14,21 +16,42 @@ public class FolderMapper {
 		Assert.notNull(source);
 
 		try {
-			MailFolder target = new MailFolder();
-
-			setId(target, source);
-			setName(target, source);
-			setSubscribed(target, source);
+			return map(source, source.isSubscribed());
+		} catch (MessagingException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
 
-			setParent(target, source);
-			setPath(target, source);
+	/**
+	 * Maps a folder returned by LIST whose subscription is known already, e.g. from LSUB. Saves the LSUB round
+	 * trip of {@link Folder#isSubscribed()} on IMAP. {@link MailFolder#getHasChildren()} is taken from the LIST
+	 * attributes if the server supports CHILDREN (RFC 3348).
+	 */
+	public MailFolder toMailFolder(Folder source, boolean subscribed) {
+		Assert.notNull(source);
 
+		try {
+			MailFolder target = map(source, subscribed);
+			setHasChildren(target, source);
 			return target;
 		} catch (MessagingException e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 	}
 
+	private MailFolder map(Folder source, boolean subscribed) throws MessagingException {
+		MailFolder target = new MailFolder();
+
+		setId(target, source);
+		setName(target, source);
+		target.setSubscribed(subscribed);
+
+		setParent(target, source);
+		setPath(target, source);
+
+		return target;
+	}
+
 	private void setId(MailFolder target, Folder source) {
 		target.setId(source.getFullName());
 	}
@@ -37,10 +60,6 @@ public class FolderMapper {
 		target.setName(source.getName());
 	}
 
-	private void setSubscribed(MailFolder target, Folder source) {
-		target.setSubscribed(source.isSubscribed());
-	}
-
 	private void setParent(MailFolder target, Folder source)
 			throws MessagingException {
 		if (source.getParent() != null) {
@@ -48,6 +67,21 @@ public class FolderMapper {
 		}
 	}
 
+	private void setHasChildren(MailFolder target, Folder source)
+			throws MessagingException {
+		if (!(source instanceof IMAPFolder)) {
+			return;
+		}
+
+		for (String attribute : ((IMAPFolder) source).getAttributes()) {
+			if ("\\HasChildren".equalsIgnoreCase(attribute)) {
+				target.setHasChildren(true);
+			} else if ("\\HasNoChildren".equalsIgnoreCase(attribute) || "\\Noinferiors".equalsIgnoreCase(attribute)) {
+				target.setHasChildren(false);
+			}
+		}
+	}
+
 	private void setPath(MailFolder target, Folder source)
 			throws MessagingException {
 		target.setPath(source.getFullName());
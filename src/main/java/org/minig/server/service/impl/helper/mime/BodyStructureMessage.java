@@ -0,0 +1,209 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.commons.io.IOUtils;
+import org.minig.server.service.CompositeId;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.minig.MinigConstants.BCC;
+import static org.minig.MinigConstants.CC;
+import static org.minig.MinigConstants.DISPOSITION_NOTIFICATION_TO;
+import static org.minig.MinigConstants.MIME_TYPE_TEXT_HTML;
+import static org.minig.MinigConstants.MIME_TYPE_TEXT_PLAIN;
+import static org.minig.MinigConstants.REPLY_TO;
+import static org.minig.MinigConstants.TO;
+import static org.minig.server.service.impl.helper.mime.PartUtils.contentId;
+import static org.minig.server.service.impl.helper.mime.PartUtils.fileName;
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * Read-only view of a message that works on the part tree of javax.mail instead of a mime4j DOM. For IMAP messages
+ * the tree is built from the BODYSTRUCTURE, headers come from the header fetch and only the text part that is asked
+ * for is fetched. Attachment data is streamed on demand. Use {@link Mime4jMessage} to edit a message.
+ *
+ * @author Kamill Sokol
+ */
+public class BodyStructureMessage {
+
+    /**
+     * Version of the html {@link #getHtml(UriComponentsBuilder)} produces. Increment whenever rendering or sanitising
+     * changes so that cached bodies and entity tags of earlier versions are no longer used.
+     */
+    public static final int HTML_RENDER_VERSION = 1;
+
+    private final MimeMessage message;
+    private final CompositeId compositeId;
+    private final MessageHeaders headers;
+
+    public BodyStructureMessage(MimeMessage message) {
+        this.message = Objects.requireNonNull(message, "message is null");
+        this.compositeId = PartUtils.compositeId(message);
+        this.headers = new MessageHeaders(this::getHeader);
+    }
+
+    public List<Mime4jAddress> getTo() {
+        return headers.getAddresses(TO);
+    }
+
+    public List<Mime4jAddress> getCc() {
+        return headers.getAddresses(CC);
+    }
+
+    public List<Mime4jAddress> getBcc() {
+        return headers.getAddresses(BCC);
+    }
+
+    public List<Mime4jAddress> getDispositionNotificationTo() {
+        return headers.getAddresses(DISPOSITION_NOTIFICATION_TO);
+    }
+
+    public List<Mime4jAddress> getReplyTo() {
+        return headers.getAddresses(REPLY_TO);
+    }
+
+    public String getPlain() {
+        return findTextPart(MIME_TYPE_TEXT_PLAIN).map(BodyStructureMessage::readText).orElse("");
+    }
+
+    public boolean hasHtml() {
+        return findTextPart(MIME_TYPE_TEXT_HTML).filter(part -> rethrowCheckedAsUnchecked(part::getSize) != 0).isPresent();
+    }
+
+    public String getHtml() {
+        return HtmlRewriter.linksOnly().rewrite(readHtml());
+    }
+
+    public String getHtml(UriComponentsBuilder uriComponentsBuilder) {
+        return Mime4jMessage.rewriteHtml(readHtml(), getInlineAttachments(), uriComponentsBuilder);
+    }
+
+    public List<Mime4jAttachment> getAttachments() {
+        return getAllAttachments().stream().filter(Mime4jAttachment::isAttachment).collect(Collectors.toList());
+    }
+
+    public List<Mime4jAttachment> getInlineAttachments() {
+        return getAllAttachments().stream().filter(Mime4jAttachment::isInlineAttachment).collect(Collectors.toList());
+    }
+
+    public boolean hasDispositionNotifications() {
+        return headers.hasDispositionNotifications();
+    }
+
+    public boolean isReturnReceipt() {
+        return headers.isReturnReceipt();
+    }
+
+    public String getInReplyTo() {
+        return headers.getInReplyTo();
+    }
+
+    public String getReferences() {
+        return headers.getReferences();
+    }
+
+    public String getForwardedMessageId() {
+        return headers.getForwardedMessageId();
+    }
+
+    public boolean isHighPriority() {
+        return headers.isHighPriority();
+    }
+
+    public String getUserAgent() {
+        return headers.getUserAgent();
+    }
+
+    private String getHeader(String key) {
+        String value = rethrowCheckedAsUnchecked(() -> message.getHeader(key, ","));
+        return value == null ? null : MimeUtility.unfold(value).trim();
+    }
+
+    private String readHtml() {
+        return findTextPart(MIME_TYPE_TEXT_HTML).map(BodyStructureMessage::readText).orElse("");
+    }
+
+    private Optional<Part> findTextPart(String mimeType) {
+        return rethrowCheckedAsUnchecked(() -> findTextPart(message, mimeType));
+    }
+
+    private List<Mime4jAttachment> getAllAttachments() {
+        return rethrowCheckedAsUnchecked(() -> {
+            if (!message.isMimeType("multipart/*")) {
+                return Collections.emptyList();
+            }
+
+            List<Mime4jAttachment> attachments = new ArrayList<>();
+            collectAttachments((Multipart) message.getContent(), attachments);
+            return attachments;
+        });
+    }
+
+    private void collectAttachments(Multipart multipart, List<Mime4jAttachment> attachments) throws MessagingException, IOException {
+        for (int i = 0; i < multipart.getCount(); i++) {
+            Part part = multipart.getBodyPart(i);
+            String disposition = part.getDisposition() == null ? null : part.getDisposition().toLowerCase(Locale.ENGLISH);
+
+            if (part.isMimeType("multipart/*")) {
+                collectAttachments((Multipart) part.getContent(), attachments);
+            } else if (Part.ATTACHMENT.equals(disposition) || Part.INLINE.equals(disposition)) {
+                String fileName = fileName(part);
+                String contentId = contentId(part);
+
+                // text or html body with Content-Disposition inline
+                if (fileName != null || contentId != null) {
+                    String mimeType = new ContentType(part.getContentType()).getBaseType().toLowerCase(Locale.ENGLISH);
+                    attachments.add(new Mime4jAttachment(compositeId, fileName, contentId, disposition, mimeType, part.getInputStream()));
+                }
+            }
+        }
+    }
+
+    private static Optional<Part> findTextPart(Part part, String mimeType) throws MessagingException, IOException {
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+
+            for (int i = 0; i < multipart.getCount(); i++) {
+                Optional<Part> found = findTextPart(multipart.getBodyPart(i), mimeType);
+
+                if (found.isPresent()) {
+                    return found;
+                }
+            }
+
+            return Optional.empty();
+        }
+
+        if (part.isMimeType(mimeType) && !Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return Optional.of(part);
+        }
+
+        return Optional.empty();
+    }
+
+    private static String readText(Part part) {
+        return rethrowCheckedAsUnchecked(() -> {
+            String charset = new ContentType(part.getContentType()).getParameter("charset");
+            String mimeCharset = charset == null || "us-ascii".equalsIgnoreCase(charset) ? UTF_8.name() : MimeUtility.javaCharset(charset);
+
+            try (InputStream inputStream = part.getInputStream()) {
+                return IOUtils.toString(inputStream, mimeCharset);
+            }
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.james.mime4j.dom.BinaryBody;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Binary body that reads its content from a file whenever the message is written instead of holding it in memory.
+ *
+ * @author Kamill Sokol
+ */
+final class FileBinaryBody extends BinaryBody {
+
+    private final File file;
+
+    FileBinaryBody(File file) {
+        this.file = Objects.requireNonNull(file, "file is null");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    // used by MessageBuilder#createCopy
+    @Override
+    public FileBinaryBody copy() {
+        return new FileBinaryBody(file);
+    }
+}
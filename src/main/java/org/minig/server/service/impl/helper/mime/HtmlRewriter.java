@@ -0,0 +1,223 @@
+package org.minig.server.service.impl.helper.mime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a html body in a single pass without building a DOM. Anchors get {@code target="_blank"} and
+ * {@code cid:} as well as {@code mid:} references to known Content-IDs are replaced with the given urls, in markup
+ * and text alike. Markup that is not touched is copied as it is.
+ *
+ * @author Kamill Sokol
+ */
+final class HtmlRewriter {
+
+    private static final String TARGET = "target";
+    private static final String BLANK = "_blank";
+    private static final String TARGET_BLANK = " target=\"_blank\"";
+
+    private static final HtmlRewriter LINKS_ONLY = new HtmlRewriter(Collections.emptyMap());
+
+    private final List<Map.Entry<String, String>> references;
+
+    /**
+     * @param urlsByContentId urls by Content-ID without angle brackets
+     */
+    HtmlRewriter(Map<String, String> urlsByContentId) {
+        this.references = new ArrayList<>(urlsByContentId.entrySet());
+        // longest first, a Content-ID may be the prefix of another one
+        this.references.sort(Comparator.comparing((Map.Entry<String, String> entry) -> entry.getKey().length()).reversed());
+    }
+
+    static HtmlRewriter linksOnly() {
+        return LINKS_ONLY;
+    }
+
+    String rewrite(String html) {
+        if (html == null || html.isEmpty()) {
+            return html;
+        }
+
+        int length = html.length();
+        StringBuilder out = null;
+        int copied = 0;
+        int rawTextEnd = -1;
+        Edit edit = null;
+        int i = 0;
+
+        while (i < length) {
+            if (edit != null && i == edit.start) {
+                out = append(out, html, copied, i).append(edit.text);
+                i = edit.end;
+                copied = i;
+                edit = null;
+                continue;
+            }
+
+            char c = html.charAt(i);
+
+            if (c == '<' && i >= rawTextEnd && edit == null) {
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? length : end + 3;
+                    continue;
+                }
+                if (isTag(html, i, "script") || isTag(html, i, "style")) {
+                    // anchors inside of scripts and style sheets are text, references are replaced nonetheless
+                    String name = isTag(html, i, "script") ? "</script" : "</style";
+                    int end = indexOfIgnoreCase(html, name, i + 1);
+                    rawTextEnd = end < 0 ? length : end;
+                } else if (isTag(html, i, "a")) {
+                    edit = targetEdit(html, i);
+                }
+            } else if ((c == 'c' || c == 'C' || c == 'm' || c == 'M') && !references.isEmpty()
+                    && (html.regionMatches(true, i, "cid:", 0, 4) || html.regionMatches(true, i, "mid:", 0, 4))) {
+                Map.Entry<String, String> reference = findReference(html, i + 4);
+                int end = reference == null ? -1 : i + 4 + reference.getKey().length();
+
+                if (reference != null && (edit == null || end <= edit.start)) {
+                    out = append(out, html, copied, i).append(reference.getValue());
+                    i = end;
+                    copied = i;
+                    continue;
+                }
+            }
+
+            i++;
+        }
+
+        if (out == null) {
+            return html;
+        }
+
+        return out.append(html, copied, length).toString();
+    }
+
+    private Map.Entry<String, String> findReference(String html, int offset) {
+        for (Map.Entry<String, String> reference : references) {
+            String contentId = reference.getKey();
+
+            if (!contentId.isEmpty() && html.regionMatches(offset, contentId, 0, contentId.length())) {
+                return reference;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the edit that makes the anchor starting at the given offset open a new window or {@code null} if the
+     * tag is not terminated
+     */
+    private static Edit targetEdit(String html, int offset) {
+        int length = html.length();
+        int i = offset + 2;
+        int unquotedValueEnd = -1;
+
+        while (true) {
+            while (i < length && (Character.isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+                i++;
+            }
+
+            if (i >= length) {
+                return null;
+            }
+
+            if (html.charAt(i) == '>') {
+                // a slash that ends an unquoted value belongs to the value
+                int insertAt = html.charAt(i - 1) == '/' && unquotedValueEnd != i ? i - 1 : i;
+                return new Edit(insertAt, insertAt, TARGET_BLANK);
+            }
+
+            int nameStart = i;
+
+            while (i < length && !isNameDelimiter(html.charAt(i))) {
+                i++;
+            }
+
+            int nameEnd = i;
+
+            while (i < length && Character.isWhitespace(html.charAt(i))) {
+                i++;
+            }
+
+            int valueStart = -1;
+            int valueEnd = -1;
+
+            if (i < length && html.charAt(i) == '=') {
+                i++;
+
+                while (i < length && Character.isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+
+                if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    valueStart = i + 1;
+                    valueEnd = html.indexOf(html.charAt(i), valueStart);
+
+                    if (valueEnd < 0) {
+                        return null;
+                    }
+
+                    i = valueEnd + 1;
+                } else {
+                    valueStart = i;
+
+                    while (i < length && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                        i++;
+                    }
+
+                    valueEnd = i;
+                    unquotedValueEnd = i;
+                }
+            }
+
+            if (nameEnd - nameStart == TARGET.length() && html.regionMatches(true, nameStart, TARGET, 0, TARGET.length())) {
+                return valueStart < 0 ? new Edit(nameEnd, nameEnd, "=\"" + BLANK + "\"") : new Edit(valueStart, valueEnd, BLANK);
+            }
+        }
+    }
+
+    private static boolean isNameDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '=' || c == '>' || c == '/';
+    }
+
+    private static boolean isTag(String html, int offset, String name) {
+        int end = offset + 1 + name.length();
+        return html.regionMatches(true, offset + 1, name, 0, name.length())
+                && end < html.length()
+                && (Character.isWhitespace(html.charAt(end)) || html.charAt(end) == '>' || html.charAt(end) == '/');
+    }
+
+    private static int indexOfIgnoreCase(String html, String search, int from) {
+        for (int i = html.indexOf('<', from); i >= 0; i = html.indexOf('<', i + 1)) {
+            if (html.regionMatches(true, i, search, 0, search.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static StringBuilder append(StringBuilder out, String html, int start, int end) {
+        StringBuilder builder = out == null ? new StringBuilder(html.length() + 256) : out;
+        return builder.append(html, start, end);
+    }
+
+    /**
+     * Replaces the range from start (inclusive) to end (exclusive) with the given text.
+     */
+    private static final class Edit {
+
+        private final int start;
+        private final int end;
+        private final String text;
+
+        private Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.minig.server.service.impl.helper.mime;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.minig.MinigConstants.FORWARDED_MESSAGE_ID;
+import static org.minig.MinigConstants.IN_REPLY_TO;
+import static org.minig.MinigConstants.USER_AGENT;
+import static org.minig.MinigConstants.X_DRAFT_INFO;
+import static org.minig.MinigConstants.X_PRIORITY;
+
+/**
+ * Header accessors shared by {@link Mime4jMessage} and {@link BodyStructureMessage}, independent of where the
+ * headers are read from.
+ *
+ * @author Kamill Sokol
+ */
+final class MessageHeaders {
+
+    private final Function<String, String> lookup;
+
+    /**
+     * @param lookup returns the unfolded value of a header or {@code null} if the header is absent
+     */
+    MessageHeaders(Function<String, String> lookup) {
+        this.lookup = lookup;
+    }
+
+    Optional<String> get(String key) {
+        return Optional.ofNullable(lookup.apply(key));
+    }
+
+    List<Mime4jAddress> getAddresses(String addressType) {
+        String header = get(addressType).orElse("");
+        String[] addresses = header.split("\\s*,\\s*");
+        return Arrays.stream(addresses)
+                .filter(address -> !address.isEmpty())
+                .map(Mime4jAddress::new)
+                .collect(Collectors.toList());
+    }
+
+    String getInReplyTo() {
+        return get(IN_REPLY_TO).orElse(null);
+    }
+
+    /**
+     * Drafts are written with the same value for In-Reply-To and References, see
+     * {@link Mime4jMessage#setInReplyTo(String)}, hence References is answered from In-Reply-To.
+     */
+    String getReferences() {
+        return getInReplyTo();
+    }
+
+    String getForwardedMessageId() {
+        return get(FORWARDED_MESSAGE_ID).orElse(null);
+    }
+
+    String getUserAgent() {
+        return get(USER_AGENT).orElse(null);
+    }
+
+    boolean isHighPriority() {
+        return get(X_PRIORITY).filter(value -> value.startsWith("1")).isPresent();
+    }
+
+    boolean isDSN() {
+        return getDraftInfo().contains("DSN=1");
+    }
+
+    boolean isReturnReceipt() {
+        return getDraftInfo().contains("receipt=1");
+    }
+
+    boolean hasDispositionNotifications() {
+        return isDSN() || isReturnReceipt();
+    }
+
+    private String getDraftInfo() {
+        return get(X_DRAFT_INFO).orElse("");
+    }
+}
@@ -13,6 +13,7 @@ import org.apache.james.mime4j.dom.TextBody;
 import org.apache.james.mime4j.dom.address.Address;
 import org.apache.james.mime4j.dom.address.Mailbox;
 import org.apache.james.mime4j.field.Fields;
+import org.apache.james.mime4j.message.BodyFactory;
 import org.apache.james.mime4j.message.BodyPart;
 import org.apache.james.mime4j.message.BodyPartBuilder;
 import org.apache.james.mime4j.message.DefaultMessageBuilder;
@@ -20,6 +21,7 @@ import org.apache.james.mime4j.message.DefaultMessageWriter;
 import org.apache.james.mime4j.message.MessageServiceFactoryImpl;
 import org.apache.james.mime4j.message.MultipartBuilder;
 import org.apache.james.mime4j.message.SingleBodyBuilder;
+import org.apache.james.mime4j.storage.StorageBodyFactory;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.RawField;
 import org.apache.tika.mime.MimeType;
@@ -28,10 +30,10 @@ import org.minig.server.service.CompositeId;
 import org.springframework.util.StringUtils;
 
 import javax.activation.DataSource;
+import javax.activation.FileDataSource;
 import javax.mail.internet.ContentDisposition;
 import javax.mail.internet.MimeMessage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -45,7 +47,6 @@ import static org.apache.commons.lang3.StringUtils.countMatches;
 import static org.apache.james.mime4j.message.MessageBuilder.createCopy;
 import static org.minig.MinigConstants.CONTENT_DISPOSITION;
 import static org.minig.MinigConstants.FILENAME;
-import static org.minig.MinigConstants.MESSAGE_ID;
 import static org.minig.MinigConstants.MIME_TYPE_MESSAGE_RFC_822;
 import static org.minig.MinigConstants.MIME_TYPE_MULTIPART_ALTERNATIVE;
 import static org.minig.MinigConstants.MIME_TYPE_MULTIPART_MIXED;
@@ -66,6 +67,14 @@ final class MessageTransformer {
 
     private static final MimeTypes MIME_TYPES = MimeTypes.getDefaultMimeTypes();
 
+    /**
+     * Messages and bodies up to this size are kept in memory, larger ones are buffered in temporary files.
+     */
+    static final int SPILL_THRESHOLD = 256 * 1024;
+
+    private static final BodyFactory BODY_FACTORY =
+            new StorageBodyFactory(new SpillingStorageProvider(SPILL_THRESHOLD), DecodeMonitor.SILENT);
+
     private Message message;
     private CompositeId compositeId;
 
@@ -78,7 +87,7 @@ final class MessageTransformer {
     MessageTransformer(javax.mail.Message message) {
         Objects.requireNonNull(message, "message is null");
         this.message = withDefaults(toMime4jMessage(message));
-        this.compositeId = createCompositeId(message);
+        this.compositeId = PartUtils.compositeId(message);
     }
 
     CompositeId getCompositeId() {
@@ -193,9 +202,17 @@ final class MessageTransformer {
 
     MimeMessage toMessage() {
         return rethrowCheckedAsUnchecked(() -> {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            new DefaultMessageWriter().writeMessage(message, outputStream);
-            return new MimeMessage(null, new ByteArrayInputStream(outputStream.toByteArray()));
+            SpillingBuffer buffer = new SpillingBuffer(SPILL_THRESHOLD);
+
+            try {
+                new DefaultMessageWriter().writeMessage(message, buffer);
+            } catch (Exception exception) {
+                buffer.discard();
+                throw exception;
+            }
+
+            // the shared stream is referenced by the message and must not be closed here
+            return new MimeMessage(null, buffer.toInputStream());
         });
     }
 
@@ -334,10 +351,6 @@ final class MessageTransformer {
         });
     }
 
-    private static CompositeId createCompositeId(javax.mail.Message message) {
-        return rethrowCheckedAsUnchecked(() -> new CompositeId(message.getFolder().getFullName(), message.getHeader(MESSAGE_ID)[0]));
-    }
-
     private static Message withDefaults(Message message) {
         if (message.getBody() == null) {
             message.setBody(emptyTextBody());
@@ -413,6 +426,10 @@ final class MessageTransformer {
     }
 
     private static BinaryBody toBinaryBody(DataSource dataSource) {
+        if (dataSource instanceof FileDataSource) {
+            // read while the message is written, staged attachments are never loaded into memory as a whole
+            return new FileBinaryBody(((FileDataSource) dataSource).getFile());
+        }
         return rethrowCheckedAsUnchecked(() -> SingleBodyBuilder.create().readFrom(dataSource.getInputStream()).buildBinary());
     }
 
@@ -422,9 +439,21 @@ final class MessageTransformer {
 
     private static Message toMime4jMessage(javax.mail.Message message) {
         return rethrowCheckedAsUnchecked(() -> {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            message.writeTo(output);
-            return new DefaultMessageBuilder().parseMessage(new ByteArrayInputStream(output.toByteArray()));
+            SpillingBuffer buffer = new SpillingBuffer(SPILL_THRESHOLD);
+
+            try {
+                message.writeTo(buffer);
+            } catch (Exception exception) {
+                buffer.discard();
+                throw exception;
+            }
+
+            DefaultMessageBuilder messageBuilder = new DefaultMessageBuilder();
+            messageBuilder.setBodyFactory(BODY_FACTORY);
+
+            try (InputStream inputStream = buffer.toInputStream()) {
+                return messageBuilder.parseMessage(inputStream);
+            }
         });
     }
 
@@ -26,7 +26,7 @@ public final class Mime4jAttachment {
     public Mime4jAttachment(CompositeId compositeId, String filename, String contentId, String dispositionType, String mimeType, InputStream data) {
         requireNonNull(compositeId, "compositeId is null");
         this.mimeType = requireNonNull(mimeType);
-        this.id = new CompositeAttachmentId(compositeId.getFolder(), compositeId.getMessageId(), "attachment".equals(dispositionType) ? filename : contentId);
+        this.id = new CompositeAttachmentId(compositeId, "attachment".equals(dispositionType) ? filename : contentId);
         this.filename = filename;
         this.contentId = contentId;
         this.dispositionType = dispositionType;
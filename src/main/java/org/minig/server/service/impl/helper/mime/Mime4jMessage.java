@@ -1,20 +1,17 @@
 package org.minig.server.service.impl.helper.mime;
 
 import com.google.api.client.util.escape.PercentEscaper;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.minig.server.service.CompositeAttachmentId;
 import org.minig.server.service.CompositeId;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.activation.DataSource;
 import java.net.URLEncoder;
-import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.minig.MinigConstants.BCC;
@@ -25,7 +22,6 @@ import static org.minig.MinigConstants.IN_REPLY_TO;
 import static org.minig.MinigConstants.REFERENCES;
 import static org.minig.MinigConstants.REPLY_TO;
 import static org.minig.MinigConstants.TO;
-import static org.minig.MinigConstants.USER_AGENT;
 import static org.minig.MinigConstants.X_DRAFT_INFO;
 import static org.minig.MinigConstants.X_PRIORITY;
 import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
@@ -36,15 +32,18 @@ import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
 public class Mime4jMessage {
 
     private MessageTransformer messageTransformer;
+    private MessageHeaders headers;
     private boolean receipt;
     private boolean askForDispositionNotification;
 
     public Mime4jMessage(CompositeId compositeId) {
         this.messageTransformer = new MessageTransformer(compositeId);
+        this.headers = new MessageHeaders(messageTransformer::getHeader);
     }
 
     public Mime4jMessage(javax.mail.Message msg) {
         this.messageTransformer = new MessageTransformer(msg);
+        this.headers = new MessageHeaders(messageTransformer::getHeader);
     }
 
     public javax.mail.internet.MimeMessage toMessage() {
@@ -57,23 +56,23 @@ public class Mime4jMessage {
     }
 
     public List<Mime4jAddress> getTo() {
-        return getAddresses(TO);
+        return headers.getAddresses(TO);
     }
 
     public List<Mime4jAddress> getCc() {
-        return getAddresses(CC);
+        return headers.getAddresses(CC);
     }
 
     public List<Mime4jAddress> getBcc() {
-        return getAddresses(BCC);
+        return headers.getAddresses(BCC);
     }
 
     public List<Mime4jAddress> getDispositionNotificationTo() {
-        return getAddresses(DISPOSITION_NOTIFICATION_TO);
+        return headers.getAddresses(DISPOSITION_NOTIFICATION_TO);
     }
 
     public List<Mime4jAddress> getReplyTo() {
-        return getAddresses(REPLY_TO);
+        return headers.getAddresses(REPLY_TO);
     }
 
     public String getPlain() {
@@ -81,15 +80,11 @@ public class Mime4jMessage {
     }
 
     public String getHtml() {
-        return sanitizeLinks(messageTransformer.getHtml());
+        return HtmlRewriter.linksOnly().rewrite(messageTransformer.getHtml());
     }
 
     public String getHtml(UriComponentsBuilder uriComponentsBuilder) {
-        String sanitizedHtmlBody = getHtml();
-        for (Mime4jAttachment attachment : getInlineAttachments()) {
-            sanitizedHtmlBody = sanitizeContentId(sanitizedHtmlBody, attachment, uriComponentsBuilder.cloneBuilder());
-        }
-        return sanitizedHtmlBody;
+        return rewriteHtml(messageTransformer.getHtml(), getInlineAttachments(), uriComponentsBuilder);
     }
 
     public void setPlain(String plain) {
@@ -105,7 +100,8 @@ public class Mime4jMessage {
     }
 
     public Optional<Mime4jAttachment> getAttachment(CompositeAttachmentId id) {
-        return messageTransformer.getAllAttachments().stream().filter(mime4jAttachment -> mime4jAttachment.getId().equals(id)).findFirst();
+        // the message has already been resolved by id, an id may or may not carry an UID reference
+        return messageTransformer.getAllAttachments().stream().filter(mime4jAttachment -> mime4jAttachment.getId().getFileName().equals(id.getFileName())).findFirst();
     }
 
     /**
@@ -155,15 +151,15 @@ public class Mime4jMessage {
     }
 
     public boolean hasDispositionNotifications() {
-        return isDSN() || isReturnReceipt();
+        return headers.hasDispositionNotifications();
     }
 
     public boolean isDSN() {
-        return getDraftInfo().contains("DSN=1");
+        return headers.isDSN();
     }
 
     public boolean isReturnReceipt() {
-        return getDraftInfo().contains("receipt=1");
+        return headers.isReturnReceipt();
     }
 
     public String getSender() {
@@ -222,15 +218,15 @@ public class Mime4jMessage {
     }
 
     public String getInReplyTo() {
-        return messageTransformer.getHeader(IN_REPLY_TO);
+        return headers.getInReplyTo();
     }
 
     public String getReferences() {
-        return getInReplyTo();
+        return headers.getReferences();
     }
 
     public String getForwardedMessageId() {
-        return messageTransformer.getHeader(FORWARDED_MESSAGE_ID);
+        return headers.getForwardedMessageId();
     }
 
     public void setForwardedMessageId(String forwardedMessageId) {
@@ -246,39 +242,32 @@ public class Mime4jMessage {
     }
 
     public boolean isHighPriority() {
-        return getHeader(X_PRIORITY).filter(value -> value.startsWith("1")).isPresent();
+        return headers.isHighPriority();
     }
 
     public String getUserAgent() {
-        return messageTransformer.getHeader(USER_AGENT);
+        return headers.getUserAgent();
     }
 
     protected List<Mime4jAttachment> getInlineAttachments() {
         return messageTransformer.getInlineAttachments();
     }
 
-    private Optional<String> getHeader(String key) {
-        return Optional.ofNullable(messageTransformer.getHeader(key));
-    }
-
-    private List<Mime4jAddress> getAddresses(String addressType) {
-        String header = getHeader(addressType).orElse("");
-        String[] addresses = header.split("\\s*,\\s*");
-        return Arrays.stream(addresses)
-                .filter(address -> !address.isEmpty())
-                .map(Mime4jAddress::new)
-                .collect(Collectors.toList());
-    }
+    /**
+     * Makes links open a new window and points {@code cid:} and {@code mid:} references of inline attachments to
+     * their urls in a single pass over the html body.
+     */
+    static String rewriteHtml(String htmlBody, List<Mime4jAttachment> inlineAttachments, UriComponentsBuilder uriComponentsBuilder) {
+        Map<String, String> urlsByContentId = new HashMap<>();
 
-    private String getDraftInfo() {
-        String value = messageTransformer.getHeader(X_DRAFT_INFO);
-        return value == null ? "" : value;
-    }
+        for (Mime4jAttachment attachment : inlineAttachments) {
+            if (attachment.getContentId() != null && !urlsByContentId.containsKey(attachment.getContentId())) {
+                String contentUrl = uriComponentsBuilder.cloneBuilder().pathSegment(escape(attachment.getId())).build().toUriString();
+                urlsByContentId.put(attachment.getContentId(), contentUrl);
+            }
+        }
 
-    private String sanitizeContentId(String htmlBody, Mime4jAttachment attachment, UriComponentsBuilder uriComponentsBuilder) {
-        String contentUrl = uriComponentsBuilder.pathSegment(escape(attachment.getId())).build().toUriString();
-        String replacedCid = htmlBody.replaceAll("cid:" + attachment.getContentId(), contentUrl);
-        return replacedCid.replaceAll("mid:" + attachment.getContentId(), contentUrl);
+        return new HtmlRewriter(urlsByContentId).rewrite(htmlBody);
     }
 
     private void updateDraftInfo() {
@@ -304,14 +293,4 @@ public class Mime4jMessage {
     private static String escape(CompositeAttachmentId id) {
         return rethrowCheckedAsUnchecked(() -> URLEncoder.encode(new PercentEscaper("-.*", true).escape(id.toString()), UTF_8.name()));
     }
-
-    private static String sanitizeLinks(String html) {
-        Document document = Jsoup.parse(html);
-        Elements aTags = document.body().getElementsByTag("a");
-        if(aTags.size() == 0) {
-            return html;
-        }
-        aTags.forEach(aTag -> aTag.attr("target", "_blank"));
-        return document.html();
-    }
 }
@@ -0,0 +1,67 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.minig.server.service.CompositeId;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeUtility;
+import java.io.UnsupportedEncodingException;
+
+import static org.minig.MinigConstants.MESSAGE_ID;
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * Reads ids and names of javax.mail messages and parts the same way {@link Mime4jMessage} and
+ * {@link Mime4jAttachment} name them.
+ *
+ * @author Kamill Sokol
+ */
+public final class PartUtils {
+
+    private PartUtils() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the Content-ID without angle brackets or {@code null} if the part has none
+     */
+    public static String contentId(Part part) throws MessagingException {
+        String[] header = part.getHeader("Content-ID");
+
+        if (header == null || header.length == 0) {
+            return null;
+        }
+
+        String contentId = header[0].trim();
+        contentId = contentId.startsWith("<") ? contentId.substring(1) : contentId;
+        return contentId.endsWith(">") ? contentId.substring(0, contentId.length() - 1) : contentId;
+    }
+
+    /**
+     * @return the decoded file name or {@code null} if the part has none
+     */
+    public static String fileName(Part part) throws MessagingException, UnsupportedEncodingException {
+        String fileName = part.getFileName();
+        return fileName == null ? null : MimeUtility.decodeText(fileName);
+    }
+
+    /**
+     * @return an id carrying the UIDVALIDITY and UID of the message if its folder is open
+     */
+    public static CompositeId compositeId(Message message) {
+        return rethrowCheckedAsUnchecked(() -> {
+            Folder folder = message.getFolder();
+            String messageId = message.getHeader(MESSAGE_ID)[0];
+
+            if (folder instanceof UIDFolder && folder.isOpen()) {
+                UIDFolder uidFolder = (UIDFolder) folder;
+                return new CompositeId(folder.getFullName(), messageId, uidFolder.getUIDValidity(), uidFolder.getUID(message));
+            }
+
+            return new CompositeId(folder.getFullName(), messageId);
+        });
+    }
+}
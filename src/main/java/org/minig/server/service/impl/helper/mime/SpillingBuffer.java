@@ -0,0 +1,123 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Buffers written data in memory up to a threshold and in a temporary file above it. The buffered data is read back
+ * as a {@link javax.mail.internet.SharedInputStream} so that javax.mail references the content instead of copying it.
+ * The temporary file is unlinked as soon as it has been opened for reading, its space is released once the returned
+ * stream and all streams derived from it are closed or garbage collected. A buffer that could not be filled completely
+ * has to be {@link #discard() discarded}.
+ *
+ * @author Kamill Sokol
+ */
+final class SpillingBuffer extends OutputStream {
+
+    private final int threshold;
+    private final File directory;
+    private ExposedByteArrayOutputStream memory = new ExposedByteArrayOutputStream();
+    private File file;
+    private OutputStream fileOutput;
+    private boolean closed;
+
+    SpillingBuffer(int threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * @param directory directory of the temporary file, {@code null} for the default temporary-file directory
+     */
+    SpillingBuffer(int threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target(len).write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        if (fileOutput != null) {
+            fileOutput.close();
+        }
+    }
+
+    /**
+     * Closes the buffer and deletes the temporary file without reading it back.
+     */
+    void discard() {
+        closed = true;
+        memory = null;
+        IOUtils.closeQuietly(fileOutput);
+
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Closes the buffer for writing.
+     *
+     * @return an {@link InputStream} that implements {@link javax.mail.internet.SharedInputStream}
+     */
+    InputStream toInputStream() throws IOException {
+        close();
+
+        if (file == null) {
+            return new SharedByteArrayInputStream(memory.buffer(), 0, memory.size());
+        }
+
+        SharedFileInputStream inputStream = new SharedFileInputStream(file);
+
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+
+        return inputStream;
+    }
+
+    private OutputStream target(int length) throws IOException {
+        if (closed) {
+            throw new IOException("buffer closed");
+        }
+
+        if (fileOutput == null && memory.size() + length > threshold) {
+            file = File.createTempFile("minig", ".eml", directory);
+            fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+            memory.writeTo(fileOutput);
+            memory = null;
+        }
+
+        return fileOutput == null ? memory : fileOutput;
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+}
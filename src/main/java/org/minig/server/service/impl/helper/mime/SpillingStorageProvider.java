@@ -0,0 +1,99 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.storage.Storage;
+import org.apache.james.mime4j.storage.StorageOutputStream;
+import org.apache.james.mime4j.storage.StorageProvider;
+
+import javax.mail.internet.SharedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * mime4j {@link StorageProvider} that keeps body content in a {@link SpillingBuffer}, in memory up to the threshold and
+ * in a temporary file above it. Unlike mime4j's temp file storage no file is left behind if a message is not disposed
+ * or if the content could not be read completely.
+ *
+ * @author Kamill Sokol
+ */
+final class SpillingStorageProvider implements StorageProvider {
+
+    private final int threshold;
+    private final File directory;
+
+    SpillingStorageProvider(int threshold) {
+        this(threshold, null);
+    }
+
+    SpillingStorageProvider(int threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public Storage store(InputStream in) throws IOException {
+        SpillingStorageOutputStream out = new SpillingStorageOutputStream(new SpillingBuffer(threshold, directory));
+
+        try {
+            IOUtils.copy(in, out);
+            return out.toStorage();
+        } catch (IOException | RuntimeException exception) {
+            out.buffer.discard();
+            throw exception;
+        }
+    }
+
+    @Override
+    public StorageOutputStream createStorageOutputStream() {
+        return new SpillingStorageOutputStream(new SpillingBuffer(threshold, directory));
+    }
+
+    private static final class SpillingStorageOutputStream extends StorageOutputStream {
+
+        private final SpillingBuffer buffer;
+
+        private SpillingStorageOutputStream(SpillingBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected void write0(byte[] b, int off, int len) throws IOException {
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        protected Storage toStorage0() throws IOException {
+            return new SpillingStorage(buffer.toInputStream());
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            buffer.close();
+        }
+    }
+
+    private static final class SpillingStorage implements Storage {
+
+        private final InputStream content;
+
+        private SpillingStorage(InputStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return ((SharedInputStream) content).newStream(0, -1);
+        }
+
+        @Override
+        public void delete() {
+            try {
+                content.close();
+            } catch (IOException ignored) {
+                // nothing to release
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.minig.server.service.impl.helper.mime;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * Adds attachments to a draft without parsing it into a mime4j DOM. Parts of the draft are copied as they are, for
+ * IMAP messages their encoded content is streamed section by section from the server. Uploaded data is base64
+ * encoded while the new message is written to a {@link SpillingBuffer}, so APPEND can determine the literal size
+ * without fetching the draft twice. The new message carries the flags of the draft.
+ *
+ * @author Kamill Sokol
+ */
+public class StreamingDraft {
+
+    private static final String[] CONTENT_HEADERS = { "MIME-Version", "Content-Type", "Content-Transfer-Encoding", "Content-Length" };
+
+    private final MimeMessage draft;
+    private final List<MimeBodyPart> attachments = new ArrayList<>();
+
+    public StreamingDraft(MimeMessage draft) {
+        this.draft = Objects.requireNonNull(draft, "draft is null");
+    }
+
+    public void addAttachment(DataSource dataSource) {
+        Objects.requireNonNull(dataSource, "dataSource is null");
+
+        attachments.add(rethrowCheckedAsUnchecked(() -> {
+            MimeBodyPart part = new MimeBodyPart();
+            part.setDataHandler(new DataHandler(dataSource));
+            part.setDisposition(Part.ATTACHMENT);
+            part.setFileName(dataSource.getName());
+            part.setHeader("Content-Transfer-Encoding", "base64");
+            return part;
+        }));
+    }
+
+    /**
+     * @return the new message with a new Message-ID
+     */
+    public MimeMessage toMessage() {
+        return rethrowCheckedAsUnchecked(() -> {
+            MimeMessage composed = new MimeMessage((Session) null);
+            Enumeration<?> headerLines = draft.getNonMatchingHeaderLines(CONTENT_HEADERS);
+
+            while (headerLines.hasMoreElements()) {
+                composed.addHeaderLine((String) headerLines.nextElement());
+            }
+
+            composed.setContent(toMixed());
+            composed.saveChanges();
+
+            SpillingBuffer buffer = new SpillingBuffer(MessageTransformer.SPILL_THRESHOLD);
+            composed.writeTo(buffer);
+
+            // the shared stream is referenced by the message and must not be closed here
+            MimeMessage message = new MimeMessage(null, buffer.toInputStream());
+            Flags flags = draft.getFlags();
+
+            // not settable by clients
+            flags.remove(Flags.Flag.RECENT);
+            flags.remove(Flags.Flag.DELETED);
+            message.setFlags(flags, true);
+            return message;
+        });
+    }
+
+    private MimeMultipart toMixed() throws MessagingException, IOException {
+        MimeMultipart mixed = new MimeMultipart("mixed");
+
+        if (draft.isMimeType("multipart/mixed")) {
+            Multipart multipart = (Multipart) draft.getContent();
+
+            for (int i = 0; i < multipart.getCount(); i++) {
+                mixed.addBodyPart(multipart.getBodyPart(i));
+            }
+        } else {
+            // copies the encoded content of the draft unless it has no Content-Transfer-Encoding
+            MimeBodyPart body = new MimeBodyPart();
+            body.setDataHandler(draft.getDataHandler());
+            mixed.addBodyPart(body);
+        }
+
+        for (MimeBodyPart attachment : attachments) {
+            mixed.addBodyPart(attachment);
+        }
+
+        return mixed;
+    }
+}
@@ -1,19 +1,32 @@
 package org.minig.server.service.mail;
 
 import org.minig.security.MailAuthentication;
+import org.minig.server.FolderChanges;
 import org.minig.server.FullMailMessage;
 import org.minig.server.MailFolder;
 import org.minig.server.MailMessage;
 import org.minig.server.MailMessageAddress;
 import org.minig.server.MailMessageList;
+import org.minig.server.MailThread;
+import org.minig.server.MessageBatchResult;
 import org.minig.server.PartialMailMessage;
 import org.minig.server.service.AttachmentRepository;
 import org.minig.server.service.CompositeId;
 import org.minig.server.service.FolderRepository;
+import org.minig.server.service.FolderSyncRepository;
 import org.minig.server.service.MailRepository;
+import org.minig.server.service.MessageField;
+import org.minig.server.service.MessageQuery;
+import org.minig.server.service.MessageSort;
+import org.minig.server.service.RenderedHtmlCache;
 import org.minig.server.service.NotFoundException;
+import org.minig.server.service.SearchMailRepository;
+import org.minig.server.service.SortedMailRepository;
+import org.minig.server.service.StagedAttachment;
+import org.minig.server.service.StagedAttachmentStore;
 import org.minig.server.service.impl.Mime4jAttachmentDataSource;
 import org.minig.server.service.impl.helper.MessageMapper;
+import org.minig.server.service.impl.helper.mime.BodyStructureMessage;
 import org.minig.server.service.impl.helper.mime.Mime4jAttachment;
 import org.minig.server.service.impl.helper.mime.Mime4jMessage;
 import org.slf4j.Logger;
@@ -24,8 +37,17 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.minig.server.service.impl.helper.mime.BodyStructureMessage.HTML_RENDER_VERSION;
 
 /**
  * @author Kamill Sokol
@@ -47,22 +69,109 @@ public class MailService {
     @Autowired
     private AttachmentRepository attachmentRepository;
 
+    @Autowired
+    private FolderSyncRepository folderSyncRepository;
+
+    @Autowired
+    private SortedMailRepository sortedMailRepository;
+
+    @Autowired
+    private SearchMailRepository searchMailRepository;
+
     @Autowired
     private UriComponentsBuilderResolver uriComponentsBuilderResolver;
 
+    @Autowired
+    private StagedAttachmentStore stagedAttachmentStore;
+
+    @Autowired
+    private RenderedHtmlCache renderedHtmlCache;
+
     // TODO
     @Autowired
     private MessageMapper mapper;
 
     public Page<PartialMailMessage> findMessagesByFolder(String folder, int page, int pageLength) {
-        return mailRepository
-                .findByFolderOrderByDateDesc(folder, new PageRequest(page, pageLength))
-                .map(PartialMailMessage::new);
+        return mailRepository.findPartialByFolderOrderByDateDesc(folder, new PageRequest(page, pageLength));
+    }
+
+    /**
+     * @param consumer receives the page chunk by chunk, newest first
+     * @return the number of messages in the folder
+     */
+    public int findMessagesByFolder(String folder, int page, int pageLength, Set<MessageField> fields, Consumer<List<PartialMailMessage>> consumer) {
+        return mailRepository.findPartialByFolderOrderByDateDesc(folder, new PageRequest(page, pageLength), fields, consumer);
     }
 
+    public Page<PartialMailMessage> findMessagesByFolder(String folder, int page, int pageLength, MessageSort sort, boolean reverse) {
+        return sortedMailRepository.findByFolder(folder, sort, reverse, new PageRequest(page, pageLength));
+    }
+
+    /**
+     * @param fields only the FETCH items of these fields are requested
+     */
+    public Page<PartialMailMessage> findMessagesByFolder(String folder, int page, int pageLength, MessageSort sort, boolean reverse, Set<MessageField> fields) {
+        return sortedMailRepository.findByFolder(folder, sort, reverse, new PageRequest(page, pageLength), MessageField.fetchProfile(fields));
+    }
+
+    public Page<MailThread> findThreadsByFolder(String folder, int page, int pageLength) {
+        return sortedMailRepository.findThreadsByFolder(folder, new PageRequest(page, pageLength));
+    }
+
+    public Page<PartialMailMessage> searchMessagesByFolder(String folder, MessageQuery query, int page, int pageLength) {
+        Assert.hasText(folder);
+        Assert.notNull(query);
+        return searchMailRepository.search(folder, query, new PageRequest(page, pageLength));
+    }
+
+    /**
+     * @param token sync token of a previous call or {@code null} to obtain an initial token
+     */
+    public FolderChanges findChangesByFolder(String folder, String token) {
+        Assert.hasText(folder);
+        return folderSyncRepository.findChanges(folder, token);
+    }
+
+    /**
+     * Bodies of ids carrying an UID are served from the {@link RenderedHtmlCache} without contacting the IMAP server.
+     */
     public String findHtmlBodyByCompositeId(CompositeId compositeId) {
-        Mime4jMessage mime4jMessage = mailRepository.findByCompositeId(compositeId).map(Mime4jMessage::new).orElseThrow(NotFoundException::new);
-        return mime4jMessage.getHtml(uriComponentsBuilderResolver.resolveAttachmentUri());
+        Assert.notNull(compositeId);
+
+        String user = authentication.getEmailAddress();
+        UriComponentsBuilder attachmentUri = uriComponentsBuilderResolver.resolveAttachmentUri();
+        String attachmentUriString = attachmentUri.toUriString();
+
+        if (compositeId.hasUid()) {
+            String html = renderedHtmlCache.get(user, compositeId.getFolder(), compositeId.getUidValidity(), compositeId.getUid(), HTML_RENDER_VERSION, attachmentUriString);
+
+            if (html != null) {
+                return html;
+            }
+        }
+
+        MimeMessage mimeMessage = mailRepository.findByCompositeId(compositeId).orElseThrow(NotFoundException::new);
+        String html = new BodyStructureMessage(mimeMessage).getHtml(attachmentUri);
+        CompositeId resolved = new CompositeId(mimeMessage);
+
+        if (resolved.hasUid()) {
+            renderedHtmlCache.put(user, resolved.getFolder(), resolved.getUidValidity(), resolved.getUid(), HTML_RENDER_VERSION, attachmentUriString, html);
+        }
+
+        return html;
+    }
+
+    /**
+     * The tag covers everything the rendered body depends on: the message, the render version and the attachment uri.
+     *
+     * @return an entity tag of the html body or {@code null} if the id does not identify immutable content
+     */
+    public String findHtmlBodyETag(CompositeId compositeId) {
+        if (compositeId == null || !compositeId.hasUid()) {
+            return null;
+        }
+        String attachmentUri = uriComponentsBuilderResolver.resolveAttachmentUri().toUriString();
+        return String.format("\"%d-%d-%d-%08x\"", compositeId.getUidValidity(), compositeId.getUid(), HTML_RENDER_VERSION, attachmentUri.hashCode());
     }
 
     public FullMailMessage findByCompositeId(CompositeId id) {
@@ -94,12 +203,29 @@ public class MailService {
         }
     }
 
-    public void deleteMessages(List<CompositeId> messageIdList) {
+    /**
+     * Moves the messages to the trash folder. Messages that are already in the trash folder are deleted.
+     */
+    public MessageBatchResult deleteMessages(List<CompositeId> messageIdList) {
         Assert.notNull(messageIdList);
 
-        for (CompositeId messageId : messageIdList) {
-            deleteMessage(messageId);
+        String trashFolder = folderRepository.getTrash().getId();
+        MessageBatchResult result = new MessageBatchResult();
+
+        for (Map.Entry<String, List<CompositeId>> entry : groupByFolder(messageIdList, result).entrySet()) {
+            try {
+                if (trashFolder.equals(entry.getKey())) {
+                    result.merge(mailRepository.deleteMessages(entry.getKey(), entry.getValue()));
+                } else {
+                    result.merge(mailRepository.moveMessages(entry.getKey(), entry.getValue(), trashFolder, false));
+                }
+            } catch (Exception e) {
+                log.info(e.getMessage());
+                entry.getValue().forEach(id -> result.failed(id, e.getMessage()));
+            }
         }
+
+        return result;
     }
 
     public void deleteMessage(CompositeId messageId) {
@@ -150,17 +276,25 @@ public class MailService {
         mailRepository.updateFlags(target);
     }
 
-    public void updateMessagesFlags(MailMessageList source) {
+    /**
+     * Groups the messages by folder and applies the flags of each folder in one go.
+     */
+    public MessageBatchResult updateMessagesFlags(MailMessageList source) {
         Assert.notNull(source);
         Assert.notNull(source.getMailList());
 
-        for (MailMessage m : source.getMailList()) {
+        MessageBatchResult result = new MessageBatchResult();
+
+        for (Map.Entry<String, List<MailMessage>> entry : groupByFolder(source.getMailList(), result).entrySet()) {
             try {
-                updateMessageFlags(m);
+                result.merge(mailRepository.updateFlags(entry.getKey(), entry.getValue()));
             } catch (Exception e) {
                 log.info(e.getMessage());
+                entry.getValue().forEach(m -> result.failed(m, e.getMessage()));
             }
         }
+
+        return result;
     }
 
     public void moveMessageToFolder(CompositeId message, String folder) {
@@ -174,13 +308,22 @@ public class MailService {
         mailRepository.updateFlags(mm);
     }
 
-    public void moveMessagesToFolder(List<CompositeId> messageIdList, String folder) {
+    public MessageBatchResult moveMessagesToFolder(List<CompositeId> messageIdList, String folder) {
         Assert.notNull(messageIdList);
         Assert.hasText(folder);
 
-        for (CompositeId id : messageIdList) {
-            moveMessageToFolder(id, folder);
+        MessageBatchResult result = new MessageBatchResult();
+
+        for (Map.Entry<String, List<CompositeId>> entry : groupByFolder(messageIdList, result).entrySet()) {
+            try {
+                result.merge(mailRepository.moveMessages(entry.getKey(), entry.getValue(), folder, true));
+            } catch (Exception e) {
+                log.info(e.getMessage());
+                entry.getValue().forEach(id -> result.failed(id, e.getMessage()));
+            }
         }
+
+        return result;
     }
 
     public void copyMessagesToFolder(List<CompositeId> messageIdList, String folder) {
@@ -196,7 +339,65 @@ public class MailService {
 
     public MailMessage createDraftMessage(MailMessage message) {
         String folderId = folderRepository.getDraft().getId();
+        Mime4jMessage mime4jMessage = composeNewMessage(message);
+
+        List<StagedAttachment> stagedAttachments = stagedAttachmentStore.get(message.getStagedAttachments());
+        stagedAttachments.forEach(mime4jMessage::addAttachment);
+
+        String saved = mailRepository.save(mime4jMessage, folderId);
+        CompositeId compositeId = new CompositeId(folderId, saved);
+        stagedAttachmentStore.remove(stagedAttachments);
+
+        MailMessage readPojo = findMessage(compositeId);
+        readPojo.setRead(Boolean.TRUE);
+        mailRepository.updateFlags(readPojo);
+
+        return readPojo;
+    }
 
+    public MailMessage updateDraftMessage(MailMessage message) {
+        Mime4jMessage mimeMessage = composeUpdatedDraft(message);
+
+        List<StagedAttachment> stagedAttachments = stagedAttachmentStore.get(message.getStagedAttachments());
+        stagedAttachments.forEach(mimeMessage::addAttachment);
+
+        //TODO what about other flags?
+        String saved = mailRepository.save(mimeMessage, message.getFolder());
+        stagedAttachmentStore.remove(stagedAttachments);
+        mailRepository.delete(message);
+        return mailRepository.readPojo(message.getFolder(), saved);
+    }
+
+    /**
+     * Composes the message to submit without saving it. A message with an id is composed from the draft it refers
+     * to. Staged attachments are read from local disk while the message is written and stay staged until
+     * {@link #saveSentMessage(MailMessage, MimeMessage)} is called.
+     */
+    public Mime4jMessage composeMessage(MailMessage message) {
+        Mime4jMessage mime4jMessage = message.getId() == null ? composeNewMessage(message) : composeUpdatedDraft(message);
+        stagedAttachmentStore.get(message.getStagedAttachments()).forEach(mime4jMessage::addAttachment);
+        return mime4jMessage;
+    }
+
+    /**
+     * Appends the submitted message to the sent folder as it was submitted, deletes the draft it was composed from
+     * and releases its staged attachments.
+     */
+    public void saveSentMessage(MailMessage message, MimeMessage submitted) {
+        String folderId = folderRepository.getSent().getId();
+        String saved = mailRepository.append(submitted, folderId);
+        stagedAttachmentStore.remove(stagedAttachmentStore.get(message.getStagedAttachments()));
+
+        MailMessage readPojo = findMessage(new CompositeId(folderId, saved));
+        readPojo.setRead(Boolean.TRUE);
+        mailRepository.updateFlags(readPojo);
+
+        if (message.getId() != null) {
+            mailRepository.delete(message);
+        }
+    }
+
+    private Mime4jMessage composeNewMessage(MailMessage message) {
         Mime4jMessage mime4jMessage = mapper.toMime4jMessage(message);
         mime4jMessage.setFrom(authentication.getEmailAddress());
 
@@ -212,17 +413,10 @@ public class MailService {
             }
         }
 
-        String saved = mailRepository.save(mime4jMessage, folderId);
-        CompositeId compositeId = new CompositeId(folderId, saved);
-
-        MailMessage readPojo = findMessage(compositeId);
-        readPojo.setRead(Boolean.TRUE);
-        mailRepository.updateFlags(readPojo);
-
-        return readPojo;
+        return mime4jMessage;
     }
 
-    public MailMessage updateDraftMessage(MailMessage message) {
+    private Mime4jMessage composeUpdatedDraft(MailMessage message) {
         //TODO maybe saving message and appending attachments from old message is a better approach?
         Mime4jMessage mimeMessage = mailRepository.read(message.getFolder(), message.getMessageId());
 
@@ -257,10 +451,7 @@ public class MailService {
         mimeMessage.setReceipt(message.getReceipt());
         mimeMessage.setDate(message.getDate());
 
-        //TODO what about other flags?
-        String saved = mailRepository.save(mimeMessage, message.getFolder());
-        mailRepository.delete(message);
-        return mailRepository.readPojo(message.getFolder(), saved);
+        return mimeMessage;
     }
 
     public void flagAsAnswered(String messageId) {
@@ -290,4 +481,18 @@ public class MailService {
 
         mailRepository.setForwardedFlag(compositeId, true);
     }
+
+    private static <T extends CompositeId> Map<String, List<T>> groupByFolder(List<T> ids, MessageBatchResult result) {
+        Map<String, List<T>> byFolder = new LinkedHashMap<>();
+
+        for (T id : ids) {
+            if (id == null || id.getFolder() == null) {
+                result.failed(id, "invalid id");
+            } else {
+                byFolder.computeIfAbsent(id.getFolder(), folder -> new ArrayList<>()).add(id);
+            }
+        }
+
+        return byFolder;
+    }
 }
@@ -33,17 +33,20 @@ public class Submission {
     @Autowired
     private JavaMailSenderFactory javaMailSenderFactory;
 
-    public void submit(Mime4jMessage message) {
+    /**
+     * @return the message as it was handed to the SMTP server
+     */
+    public MimeMessage submit(Mime4jMessage message) {
         Assert.notNull(message, "message is null");
 
         try {
-            submitInternal(message);
+            return submitInternal(message);
         } catch (MessagingException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    private void submitInternal(Mime4jMessage message) throws MessagingException {
+    private MimeMessage submitInternal(Mime4jMessage message) throws MessagingException {
         JavaMailSender mailSender = javaMailSenderFactory.newInstance(mailContext.getSession());
         MimeMessage target = message.toMessage();
         Session session = mailContext.getSession();
@@ -68,6 +71,8 @@ public class Submission {
             properties.remove(DSN0);
             properties.remove(DSN1);
         }
+
+        return target;
     }
 
     private void clean(Message message) throws MessagingException {
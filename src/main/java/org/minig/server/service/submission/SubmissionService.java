@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import javax.mail.internet.MimeMessage;
+
 /**
  * @author Kamill Sokol
  */
@@ -23,22 +25,23 @@ public class SubmissionService {
     @Autowired
     private FolderRepository folderRepository;
 
+    /**
+     * Submits the message composed on this server, staged attachments are streamed from local disk into the submitted
+     * message. The submitted message is appended to the sent folder afterwards, the draft it was composed from and
+     * its staged attachments are only removed once submission succeeded.
+     */
     public void sendMessage(MailMessage message) {
         Assert.notNull(message);
 
         Mime4jMessage mime4jMessage = null;
 
-        if (message.getId() == null) {
-            MailMessage mm = mailService.createDraftMessage(message);
-            mime4jMessage = mailService.findById(mm);
-        } else if (message.getId().startsWith(folderRepository.getDraft().getId())) {
-            MailMessage mm = mailService.updateDraftMessage(message);
-            mime4jMessage = mailService.findById(mm);
+        if (message.getId() == null || message.getId().startsWith(folderRepository.getDraft().getId())) {
+            mime4jMessage = mailService.composeMessage(message);
         }
 
-        submission.submit(mime4jMessage);
+        MimeMessage submitted = submission.submit(mime4jMessage);
 
-        mailService.moveMessageToFolder(mime4jMessage.getId(), folderRepository.getSent().getId());
+        mailService.saveSentMessage(message, submitted);
 
         if(message.getInReplyTo() != null) {
             mailService.flagAsAnswered(message.getInReplyTo());
@@ -0,0 +1,30 @@
+package org.minig.server.util;
+
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Kamill Sokol
+ */
+public final class PageUtils {
+
+    private PageUtils() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return a copy of the elements of the requested page, empty if the page lies behind the end of the list
+     */
+    public static <T> List<T> slice(List<T> list, Pageable pageable) {
+        int from = pageable.getOffset();
+
+        if (from >= list.size()) {
+            return Collections.emptyList();
+        }
+
+        return new ArrayList<>(list.subList(from, Math.min(from + pageable.getPageSize(), list.size())));
+    }
+}
@@ -0,0 +1,106 @@
+package org.minig.security;
+
+import org.junit.After;
+import org.junit.Test;
+import org.minig.server.service.impl.MailStorePool;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MailAuthenticationProviderTest {
+
+    private static final String USER = "user@localhost";
+    private static final String PASSWORD = "secret";
+
+    private final MailStorePool mailStorePool = new MailStorePool(2, 3, 60, 0);
+    private final List<Store> connected = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        mailStorePool.destroy();
+    }
+
+    @Test
+    public void shouldKeepPooledConnectionOnWrongPassword() throws Exception {
+        MailAuthenticationProvider uut = provider(new VerifiedCredentialCache(10, 60, 60));
+        uut.authenticate(token(PASSWORD));
+        Store pooled = connected.get(0);
+
+        try {
+            uut.authenticate(token("wrong"));
+            fail("expected UsernameNotFoundException");
+        } catch (UsernameNotFoundException expected) {
+            // expected
+        }
+
+        verify(pooled, never()).close();
+        assertThat(mailStorePool.getOpenConnections(), is(1));
+        assertThat(mailStorePool.getIdleConnections(), is(1));
+        assertThat(mailStorePool.borrow("localhost", USER, PASSWORD), sameInstance(pooled));
+    }
+
+    @Test
+    public void shouldServeVerifiedCredentialsFromCache() throws Exception {
+        MailAuthenticationProvider uut = provider(new VerifiedCredentialCache(10, 60, 60));
+
+        uut.authenticate(token(PASSWORD));
+        Authentication authentication = uut.authenticate(token(PASSWORD));
+
+        assertThat(authentication, instanceOf(MailAuthenticationToken.class));
+        assertThat(connected, hasSize(1));
+    }
+
+    @Test
+    public void shouldLoginAgainAfterCacheExpiry() throws Exception {
+        MailAuthenticationProvider uut = provider(new VerifiedCredentialCache(10, 0, 0));
+
+        uut.authenticate(token(PASSWORD));
+        uut.authenticate(token(PASSWORD));
+
+        assertThat(connected, hasSize(2));
+        assertThat(mailStorePool.getIdleConnections(), is(2));
+    }
+
+    private MailAuthenticationProvider provider(VerifiedCredentialCache verifiedCredentialCache) {
+        return new MailAuthenticationProvider(mailStorePool, verifiedCredentialCache, this::connect);
+    }
+
+    private Store connect(String domain, String user, String password) throws MessagingException {
+        if (!PASSWORD.equals(password)) {
+            throw new AuthenticationFailedException("wrong password");
+        }
+
+        Store store = mock(Store.class);
+        Folder folder = mock(Folder.class);
+        when(store.getDefaultFolder()).thenReturn(folder);
+        when(store.isConnected()).thenReturn(true);
+        when(folder.getSeparator()).thenReturn('.');
+        connected.add(store);
+        return store;
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String password) {
+        return new UsernamePasswordAuthenticationToken(USER, password);
+    }
+}
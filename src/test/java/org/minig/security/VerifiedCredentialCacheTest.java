@@ -0,0 +1,89 @@
+package org.minig.security;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class VerifiedCredentialCacheTest {
+
+    private VerifiedCredentialCache uut = new VerifiedCredentialCache(2, 60, 60);
+
+    @Test
+    public void shouldReturnNullWhenNotVerified() {
+        assertThat(uut.get("user@localhost", "password"), nullValue());
+        assertThat(uut.getMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldReturnVerifiedEntry() {
+        uut.putVerified("user@localhost", "password", "localhost", '.');
+
+        VerifiedCredentialCache.Entry entry = uut.get("user@localhost", "password");
+
+        assertThat(entry.isVerified(), is(true));
+        assertThat(entry.getDomain(), is("localhost"));
+        assertThat(entry.getFolderSeparator(), is('.'));
+        assertThat(uut.getHits(), is(1L));
+    }
+
+    @Test
+    public void shouldNotReturnEntryForDifferentPassword() {
+        uut.putVerified("user@localhost", "password", "localhost", '.');
+
+        assertThat(uut.get("user@localhost", "other"), nullValue());
+    }
+
+    @Test
+    public void shouldReturnFailedEntry() {
+        uut.putFailed("user@localhost", "password");
+
+        assertThat(uut.get("user@localhost", "password").isVerified(), is(false));
+        assertThat(uut.getNegativeHits(), is(1L));
+    }
+
+    @Test
+    public void shouldNotCacheFailureWhenNegativeTtlIsZero() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(2, 60, 0);
+
+        cache.putFailed("user@localhost", "password");
+
+        assertThat(cache.get("user@localhost", "password"), nullValue());
+    }
+
+    @Test
+    public void shouldExpireEntry() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(2, 0, 0);
+
+        cache.putVerified("user@localhost", "password", "localhost", '.');
+
+        assertThat(cache.get("user@localhost", "password"), nullValue());
+        assertThat(cache.getSize(), is(0));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntry() {
+        uut.putVerified("user1@localhost", "password", "localhost", '.');
+        uut.putVerified("user2@localhost", "password", "localhost", '.');
+        uut.get("user1@localhost", "password");
+        uut.putVerified("user3@localhost", "password", "localhost", '.');
+
+        assertThat(uut.getSize(), is(2));
+        assertThat(uut.get("user2@localhost", "password"), nullValue());
+        assertThat(uut.get("user1@localhost", "password").isVerified(), is(true));
+    }
+
+    @Test
+    public void shouldInvalidateAllEntriesOfUser() {
+        uut.putVerified("user@localhost", "password", "localhost", '.');
+        uut.putFailed("user@localhost", "wrong");
+
+        uut.invalidate("user@localhost");
+
+        assertThat(uut.getSize(), is(0));
+    }
+}
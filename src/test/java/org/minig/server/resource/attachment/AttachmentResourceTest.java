@@ -6,6 +6,7 @@ import org.minig.server.MailAttachment;
 import org.minig.server.service.AttachmentService;
 import org.minig.server.service.CompositeAttachmentId;
 import org.minig.server.service.CompositeId;
+import org.minig.server.service.StagedAttachment;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -19,13 +20,23 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_LENGTH;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpHeaders.RANGE;
 import static org.springframework.http.MediaType.IMAGE_PNG_VALUE;
 import static org.springframework.http.MediaType.TEXT_HTML_VALUE;
 import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -63,7 +74,7 @@ public class AttachmentResourceTest {
 
         mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png"))
                 .andExpect(status().isOk())
-                .andExpect(content().bytes("\"ZGF0YQ==\"".getBytes()))
+                .andExpect(content().bytes("data".getBytes()))
                 .andExpect(header().string(CONTENT_DISPOSITION, "attachment; filename=\"1.png\""))
                 .andExpect(header().string(CONTENT_TYPE, TEXT_PLAIN_VALUE));
     }
@@ -83,7 +94,7 @@ public class AttachmentResourceTest {
 
         mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png"))
                 .andExpect(status().isOk())
-                .andExpect(content().bytes("\"ZGF0YQ==\"".getBytes()))
+                .andExpect(content().bytes("data".getBytes()))
                 .andExpect(header().string(CONTENT_DISPOSITION, "inline; filename=\"1.png\""))
                 .andExpect(header().string(CONTENT_TYPE, TEXT_PLAIN_VALUE));
     }
@@ -133,8 +144,129 @@ public class AttachmentResourceTest {
 
         mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C1%7Cumlaut%20%C3%A4.png"))
                 .andExpect(status().isOk())
-                .andExpect(content().bytes("\"ZGF0YQ==\"".getBytes()))
+                .andExpect(content().bytes("data".getBytes()))
                 .andExpect(header().string(CONTENT_DISPOSITION, "attachment; filename=\"umlaut ä.png\""))
                 .andExpect(header().string(CONTENT_TYPE, IMAGE_PNG_VALUE));
     }
+
+    @Test
+    public void shouldReturnNotModifiedWhenETagMatches() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(rangeAttachment(compositeAttachmentId, "0123456789"));
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").header(IF_NONE_MATCH, "\"1-2-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(ETAG, "\"1-2-3\""))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void shouldReturnRequestedRange() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(rangeAttachment(compositeAttachmentId, "0123456789"));
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").header(RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(header().string(CONTENT_LENGTH, "3"))
+                .andExpect(content().bytes("234".getBytes()));
+    }
+
+    @Test
+    public void shouldNotComputeSizeWithoutRange() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        MailAttachment mailAttachment = new MailAttachment(compositeAttachmentId, IMAGE_PNG_VALUE, null, "attachment", new ByteArrayInputStream("data".getBytes())) {
+            @Override
+            public long getSize() {
+                throw new AssertionError("size computed");
+            }
+
+            @Override
+            public long getKnownSize() {
+                return 4;
+            }
+        };
+
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(mailAttachment);
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CONTENT_LENGTH, "4"))
+                .andExpect(header().string(ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes("data".getBytes()));
+    }
+
+    @Test
+    public void shouldReturnSuffixRange() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(rangeAttachment(compositeAttachmentId, "0123456789"));
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").header(RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().bytes("789".getBytes()));
+    }
+
+    @Test
+    public void shouldIgnoreRangeWhenIfRangeDoesNotMatch() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(rangeAttachment(compositeAttachmentId, "0123456789"));
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").header(RANGE, "bytes=2-4").header(IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes("0123456789".getBytes()));
+    }
+
+    @Test
+    public void shouldRejectUnsatisfiableRange() throws Exception {
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+        when(attachmentService.findById(compositeAttachmentId)).thenReturn(rangeAttachment(compositeAttachmentId, "0123456789"));
+
+        mockMvc.perform(get(PREFIX + "/attachment/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").header(RANGE, "bytes=10-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    public void shouldStageAttachment() throws Exception {
+        StagedAttachment stagedAttachment = mock(StagedAttachment.class);
+        when(stagedAttachment.getId()).thenReturn("staged");
+        when(stagedAttachment.getName()).thenReturn("file.html");
+        when(stagedAttachment.getContentType()).thenReturn(TEXT_HTML_VALUE);
+        when(stagedAttachment.getSize()).thenReturn(4L);
+        when(attachmentService.stageAttachment(anyObject())).thenReturn(stagedAttachment);
+
+        mockMvc.perform(fileUpload(PREFIX + "/attachment/staged")
+                .file("file.html", "data".getBytes()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$[0].id").value("staged"))
+                .andExpect(jsonPath("$[0].fileName").value("file.html"))
+                .andExpect(jsonPath("$[0].mime").value(TEXT_HTML_VALUE))
+                .andExpect(jsonPath("$[0].size").value(4));
+
+        verify(attachmentService, never()).addAttachment(anyObject(), anyObject());
+    }
+
+    @Test
+    public void shouldDeleteStagedAttachment() throws Exception {
+        mockMvc.perform(delete(PREFIX + "/attachment/staged/staged"))
+                .andExpect(status().isNoContent());
+
+        verify(attachmentService).deleteStagedAttachment("staged");
+    }
+
+    private static MailAttachment rangeAttachment(CompositeAttachmentId id, String data) {
+        return new MailAttachment(id, IMAGE_PNG_VALUE, null, "attachment", new ByteArrayInputStream(data.getBytes())) {
+            @Override
+            public long getSize() {
+                return data.length();
+            }
+
+            @Override
+            public String getETag() {
+                return "\"1-2-3\"";
+            }
+        };
+    }
 }
@@ -0,0 +1,124 @@
+package org.minig.server.resource.attachment;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minig.server.MailAttachment;
+import org.minig.server.service.CompositeAttachmentId;
+import org.minig.server.service.ImageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.MediaType.IMAGE_JPEG_VALUE;
+import static org.springframework.http.MediaType.IMAGE_PNG_VALUE;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Kamill Sokol
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = ImageResource.class, secure = false)
+public class ImageResourceTest {
+
+    private static final String PREFIX = "/1";
+
+    private final CompositeAttachmentId id = new CompositeAttachmentId("INBOX/test", "<id@localhost>", "1.png");
+
+    @MockBean
+    private ImageService imageService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void shouldStreamImage() throws Exception {
+        when(imageService.findImage(id)).thenReturn(new MailAttachment(id, IMAGE_PNG_VALUE, "cid", "inline", new ByteArrayInputStream("png".getBytes())));
+
+        mockMvc.perform(get(PREFIX + "/image/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("png".getBytes()))
+                .andExpect(header().string(CONTENT_TYPE, IMAGE_PNG_VALUE))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"));
+
+        verify(imageService, never()).findThumbnail(anyObject(), anyInt());
+    }
+
+    @Test
+    public void shouldStreamThumbnail() throws Exception {
+        MailAttachment image = new MailAttachment(id, IMAGE_PNG_VALUE, "cid", "inline", null);
+
+        when(imageService.findImage(id)).thenReturn(image);
+        when(imageService.findThumbnail(image, 120)).thenReturn(new ScaledImage(id, "\"1-2-3-w120\"", "jpeg"));
+
+        mockMvc.perform(get(PREFIX + "/image/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").param("width", "120"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("jpeg".getBytes()))
+                .andExpect(header().string(CONTENT_TYPE, IMAGE_JPEG_VALUE))
+                .andExpect(header().string(ETAG, "\"1-2-3-w120\""))
+                .andExpect(header().string(CACHE_CONTROL, "private, max-age=31536000, immutable"));
+    }
+
+    @Test
+    public void shouldReturnNotModifiedThumbnailForMatchingETag() throws Exception {
+        MailAttachment image = new MailAttachment(id, IMAGE_PNG_VALUE, "cid", "inline", null);
+
+        when(imageService.findImage(id)).thenReturn(image);
+        when(imageService.findThumbnail(image, 120)).thenReturn(new ScaledImage(id, "\"1-2-3-w120\"", "jpeg"));
+
+        mockMvc.perform(get(PREFIX + "/image/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").param("width", "120").header(IF_NONE_MATCH, "\"1-2-3-w120\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void shouldRejectInvalidWidth() throws Exception {
+        mockMvc.perform(get(PREFIX + "/image/INBOX%2Ftest%7C%3Cid@localhost%3E%7C1.png").param("width", "0"))
+                .andExpect(status().isBadRequest());
+
+        verify(imageService, never()).findImage(anyObject());
+    }
+
+    private static class ScaledImage extends MailAttachment {
+
+        private final String eTag;
+        private final byte[] data;
+
+        private ScaledImage(CompositeAttachmentId id, String eTag, String data) {
+            super(id, IMAGE_JPEG_VALUE, "cid", "inline", null);
+            this.eTag = eTag;
+            this.data = data.getBytes();
+        }
+
+        @Override
+        public InputStream getData() {
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public long getSize() {
+            return data.length;
+        }
+
+        @Override
+        public String getETag() {
+            return eTag;
+        }
+    }
+}
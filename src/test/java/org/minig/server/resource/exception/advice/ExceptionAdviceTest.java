@@ -5,7 +5,6 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.minig.server.resource.folder.FolderResource;
 import org.minig.server.service.FolderService;
-import org.mockito.Matchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -42,7 +41,7 @@ public class ExceptionAdviceTest {
 
     @Test
     public void testCustomExceptionResolver() throws Exception {
-        when(folderService.findBySubscribed(Matchers.<Boolean> anyObject())).thenThrow(new RuntimeException());
+        when(folderService.findFolderTree()).thenThrow(new RuntimeException());
 
         Map<String, Object> map = new HashMap<>();
         map.put("status", 500);
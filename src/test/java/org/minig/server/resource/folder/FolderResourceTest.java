@@ -7,27 +7,40 @@ import org.junit.runner.RunWith;
 import org.minig.server.MailFolder;
 import org.minig.server.TestConstants;
 import org.minig.server.service.FolderService;
-import org.mockito.Matchers;
+import org.minig.server.service.FolderTree;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
 
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -48,26 +61,126 @@ public class FolderResourceTest {
 
     @Test
     public void testFindBySubscribed_params() throws Exception {
-        when(folderService.findBySubscribed(Matchers.<Boolean> anyObject())).thenReturn(Collections.emptyList());
+        when(folderService.findFolderTree()).thenReturn(folderTree());
 
-        mockMvc.perform(get(PREFIX + "/folder")).andExpect(status().isOk()).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8));
-        verify(folderService).findBySubscribed(null);
+        mockMvc.perform(get(PREFIX + "/folder")).andExpect(status().isOk()).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(2)));
 
-        reset(folderService);
+        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "true")).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value("INBOX"));
 
-        when(folderService.findBySubscribed(Matchers.<Boolean> anyObject())).thenReturn(Collections.emptyList());
+        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "false")).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value("INBOX.test"));
+    }
 
-        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "true")).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
-                .andExpect(status().isOk());
-        verify(folderService).findBySubscribed(true);
+    @Test
+    public void shouldReturnNotModifiedFolderTreeForMatchingETag() throws Exception {
+        FolderTree folderTree = folderTree();
+        when(folderService.findFolderTree()).thenReturn(folderTree);
 
-        reset(folderService);
+        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "true").param("counts", "false"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ETAG, folderTree.getETag(true)))
+                .andExpect(header().string(CACHE_CONTROL, "private, no-cache"));
 
-        when(folderService.findBySubscribed(Matchers.<Boolean> anyObject())).thenReturn(Collections.emptyList());
+        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "true").param("counts", "false").header(IF_NONE_MATCH, folderTree.getETag(true)))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
 
-        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "false")).andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
+        mockMvc.perform(get(PREFIX + "/folder").param("counts", "false").header(IF_NONE_MATCH, folderTree.getETag(true)))
                 .andExpect(status().isOk());
-        verify(folderService).findBySubscribed(false);
+
+        verify(folderService, never()).countMessages(anyObject());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReturnFoldersWithCounts() throws Exception {
+        FolderTree folderTree = folderTree();
+        when(folderService.findFolderTree()).thenReturn(folderTree);
+        doAnswer(invocation -> {
+            for (MailFolder folder : (List<MailFolder>) invocation.getArguments()[0]) {
+                folder.setMessageCount(3);
+                folder.setUnreadMessageCount(1);
+            }
+            return null;
+        }).when(folderService).countMessages(anyObject());
+
+        mockMvc.perform(get(PREFIX + "/folder").param("subscribed", "true").param("counts", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].messageCount").value(3))
+                .andExpect(jsonPath("$[0].unreadMessageCount").value(1))
+                .andExpect(header().string(ETAG, not(folderTree.getETag(true))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRevalidateCachedCountsWithoutAskingServer() throws Exception {
+        FolderTree folderTree = folderTree();
+        when(folderService.findFolderTree()).thenReturn(folderTree);
+        when(folderService.countCachedMessages(anyObject())).thenAnswer(invocation -> {
+            for (MailFolder folder : (List<MailFolder>) invocation.getArguments()[0]) {
+                folder.setMessageCount(3);
+                folder.setUnreadMessageCount(1);
+            }
+            return true;
+        });
+
+        String eTag = mockMvc.perform(get(PREFIX + "/folder").param("counts", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].messageCount").value(3))
+                .andReturn().getResponse().getHeader(ETAG);
+
+        mockMvc.perform(get(PREFIX + "/folder").param("counts", "true").header(IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        verify(folderService, never()).countMessages(anyObject());
+    }
+
+    @Test
+    public void shouldLeaveOutCountsByDefault() throws Exception {
+        when(folderService.findFolderTree()).thenReturn(folderTree());
+
+        mockMvc.perform(get(PREFIX + "/folder"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].messageCount").doesNotExist());
+
+        verify(folderService, never()).countCachedMessages(anyObject());
+        verify(folderService, never()).countMessages(anyObject());
+    }
+
+    @Test
+    public void shouldReturnPageOfChildren() throws Exception {
+        MailFolder child = new MailFolder("INBOX.test", "test", false);
+        child.setHasChildren(true);
+        when(folderService.findChildren("INBOX", 1, 1)).thenReturn(new PageImpl<>(Arrays.asList(child), new PageRequest(1, 1), 2));
+
+        mockMvc.perform(get(PREFIX + "/folder").param("parent", "INBOX").param("page", "1").param("page_length", "1").param("counts", "false"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TestConstants.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.page").value(1))
+                .andExpect(jsonPath("$.fullLength").value(2))
+                .andExpect(jsonPath("$.folderList", hasSize(1)))
+                .andExpect(jsonPath("$.folderList[0].id").value("INBOX.test"))
+                .andExpect(jsonPath("$.folderList[0].hasChildren").value(true));
+
+        verify(folderService, never()).findFolderTree();
+        verify(folderService, never()).countMessages(anyObject());
+    }
+
+    @Test
+    public void shouldCountMessagesOfChildren() throws Exception {
+        when(folderService.findChildren(eq(""), eq(0), eq(100))).thenReturn(new PageImpl<>(Arrays.asList(new MailFolder("INBOX", "INBOX", true))));
+
+        mockMvc.perform(get(PREFIX + "/folder").param("parent", "").param("counts", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.folderList[0].id").value("INBOX"));
+
+        verify(folderService).countMessages(anyObject());
     }
 
     @Test
@@ -156,4 +269,10 @@ public class FolderResourceTest {
 
         verify(folderService).deleteFolder("INBOX/createme/nested5");
     }
+
+    private static FolderTree folderTree() {
+        MailFolder inbox = new MailFolder("INBOX", "INBOX", true);
+        MailFolder test = new MailFolder("INBOX.test", "test", false);
+        return new FolderTree(Arrays.asList(inbox, test));
+    }
 }
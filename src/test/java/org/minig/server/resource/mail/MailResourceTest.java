@@ -4,12 +4,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.minig.server.FolderChanges;
 import org.minig.server.FullMailMessage;
 import org.minig.server.MailMessage;
 import org.minig.server.MailMessageList;
+import org.minig.server.MessageBatchResult;
 import org.minig.server.PartialMailMessage;
 import org.minig.server.TestConstants;
 import org.minig.server.service.CompositeId;
+import org.minig.server.service.MessageField;
+import org.minig.server.service.MessageSort;
 import org.minig.server.service.MimeMessageBuilder;
 import org.minig.server.service.NotFoundException;
 import org.minig.server.service.mail.MailService;
@@ -24,7 +28,9 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.hasProperty;
@@ -35,9 +41,14 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.http.MediaType.TEXT_HTML;
@@ -47,6 +58,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -96,6 +108,99 @@ public class MailResourceTest {
                 .andExpect(jsonPath("$.page").value(0));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReturnProjectedMessageList() throws Exception {
+        PartialMailMessage partialMailMessage = new PartialMailMessage(new MimeMessageBuilder().build(TestConstants.HTML));
+
+        doAnswer(invocation -> {
+            ((Consumer<List<PartialMailMessage>>) invocation.getArguments()[4]).accept(Collections.singletonList(partialMailMessage));
+            return 7;
+        }).when(mailService).findMessagesByFolder(Matchers.eq("INBOX"), Matchers.eq(0), Matchers.eq(10),
+                Matchers.eq(EnumSet.of(MessageField.SUBJECT, MessageField.FLAGS)), anyObject());
+
+        mockMvc.perform(get(PREFIX + "/message").param("folder", "INBOX").param("fields", "subject, flags"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.mailList[0].id").value("folder%257C%253C51EABBD0.3060000%2540localhost%253E"))
+                .andExpect(jsonPath("$.mailList[0].subject").value("test"))
+                .andExpect(jsonPath("$.mailList[0].read").value(false))
+                .andExpect(jsonPath("$.mailList[0].forwarded").value(false))
+                .andExpect(jsonPath("$.mailList[0].date").doesNotExist())
+                .andExpect(jsonPath("$.mailList[0].sender").doesNotExist())
+                .andExpect(jsonPath("$.fullLength").value(7))
+                .andExpect(jsonPath("$.page").value(0));
+
+        verify(mailService, never()).findMessagesByFolder(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void shouldReturnSortedProjectedMessageList() throws Exception {
+        PartialMailMessage partialMailMessage = new PartialMailMessage(new MimeMessageBuilder().build(TestConstants.HTML));
+
+        when(mailService.findMessagesByFolder("INBOX", 0, 10, MessageSort.SUBJECT, false, EnumSet.of(MessageField.SUBJECT)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(partialMailMessage), new PageRequest(0, 10), 1));
+
+        mockMvc.perform(get(PREFIX + "/message").param("folder", "INBOX").param("fields", "subject").param("sort", "subject").param("order", "asc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mailList[0].subject").value("test"))
+                .andExpect(jsonPath("$.mailList[0].read").doesNotExist())
+                .andExpect(jsonPath("$.fullLength").value(1));
+
+        verify(mailService, never()).findMessagesByFolder(anyString(), anyInt(), anyInt(), anyObject(), Matchers.anyBoolean());
+    }
+
+    @Test
+    public void shouldRejectUnknownField() throws Exception {
+        mockMvc.perform(get(PREFIX + "/message").param("folder", "INBOX").param("fields", "subject,body"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnFolderChanges() throws Exception {
+        FolderChanges changes = new FolderChanges("1.0.5.1", false);
+        changes.getVanished().add(3L);
+        when(mailService.findChangesByFolder("INBOX", "1.0.4.1")).thenReturn(changes);
+
+        mockMvc.perform(get(PREFIX + "/message/sync").param("folder", "INBOX").param("token", "1.0.4.1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").value("1.0.5.1"))
+                .andExpect(jsonPath("$.reset").value(false))
+                .andExpect(jsonPath("$.vanished[0]").value(3));
+    }
+
+    @Test
+    public void shouldSearchMessages() throws Exception {
+        PartialMailMessage message = new PartialMailMessage(new MimeMessageBuilder().build(TestConstants.HTML));
+        when(mailService.searchMessagesByFolder(Matchers.eq("INBOX"), anyObject(), Matchers.eq(0), Matchers.eq(10)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(message), new PageRequest(0, 10), 1));
+
+        mockMvc.perform(get(PREFIX + "/message/search").param("folder", "INBOX").param("subject", "test").param("since", "2013-07-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fullLength").value(1))
+                .andExpect(jsonPath("$.mailList[0].subject").value("test"));
+    }
+
+    @Test
+    public void shouldRejectSearchWithoutCriteria() throws Exception {
+        mockMvc.perform(get(PREFIX + "/message/search").param("folder", "INBOX").param("q", " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnNotModifiedHtmlBodyForMatchingETag() throws Exception {
+        when(mailService.findHtmlBodyETag(any())).thenReturn("\"1-2\"");
+
+        mockMvc.perform(get(PREFIX + "/message/INBOX%2Ftest%7C1@example.com/html")
+                .accept(TEXT_HTML)
+                .header(IF_NONE_MATCH, "\"1-2\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(ETAG, "\"1-2\""))
+                .andExpect(header().string(CACHE_CONTROL, "private, max-age=31536000, immutable"));
+
+        verify(mailService, never()).findHtmlBodyByCompositeId(any());
+    }
+
     @Test
     public void shouldReturnHtmlBodyOnGetForKnownId() throws Exception {
         when(mailService.findHtmlBodyByCompositeId(any())).thenReturn("html");
@@ -126,6 +231,31 @@ public class MailResourceTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void shouldNotCacheMissingHtmlBody() throws Exception {
+        when(mailService.findHtmlBodyETag(any())).thenReturn("\"1-2\"");
+        when(mailService.findHtmlBodyByCompositeId(any())).thenThrow(new NotFoundException());
+
+        mockMvc.perform(get(PREFIX + "/message/INBOX%7Cunknown/html")
+                .accept(TEXT_HTML))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist(CACHE_CONTROL))
+                .andExpect(header().doesNotExist(ETAG));
+    }
+
+    @Test
+    public void shouldReturnHtmlBodyWithETag() throws Exception {
+        when(mailService.findHtmlBodyETag(any())).thenReturn("\"1-2\"");
+        when(mailService.findHtmlBodyByCompositeId(any())).thenReturn("html");
+
+        mockMvc.perform(get(PREFIX + "/message/INBOX%2Ftest%7C1@example.com/html")
+                .accept(TEXT_HTML))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ETAG, "\"1-2\""))
+                .andExpect(header().string(CACHE_CONTROL, "private, max-age=31536000, immutable"))
+                .andExpect(content().string(is("html")));
+    }
+
     @Test
     public void testFindMessagesByFolder_defaultArguments() throws Exception {
         when(mailService.findMessagesByFolder(anyString(), anyInt(), anyInt())).thenReturn(new PageImpl<>(Collections.emptyList(), new PageRequest(1, 1), 1));
@@ -215,9 +345,11 @@ public class MailResourceTest {
     public void testUpdateMessagesFlags() throws Exception {
         String content = new ObjectMapper().writeValueAsString(new MailMessageList());
 
-        doNothing().when(mailService).updateMessagesFlags(any(MailMessageList.class));
+        when(mailService.updateMessagesFlags(any(MailMessageList.class))).thenReturn(new MessageBatchResult());
 
-        mockMvc.perform(put(PREFIX + "/message/flag").contentType(TestConstants.APPLICATION_JSON_UTF8).content(content)).andExpect(status().isOk());
+        mockMvc.perform(put(PREFIX + "/message/flag").contentType(TestConstants.APPLICATION_JSON_UTF8).content(content))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results").isArray());
 
         verify(mailService).updateMessagesFlags(any(MailMessageList.class));
     }
@@ -226,7 +358,7 @@ public class MailResourceTest {
     public void testMoveMessagesToFolder() throws Exception {
         String content = new ObjectMapper().writeValueAsString(new MessageCopyOrMoveRequest());
 
-        doNothing().when(mailService).moveMessagesToFolder(Matchers.<List<CompositeId>> anyObject(), anyString());
+        when(mailService.moveMessagesToFolder(Matchers.<List<CompositeId>> anyObject(), anyString())).thenReturn(new MessageBatchResult());
 
         mockMvc.perform(put(PREFIX + "/message/move").contentType(TestConstants.APPLICATION_JSON_UTF8).content(content)).andExpect(status().isOk());
 
@@ -255,7 +387,7 @@ public class MailResourceTest {
 
         String content = new ObjectMapper().writeValueAsString(request);
 
-        doNothing().when(mailService).deleteMessages(any(List.class));
+        when(mailService.deleteMessages(any(List.class))).thenReturn(new MessageBatchResult());
 
         mockMvc.perform(put(PREFIX + "/message/delete").contentType(TestConstants.APPLICATION_JSON_UTF8).content(content))
                 .andExpect(status().isOk());
@@ -0,0 +1,86 @@
+package org.minig.server.resource.notification;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minig.server.MailboxEvent;
+import org.minig.server.MessageFlags;
+import org.minig.server.service.MailboxWatcher;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.mail.Flags;
+import java.io.UnsupportedEncodingException;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Kamill Sokol
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = NotificationResource.class, secure = false)
+public class NotificationResourceTest {
+
+    private static final String PREFIX = "/1";
+
+    @MockBean
+    private MailboxWatcher mailboxWatcher;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldStreamMailboxEvents() throws Exception {
+        ArgumentCaptor<Consumer> listener = ArgumentCaptor.forClass(Consumer.class);
+        MailboxWatcher.Subscription subscription = mock(MailboxWatcher.Subscription.class);
+        when(mailboxWatcher.subscribe(any())).thenReturn(subscription);
+
+        MvcResult result = mockMvc.perform(get(PREFIX + "/notification").accept(MediaType.valueOf("text/event-stream")))
+                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        verify(mailboxWatcher).subscribe(listener.capture());
+
+        listener.getValue().accept(MailboxEvent.exists("INBOX", 2));
+        listener.getValue().accept(MailboxEvent.flags("INBOX", new MessageFlags(42, new Flags(Flags.Flag.SEEN))));
+
+        await(() -> result.getResponse().getContentAsString().contains("\"read\":true"));
+
+        assertThat(result.getResponse().getContentAsString(), allOf(
+                containsString("event:exists\ndata:{\"type\":\"exists\",\"folder\":\"INBOX\",\"count\":2}\n\n"),
+                containsString("event:flags\ndata:{\"type\":\"flags\",\"folder\":\"INBOX\",\"changed\":{\"uid\":42,"),
+                containsString("\"read\":true")));
+    }
+
+    private static void await(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.isMet() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue("condition not met within 5 seconds", condition.isMet());
+    }
+
+    private interface Condition {
+        boolean isMet() throws UnsupportedEncodingException;
+    }
+}
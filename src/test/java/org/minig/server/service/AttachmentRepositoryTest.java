@@ -17,6 +17,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.activation.FileDataSource;
+import javax.mail.Flags;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import java.io.File;
@@ -32,6 +33,7 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyString;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -206,4 +208,20 @@ public class AttachmentRepositoryTest {
         assertEquals(1, readMetadata2.size());
         assertEquals("folder.gif", readMetadata2.get(0).getFileName());
     }
+
+    @Test
+    public void shouldCarryFlagsOverToAppendedDraft() throws MessagingException {
+        MimeMessage m = new MimeMessageBuilder().build(TestConstants.MULTIPART_WITH_PLAIN_AND_HTML);
+        m.setFlags(new Flags(Flags.Flag.FLAGGED), true);
+        m.setFlags(new Flags("$MDNSent"), true);
+
+        mockServer.prepareMailBox("INBOX.Drafts", m);
+
+        CompositeId appendAttachmentId = uut.appendAttachment(new CompositeId("INBOX.Drafts", m.getMessageID()), new FileDataSource(new File(TestConstants.ATTACHMENT_IMAGE_FOLDER_GIF)));
+        MimeMessage appended = mailRepository.findByCompositeId(appendAttachmentId).get();
+
+        assertThat(appended.isSet(Flags.Flag.FLAGGED), is(true));
+        assertThat(appended.getFlags().contains("$MDNSent"), is(true));
+        assertThat(appended.getMessageID(), not(m.getMessageID()));
+    }
 }
@@ -96,4 +96,26 @@ public class AttachmentServiceTest {
         assertThat(IOUtils.toByteArray(mailAttachment.getData()), is(new byte[] { (byte) 'a' }));
     }
 
+    @Test
+    public void shouldFindAttachmentByFileName() throws Exception {
+        MimeMessage mimeMessage = new MimeMessageBuilder().setFolder("INBOX").build(TestConstants.MULTIPART_WITH_ATTACHMENT);
+        mailboxRule.append("INBOX", mimeMessage);
+
+        CompositeAttachmentId compositeAttachmentId = new CompositeAttachmentId("INBOX", mimeMessage.getMessageID(), "2.png");
+        MailAttachment mailAttachment = service.findById(compositeAttachmentId);
+
+        assertThat(mailAttachment.getId(), is(compositeAttachmentId.getId()));
+        assertThat(mailAttachment.getMime(), is(IMAGE_PNG_VALUE));
+        assertThat(mailAttachment.getDispositionType(), is("attachment"));
+        assertThat(mailAttachment.getSize(), is(1L));
+        assertThat(IOUtils.toByteArray(mailAttachment.getData()), is(new byte[] { (byte) 'b' }));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void shouldThrowNotFoundExceptionWhenFileNameIsUnknown() throws Exception {
+        MimeMessage mimeMessage = new MimeMessageBuilder().setFolder("INBOX").build(TestConstants.MULTIPART_WITH_ATTACHMENT);
+        mailboxRule.append("INBOX", mimeMessage);
+
+        service.findById(new CompositeAttachmentId("INBOX", mimeMessage.getMessageID(), "3.png"));
+    }
 }
@@ -0,0 +1,68 @@
+package org.minig.server.service;
+
+import org.junit.Test;
+import org.minig.server.service.BoundedLruCache.Key;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class BoundedLruCacheTest {
+
+    private final List<String> evicted = new ArrayList<>();
+    private final BoundedLruCache<String> uut = new BoundedLruCache<>(6, String::length, (key, value) -> evicted.add(value));
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        uut.put(new Key("user", 1), "aa");
+        uut.put(new Key("user", 2), "bb");
+        uut.get(new Key("user", 1));
+        uut.put(new Key("user", 3), "cc");
+        uut.put(new Key("user", 4), "d");
+
+        assertThat(evicted, contains("bb"));
+        assertThat(uut.get(new Key("user", 2)), nullValue());
+        assertThat(uut.get(new Key("user", 1)), is("aa"));
+        assertThat(uut.getWeight(), is(5L));
+        assertThat(uut.getHits(), is(2L));
+        assertThat(uut.getMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldReturnReplacedValueWithoutEvictingIt() throws Exception {
+        uut.put(new Key("user", 1), "aa");
+
+        assertThat(uut.put(new Key("user", 1), "bbb"), is("aa"));
+        assertThat(evicted, empty());
+        assertThat(uut.getWeight(), is(3L));
+    }
+
+    @Test
+    public void shouldRemoveInvalidValueAsMiss() throws Exception {
+        uut.put(new Key("user", 1), "aa");
+
+        assertThat(uut.get(new Key("user", 1), value -> false), nullValue());
+        assertThat(uut.size(), is(0));
+        assertThat(uut.getWeight(), is(0L));
+        assertThat(uut.getMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldRemoveEntriesOfUser() throws Exception {
+        uut.put(new Key("user", 1), "a");
+        uut.put(new Key("other", 1), "b");
+        uut.put(new Key("user"), "c");
+
+        assertThat(uut.removeIf(key -> "user".equals(key.getUser())), contains("a", "c"));
+        assertThat(uut.values(), contains("b"));
+        assertThat(uut.getWeight(), is(1L));
+    }
+}
@@ -123,4 +123,43 @@ public class CompositeIdTest {
 
         assertThat(id1.hashCode(), is(id2.hashCode()));
     }
+
+    @Test
+    public void shouldAppendUidReference() {
+        CompositeId id = new CompositeId("INBOX", "<id@localhost>", 385759045L, 20L);
+
+        assertThat(id.getId(), is("INBOX" + CompositeId.SEPARATOR + "<id@localhost>;UIDVALIDITY=385759045;UID=20"));
+        assertThat(id.getMessageId(), is("<id@localhost>"));
+        assertThat(id.hasUid(), is(true));
+    }
+
+    @Test
+    public void shouldParseUidReference() {
+        CompositeId id = new CompositeId("INBOX" + CompositeId.SEPARATOR + "<id@localhost>;UIDVALIDITY=385759045;UID=20");
+
+        assertThat(id.getFolder(), is("INBOX"));
+        assertThat(id.getMessageId(), is("<id@localhost>"));
+        assertThat(id.getUidValidity(), is(385759045L));
+        assertThat(id.getUid(), is(20L));
+    }
+
+    @Test
+    public void shouldNotHaveUidWithoutUidReference() {
+        CompositeId id = new CompositeId("INBOX" + CompositeId.SEPARATOR + "<id@localhost>");
+
+        assertThat(id.getMessageId(), is("<id@localhost>"));
+        assertThat(id.hasUid(), is(false));
+    }
+
+    @Test
+    public void shouldKeepUidReferenceInAttachmentId() {
+        CompositeId id = new CompositeId("INBOX", "<id@localhost>", 385759045L, 20L);
+        CompositeAttachmentId attachmentId = new CompositeAttachmentId(id, "1.png");
+
+        CompositeAttachmentId parsed = new CompositeAttachmentId(attachmentId.getId());
+
+        assertThat(parsed.getMessageId(), is("<id@localhost>"));
+        assertThat(parsed.getUid(), is(20L));
+        assertThat(parsed.getFileName(), is("1.png"));
+    }
 }
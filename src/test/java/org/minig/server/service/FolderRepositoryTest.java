@@ -6,16 +6,21 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.minig.server.MailFolder;
+import org.minig.server.TestConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -82,6 +87,19 @@ public class FolderRepositoryTest {
     // assertEquals(3, findChildren.size());
     // }
     //
+    @Test
+    public void shouldFindStatusOfFolders() {
+        MimeMessage message = new MimeMessageBuilder().build(TestConstants.PLAIN);
+        mockServer.prepareMailBox("INBOX.1", message);
+
+        Map<String, FolderStatus> statuses = uut.findStatus(Arrays.asList("INBOX", "INBOX.1"));
+
+        assertEquals(2, statuses.size());
+        assertEquals(0, statuses.get("INBOX").getMessages());
+        assertEquals(1, statuses.get("INBOX.1").getMessages());
+        assertEquals(1, statuses.get("INBOX.1").getUnread());
+    }
+
     @Test
     public void testCreate_invalidArguments() {
         int count = 0;
@@ -381,4 +399,40 @@ public class FolderRepositoryTest {
         assertEquals("INBOX.test", mailFolder.getId());
         assertTrue(mailFolder.getSubscribed());
     }
+
+    @Test
+    public void shouldRenameFolderWithSubfoldersAndSubscriptions() {
+        MimeMessage msg = new MimeMessageBuilder().build(TestConstants.PLAIN);
+
+        mockServer.createAndSubscribeMailBox("INBOX.source");
+        mockServer.createAndSubscribeMailBox("INBOX.source.nested");
+        mockServer.prepareMailBox("INBOX.source.unsubscribed", msg);
+        mockServer.createAndSubscribeMailBox("INBOX.target");
+
+        MailFolder moved = uut.rename("INBOX.source", "INBOX.target");
+
+        assertEquals("INBOX.target.source", moved.getId());
+        assertEquals("INBOX.target", moved.getParentFolderId());
+        assertTrue(moved.getSubscribed());
+
+        assertNull(uut.read("INBOX.source"));
+        assertNull(uut.read("INBOX.source.nested"));
+        assertTrue(uut.read("INBOX.target.source.nested").getSubscribed());
+        assertFalse(uut.read("INBOX.target.source.unsubscribed").getSubscribed());
+        mockServer.verifyMessageCount("INBOX.target.source.unsubscribed", 1);
+    }
+
+    @Test
+    public void shouldLeaveFoldersUntouchedWhenRenameIsRejected() {
+        mockServer.createAndSubscribeMailBox("INBOX.source");
+        mockServer.createAndSubscribeMailBox("INBOX.source.nested");
+        mockServer.createAndSubscribeMailBox("INBOX.target");
+        mockServer.createAndSubscribeMailBox("INBOX.target.source");
+
+        assertNull(uut.rename("INBOX.source", "INBOX.target"));
+
+        assertTrue(uut.read("INBOX.source").getSubscribed());
+        assertTrue(uut.read("INBOX.source.nested").getSubscribed());
+        assertNull(uut.read("INBOX.target.source.nested"));
+    }
 }
@@ -12,10 +12,13 @@ import org.minig.server.TestConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.mail.internet.MimeMessage;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -32,6 +35,12 @@ public class FolderServiceTest {
     @Autowired
     private SmtpAndImapMockServer mockServer;
 
+    @Autowired
+    private FolderTreeCache folderTreeCache;
+
+    @Autowired
+    private FolderStatusCache folderStatusCache;
+
     @BeforeClass
     public static void setUpBeforeClass() throws Exception {
     }
@@ -43,6 +52,8 @@ public class FolderServiceTest {
     @Before
     public void setUp() throws Exception {
         mockServer.reset();
+        folderTreeCache.clear();
+        folderStatusCache.clear();
         mockServer.createAndSubscribeMailBox("INBOX.Trash");
         mockServer.createAndSubscribeMailBox("INBOX.Sent");
         mockServer.createAndSubscribeMailBox("INBOX.Drafts");
@@ -188,6 +199,63 @@ public class FolderServiceTest {
         assertEquals(3, uut.findBySubscribed(true).size());
     }
 
+    @Test
+    public void shouldServeFolderTreeFromCacheUntilFolderIsCreated() {
+        assertEquals(4, uut.findBySubscribed(null).size());
+
+        long hits = folderTreeCache.getHits();
+        mockServer.createAndSubscribeMailBox("INBOX.other");
+
+        assertEquals(4, uut.findBySubscribed(null).size());
+        assertEquals(hits + 1, folderTreeCache.getHits());
+
+        uut.createFolderInInbox("test");
+
+        assertEquals(6, uut.findBySubscribed(null).size());
+        assertEquals(5, uut.findBySubscribed(true).size());
+    }
+
+    @Test
+    public void shouldServeChildrenPageByPageFromCacheUntilFolderIsCreated() {
+        Page<MailFolder> first = uut.findChildren("INBOX", 0, 2);
+
+        assertEquals(3, first.getTotalElements());
+        assertEquals(2, first.getContent().size());
+        assertEquals("INBOX.Drafts", first.getContent().get(0).getId());
+        assertEquals("INBOX.Sent", first.getContent().get(1).getId());
+
+        long hits = folderTreeCache.getHits();
+        mockServer.createAndSubscribeMailBox("INBOX.other");
+        Page<MailFolder> second = uut.findChildren("INBOX", 1, 2);
+
+        assertEquals(1, second.getContent().size());
+        assertEquals("INBOX.Trash", second.getContent().get(0).getId());
+        assertEquals(hits + 1, folderTreeCache.getHits());
+
+        uut.createFolderInInbox("test");
+
+        assertEquals(5, uut.findChildren("INBOX", 0, 10).getTotalElements());
+    }
+
+    @Test
+    public void shouldCountMessagesOnceWithinTimeToLive() {
+        MimeMessage msg = new MimeMessageBuilder().build(TestConstants.PLAIN);
+        mockServer.prepareMailBox("INBOX.test", msg, msg);
+
+        List<MailFolder> folders = Collections.singletonList(uut.findById("INBOX.test"));
+        uut.countMessages(folders);
+
+        assertEquals(Integer.valueOf(2), folders.get(0).getMessageCount());
+        assertEquals(Integer.valueOf(2), folders.get(0).getUnreadMessageCount());
+
+        mockServer.prepareMailBox("INBOX.test", msg);
+        folders = Collections.singletonList(uut.findById("INBOX.test"));
+        uut.countMessages(folders);
+
+        assertEquals(Integer.valueOf(2), folders.get(0).getMessageCount());
+        assertEquals(1, folderStatusCache.getEntries());
+    }
+
     @Test
     public void testUpdateFolder_movingFolderNoMessagesNoNestedFolders() throws InterruptedException {
         mockServer.createAndSubscribeMailBox("INBOX.source");
@@ -247,6 +315,23 @@ public class FolderServiceTest {
         mockServer.verifyMessageCount("INBOX.target.folder.nested2", 1);
     }
 
+    @Test
+    public void shouldCopyMessagesWhenFolderExistsInTarget() {
+        MimeMessage msg = new MimeMessageBuilder().build(TestConstants.PLAIN);
+
+        mockServer.createAndSubscribeMailBox("INBOX.source");
+        mockServer.prepareMailBox("INBOX.source.folder", msg);
+        mockServer.createAndSubscribeMailBox("INBOX.target");
+        mockServer.prepareMailBox("INBOX.target.folder", msg);
+
+        MailFolder mf = uut.findById("INBOX.source.folder");
+        mf.setParentFolderId("INBOX.target");
+        uut.updateFolder(mf);
+
+        assertTrue(uut.findById("INBOX.source.folder") == null);
+        mockServer.verifyMessageCount("INBOX.target.folder", 2);
+    }
+
     @Test
     public void testDeleteFolder_invalidArguments() {
         int count = 0;
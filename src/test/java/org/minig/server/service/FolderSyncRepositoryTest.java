@@ -0,0 +1,169 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.minig.security.MailAuthentication;
+import org.minig.server.FolderChanges;
+import org.minig.server.service.impl.MailContext;
+
+import javax.mail.Flags;
+import javax.mail.Message;
+import javax.mail.internet.MimeMessage;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class FolderSyncRepositoryTest {
+
+    private final MailContext mailContext = mock(MailContext.class);
+    private final MailAuthentication mailAuthentication = mock(MailAuthentication.class);
+    private final IMAPFolder folder = mock(IMAPFolder.class);
+    private final IMAPStore store = mock(IMAPStore.class);
+
+    private final FolderSyncRepository uut = new FolderSyncRepository(mailContext, mailAuthentication, 1000, 60);
+
+    @Before
+    public void setUp() throws Exception {
+        when(mailContext.getFolder("INBOX", false)).thenReturn(folder);
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        when(folder.exists()).thenReturn(true);
+        when(folder.isOpen()).thenReturn(true);
+        when(folder.getFullName()).thenReturn("INBOX");
+        when(folder.getStore()).thenReturn(store);
+        when(folder.getUIDValidity()).thenReturn(1L);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void shouldThrowNotFoundExceptionForUnknownFolder() throws Exception {
+        when(folder.exists()).thenReturn(false);
+
+        uut.findChanges("INBOX", null);
+    }
+
+    @Test
+    public void shouldResetWithoutToken() throws Exception {
+        givenMessages(message(1, new Flags()));
+
+        FolderChanges changes = uut.findChanges("INBOX", null);
+
+        assertThat(changes.isReset(), is(true));
+        assertThat(changes.getToken(), notNullValue());
+    }
+
+    @Test
+    public void shouldResetWithUnknownToken() throws Exception {
+        givenMessages(message(1, new Flags()));
+
+        assertThat(uut.findChanges("INBOX", "1.0.2.42").isReset(), is(true));
+        assertThat(uut.findChanges("INBOX", "invalid").isReset(), is(true));
+    }
+
+    @Test
+    public void shouldResetWhenUidValidityChanged() throws Exception {
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        when(folder.getUIDValidity()).thenReturn(2L);
+
+        assertThat(uut.findChanges("INBOX", token).isReset(), is(true));
+    }
+
+    @Test
+    public void shouldReturnAddedChangedAndVanishedMessages() throws Exception {
+        givenMessages(message(1, new Flags()), message(2, new Flags()), message(3, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        givenMessages(message(1, new Flags()), message(3, new Flags(Flags.Flag.SEEN)), message(4, new Flags()));
+        FolderChanges changes = uut.findChanges("INBOX", token);
+
+        assertThat(changes.isReset(), is(false));
+        assertThat(changes.getVanished(), contains(2L));
+        assertThat(changes.getChanged(), hasSize(1));
+        assertThat(changes.getChanged().get(0).getUid(), is(3L));
+        assertThat(changes.getChanged().get(0).isRead(), is(true));
+        assertThat(changes.getAdded(), hasSize(1));
+        assertThat(changes.getAdded().get(0).getId(), is("INBOX|<4@localhost>;UIDVALIDITY=1;UID=4"));
+    }
+
+    @Test
+    public void shouldReturnNoChanges() throws Exception {
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        FolderChanges changes = uut.findChanges("INBOX", token);
+
+        assertThat(changes.isReset(), is(false));
+        assertThat(changes.getAdded(), empty());
+        assertThat(changes.getChanged(), empty());
+        assertThat(changes.getVanished(), empty());
+    }
+
+    @Test
+    public void shouldAcceptSameTokenTwice() throws Exception {
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        givenMessages(message(1, new Flags()), message(2, new Flags()));
+        FolderChanges first = uut.findChanges("INBOX", token);
+        FolderChanges second = uut.findChanges("INBOX", token);
+
+        assertThat(first.isReset(), is(false));
+        assertThat(first.getAdded(), hasSize(1));
+        assertThat(second.isReset(), is(false));
+        assertThat(second.getAdded(), hasSize(1));
+        assertThat(second.getAdded().get(0).getId(), is("INBOX|<2@localhost>;UIDVALIDITY=1;UID=2"));
+    }
+
+    @Test
+    public void shouldKeepTokenWithoutChanges() throws Exception {
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        assertThat(uut.findChanges("INBOX", token).getToken(), is(token));
+    }
+
+    @Test
+    public void shouldResetTokenReplacedBySyncedToken() throws Exception {
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        givenMessages(message(1, new Flags()), message(2, new Flags()));
+        String next = uut.findChanges("INBOX", token).getToken();
+
+        assertThat(uut.findChanges("INBOX", next).isReset(), is(false));
+        assertThat(uut.findChanges("INBOX", token).isReset(), is(true));
+    }
+
+    @Test
+    public void shouldResetExpiredToken() throws Exception {
+        FolderSyncRepository uut = new FolderSyncRepository(mailContext, mailAuthentication, 1000, 0);
+        givenMessages(message(1, new Flags()));
+        String token = uut.findChanges("INBOX", null).getToken();
+
+        assertThat(uut.findChanges("INBOX", token).isReset(), is(true));
+    }
+
+    private void givenMessages(Message... messages) throws Exception {
+        when(folder.getMessages()).thenReturn(messages);
+    }
+
+    private Message message(long uid, Flags flags) throws Exception {
+        MimeMessage message = mock(MimeMessage.class);
+        when(message.getFlags()).thenReturn(flags);
+        when(message.getFolder()).thenReturn(folder);
+        when(message.getMessageID()).thenReturn("<" + uid + "@localhost>");
+        when(folder.getUID(message)).thenReturn(uid);
+        return message;
+    }
+}
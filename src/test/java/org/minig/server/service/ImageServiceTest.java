@@ -0,0 +1,145 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.minig.security.MailAuthentication;
+import org.minig.server.MailAttachment;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class ImageServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AttachmentService attachmentService = mock(AttachmentService.class);
+    private final MailAuthentication mailAuthentication = mock(MailAuthentication.class);
+    private final CompositeAttachmentId id = new CompositeAttachmentId("INBOX", "<id@localhost>", "image.png");
+
+    private ThumbnailCache thumbnailCache;
+    private ImageService uut;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        thumbnailCache = new ThumbnailCache(temporaryFolder.getRoot().getAbsolutePath(), 1);
+        uut = new ImageService(attachmentService, thumbnailCache, mailAuthentication, 400);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        thumbnailCache.destroy();
+    }
+
+    @Test
+    public void shouldScaleImageToWidth() throws Exception {
+        Thumbnail thumbnail = ImageService.scale(image(800, 400, BufferedImage.TYPE_INT_ARGB, "png"), 100);
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumbnail.getData()));
+
+        assertThat(thumbnail.getMime(), is("image/png"));
+        assertThat(scaled.getWidth(), is(100));
+        assertThat(scaled.getHeight(), is(50));
+    }
+
+    @Test
+    public void shouldNotScaleNarrowOrUnknownImages() throws Exception {
+        assertThat(ImageService.scale(image(80, 40, BufferedImage.TYPE_INT_RGB, "png"), 100), nullValue());
+        assertThat(ImageService.scale("<svg/>".getBytes(), 100), nullValue());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void shouldNotServeOtherAttachments() {
+        when(attachmentService.findById(id)).thenReturn(new MailAttachment(id, "text/html", null, "inline", null));
+
+        uut.findImage(id);
+    }
+
+    @Test
+    public void shouldReturnImageThatCanNotBeScaled() {
+        MailAttachment image = new CountingImage(id, "image/svg+xml", "<svg/>".getBytes(), "\"1-1-2\"");
+
+        assertThat(uut.findThumbnail(image, 100), sameInstance(image));
+    }
+
+    @Test
+    public void shouldServeCachedThumbnail() throws Exception {
+        CountingImage image = new CountingImage(id, "image/jpeg", image(1000, 500, BufferedImage.TYPE_INT_RGB, "jpeg"), "\"1-1-2\"");
+
+        MailAttachment first = uut.findThumbnail(image, 2000);
+        MailAttachment second = uut.findThumbnail(image, 2000);
+
+        assertThat(first.getETag(), is("\"1-1-2-w400\""));
+        assertThat(first.getMime(), is("image/jpeg"));
+
+        try (InputStream data = second.getData()) {
+            assertThat(ImageIO.read(data).getWidth(), is(400));
+        }
+
+        assertThat(image.reads.get(), is(1));
+        assertThat(thumbnailCache.getHits(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepOriginalOfImageWithoutEntityTag() throws Exception {
+        byte[] original = image(80, 40, BufferedImage.TYPE_INT_RGB, "png");
+        MailAttachment thumbnail = uut.findThumbnail(new CountingImage(id, "image/png", original, null), 100);
+
+        assertThat(thumbnail.getETag(), nullValue());
+        assertThat(IOUtils.toByteArray(thumbnail.getData()), is(original));
+        assertThat(thumbnailCache.getEntries(), is(0));
+    }
+
+    private static byte[] image(int width, int height, int type, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, type), format, out);
+        return out.toByteArray();
+    }
+
+    private static class CountingImage extends MailAttachment {
+
+        private final byte[] data;
+        private final String eTag;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private CountingImage(CompositeAttachmentId id, String mime, byte[] data, String eTag) {
+            super(id, mime, null, "inline", null);
+            this.data = data;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public InputStream getData() {
+            reads.incrementAndGet();
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public long getSize() {
+            return data.length;
+        }
+
+        @Override
+        public String getETag() {
+            return eTag;
+        }
+    }
+}
@@ -17,15 +17,20 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.mail.FetchProfile;
 import javax.mail.FetchProfile.Item;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
@@ -116,10 +121,34 @@ public class MailRepositoryTest {
         List<FetchProfile> fetchProfiles = mailboxRule.getMailbox("INBOX").getFetchProfiles();
 
         assertThat(fetchProfiles, hasSize(1));
-        assertThat(fetchProfiles.get(0).getItems(), arrayContaining(Item.ENVELOPE, Item.FLAGS, Item.CONTENT_INFO));
+        assertThat(fetchProfiles.get(0).getItems(), arrayContaining(Item.ENVELOPE, Item.FLAGS, Item.CONTENT_INFO, UIDFolder.FetchProfileItem.UID));
         assertThat(fetchProfiles.get(0).getHeaderNames(), arrayContaining("$Forwarded", "$MDNSent", "Message-ID"));
     }
 
+    @Test
+    public void shouldFetchRequestedFieldsInChunks() throws Exception {
+        MimeMessage message = new MimeMessageBuilder().build(TestConstants.PLAIN);
+        IntStream.range(0, 25).forEach(i -> mailboxRule.append("INBOX", message));
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        ReflectionTestUtils.setField(uut, "fetchChunkSize", 10);
+        try {
+            int messageCount = uut.findPartialByFolderOrderByDateDesc("INBOX", new PageRequest(0, 25),
+                    EnumSet.of(MessageField.FLAGS, MessageField.SIZE), chunk -> chunkSizes.add(chunk.size()));
+
+            assertThat(messageCount, is(25));
+        } finally {
+            ReflectionTestUtils.setField(uut, "fetchChunkSize", 100);
+        }
+
+        List<FetchProfile> fetchProfiles = mailboxRule.getMailbox("INBOX").getFetchProfiles();
+
+        assertThat(chunkSizes, contains(10, 10, 5));
+        assertThat(fetchProfiles, hasSize(3));
+        assertThat(fetchProfiles.get(0).getItems(), arrayContaining(Item.FLAGS, Item.SIZE, UIDFolder.FetchProfileItem.UID));
+        assertThat(fetchProfiles.get(0).getHeaderNames(), arrayContaining("Message-ID"));
+    }
+
     @Test
     public void shouldFindMimeMessageByCompositeId() throws Exception {
         MimeMessage message1 = new MimeMessageBuilder().build(TestConstants.PLAIN);
@@ -139,7 +168,7 @@ public class MailRepositoryTest {
     }
 
     @Test
-    public void shouldFetchCompleteMessage() throws Exception {
+    public void shouldFetchHeadersAndBodyStructureOnly() throws Exception {
         MimeMessage message = new MimeMessageBuilder().build(TestConstants.PLAIN);
         String messageId = message.getMessageID();
         mailboxRule.append("INBOX", message);
@@ -150,19 +179,8 @@ public class MailRepositoryTest {
         List<FetchProfile> fetchProfiles = mailboxRule.getMailbox("INBOX").getFetchProfiles();
 
         assertThat(fetchProfiles, hasSize(1));
-        assertThat(fetchProfiles.get(0).getItems(), arrayContaining(Item.ENVELOPE, Item.FLAGS, Item.CONTENT_INFO, FetchProfileItem.MESSAGE));
-        assertThat(fetchProfiles.get(0).getHeaderNames(),
-                arrayContaining("$Forwarded",
-                                "$MDNSent",
-                                "Message-ID",
-                                "X-Mozilla-Draft-Info",
-                                "X-PRIORITY",
-                                "Disposition-Notification-To",
-                                "In-Reply-To",
-                                "X-Forwarded-Message-Id",
-                                "User-Agent"
-                    )
-                );
+        assertThat(fetchProfiles.get(0).getItems(), arrayContaining(Item.ENVELOPE, Item.FLAGS, Item.CONTENT_INFO, UIDFolder.FetchProfileItem.UID, FetchProfileItem.HEADERS));
+        assertThat(fetchProfiles.get(0).getHeaderNames(), arrayContaining("$Forwarded", "$MDNSent", "Message-ID"));
     }
 
     @Test
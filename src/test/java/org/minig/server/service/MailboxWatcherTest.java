@@ -0,0 +1,87 @@
+package org.minig.server.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.minig.security.MailAuthentication;
+import org.minig.test.javamail.MailboxRule;
+
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.minig.server.TestConstants.MOCK_USER;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MailboxWatcherTest {
+
+    @Rule
+    public MailboxRule mailboxRule = new MailboxRule(MOCK_USER);
+
+    private final MailAuthentication mailAuthentication = mock(MailAuthentication.class);
+
+    private MailboxWatcher uut;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn(MOCK_USER);
+        when(mailAuthentication.getUserMail()).thenReturn(MOCK_USER);
+        when(mailAuthentication.getDomain()).thenReturn("localhost");
+        when(mailAuthentication.getPassword()).thenReturn("login");
+        when(mailAuthentication.getInboxFolder()).thenReturn("INBOX");
+
+        uut = new MailboxWatcher(mailAuthentication, new FolderStatusCache(10, 30), 1, 1, 60);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        uut.destroy();
+    }
+
+    @Test
+    public void shouldShareConnectionBetweenSubscribersOfUser() throws Exception {
+        MailboxWatcher.Subscription first = uut.subscribe(event -> {});
+        MailboxWatcher.Subscription second = uut.subscribe(event -> {});
+
+        await(() -> uut.getOpenConnections() == 1);
+
+        assertThat(uut.getWatchedUsers(), is(1));
+        assertThat(uut.getSubscribers(), is(2));
+
+        first.cancel();
+        first.cancel();
+
+        assertThat(uut.getWatchedUsers(), is(1));
+        assertThat(uut.getSubscribers(), is(1));
+
+        second.cancel();
+
+        assertThat(uut.getWatchedUsers(), is(0));
+        await(() -> uut.getOpenConnections() == 0);
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void shouldRejectSubscribersOfOtherUsersWhenLimitIsReached() {
+        uut.subscribe(event -> {});
+
+        when(mailAuthentication.getEmailAddress()).thenReturn("otheruser@localhost");
+
+        uut.subscribe(event -> {});
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue("condition not met within 5 seconds", condition.getAsBoolean());
+    }
+}
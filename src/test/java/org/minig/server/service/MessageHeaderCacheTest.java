@@ -0,0 +1,99 @@
+package org.minig.server.service;
+
+import org.junit.Test;
+import org.minig.server.PartialMailMessage;
+
+import javax.mail.Address;
+import javax.mail.Flags;
+import javax.mail.internet.InternetAddress;
+import java.util.Date;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MessageHeaderCacheTest {
+
+    private MessageHeaderCache uut = new MessageHeaderCache(1);
+
+    @Test
+    public void shouldReturnCachedEntry() throws Exception {
+        put("user", "INBOX", 1L, 10L, "subject");
+
+        assertThat(uut.get("user", "INBOX", 1L, 10L), notNullValue());
+        assertThat(uut.get("user", "INBOX", 1L, 11L), nullValue());
+        assertThat(uut.get("user", "INBOX", 2L, 10L), nullValue());
+        assertThat(uut.get("other", "INBOX", 1L, 10L), nullValue());
+        assertThat(uut.getHits(), is(1L));
+        assertThat(uut.getMisses(), is(3L));
+    }
+
+    @Test
+    public void shouldCreatePartialMailMessageFromEntry() throws Exception {
+        Date sentDate = new Date(1000L);
+        Flags flags = new Flags(Flags.Flag.SEEN);
+        Address[] from = new Address[] { new InternetAddress("sender <sender@localhost>") };
+        MessageHeaderCache.Entry entry = uut.put("user", "INBOX", 1L, 10L, "<id@localhost>", "subject ü", from, sentDate, flags, 0);
+
+        PartialMailMessage message = new PartialMailMessage(new CompositeId("INBOX", entry.getMessageId(), 1L, 10L), entry.toMimeMessage());
+
+        assertThat(message.getId(), is("INBOX|<id@localhost>;UIDVALIDITY=1;UID=10"));
+        assertThat(message.getSubject(), is("subject ü"));
+        assertThat(message.getSender().getEmail(), is("sender@localhost"));
+        assertThat(message.getDate(), is(sentDate));
+        assertThat(message.isRead(), is(true));
+        assertThat(message.isStarred(), is(false));
+    }
+
+    @Test
+    public void shouldUpdateFlags() throws Exception {
+        MessageHeaderCache.Entry entry = put("user", "INBOX", 1L, 10L, "subject");
+
+        entry.updateFlags(new Flags(Flags.Flag.FLAGGED), 5L);
+
+        assertThat(entry.getModSeq(), is(5L));
+        assertThat(entry.toMimeMessage().isSet(Flags.Flag.FLAGGED), is(true));
+        assertThat(entry.toMimeMessage().isSet(Flags.Flag.SEEN), is(false));
+    }
+
+    @Test
+    public void shouldNotLowerModSeq() throws Exception {
+        MessageHeaderCache.Entry entry = put("user", "INBOX", 1L, 10L, "subject");
+        entry.updateFlags(new Flags(), 5L);
+
+        entry.updateModSeq(3L);
+
+        assertThat(entry.getModSeq(), is(5L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesWhenMaxSizeIsExceeded() throws Exception {
+        String subject = new String(new char[100 * 1024]).replace('\0', 'a');
+
+        for (int i = 1; i <= 10; i++) {
+            put("user", "INBOX", 1L, i, subject);
+        }
+
+        assertThat(uut.getSize() <= uut.getMaxSize(), is(true));
+        assertThat(uut.get("user", "INBOX", 1L, 1L), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, 10L), notNullValue());
+    }
+
+    @Test
+    public void shouldClear() throws Exception {
+        put("user", "INBOX", 1L, 10L, "subject");
+
+        uut.clear();
+
+        assertThat(uut.getEntries(), is(0));
+        assertThat(uut.getSize(), is(0L));
+    }
+
+    private MessageHeaderCache.Entry put(String user, String folder, long uidValidity, long uid, String subject) {
+        return uut.put(user, folder, uidValidity, uid, "<" + uid + "@localhost>", subject, null, null, new Flags(), 0);
+    }
+}
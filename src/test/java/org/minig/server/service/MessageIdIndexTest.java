@@ -0,0 +1,73 @@
+package org.minig.server.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MessageIdIndexTest {
+
+    private final MessageIdIndex uut = new MessageIdIndex(2, 2);
+
+    @Test
+    public void shouldReturnUid() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+
+        assertThat(uut.get("user", "INBOX", 1L, "<1@localhost>"), is(10L));
+        assertThat(uut.get("user", "INBOX", 1L, "<2@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX.Trash", 1L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("other", "INBOX", 1L, "<1@localhost>"), nullValue());
+    }
+
+    @Test
+    public void shouldDropFolderWhenUidValidityChanged() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+
+        assertThat(uut.get("user", "INBOX", 2L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, "<1@localhost>"), nullValue());
+    }
+
+    @Test
+    public void shouldReplaceFolderWhenPutWithNewUidValidity() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+        uut.put("user", "INBOX", 2L, "<2@localhost>", 20L);
+
+        assertThat(uut.get("user", "INBOX", 2L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX", 2L, "<2@localhost>"), is(20L));
+    }
+
+    @Test
+    public void shouldRemoveEntry() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+        uut.put("user", "INBOX", 1L, "<2@localhost>", 20L);
+
+        uut.remove("user", "INBOX", "<1@localhost>");
+
+        assertThat(uut.get("user", "INBOX", 1L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, "<2@localhost>"), is(20L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+        uut.put("user", "INBOX", 1L, "<2@localhost>", 20L);
+        uut.put("user", "INBOX", 1L, "<3@localhost>", 30L);
+
+        assertThat(uut.get("user", "INBOX", 1L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, "<3@localhost>"), is(30L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedFolders() {
+        uut.put("user", "INBOX", 1L, "<1@localhost>", 10L);
+        uut.put("user", "INBOX.Trash", 1L, "<1@localhost>", 10L);
+        uut.put("user", "INBOX.Sent", 1L, "<1@localhost>", 10L);
+
+        assertThat(uut.get("user", "INBOX", 1L, "<1@localhost>"), nullValue());
+        assertThat(uut.get("user", "INBOX.Sent", 1L, "<1@localhost>"), is(10L));
+    }
+}
@@ -0,0 +1,139 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.IMAPFolder;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeMatcher;
+import org.junit.Test;
+import org.minig.security.MailAuthentication;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.search.MessageIDTerm;
+import javax.mail.search.SearchTerm;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MessageResolverTest {
+
+    private final MessageIdIndex messageIdIndex = new MessageIdIndex(10, 10);
+    private final MailAuthentication mailAuthentication = mock(MailAuthentication.class);
+    private final MessageResolver uut = new MessageResolver(messageIdIndex, mailAuthentication);
+
+    private final IMAPFolder imapFolder = mock(IMAPFolder.class);
+    private final Message message = mock(Message.class);
+
+    @Test
+    public void shouldResolveByUidWhenUidValidityMatches() throws Exception {
+        when(imapFolder.getUIDValidity()).thenReturn(1L);
+        when(imapFolder.getMessageByUID(20L)).thenReturn(message);
+
+        Message[] messages = uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>", 1L, 20L));
+
+        assertThat(messages, arrayContaining(message));
+        verify(imapFolder, never()).search(any(SearchTerm.class));
+    }
+
+    @Test
+    public void shouldReturnEmptyArrayWhenUidDoesNotExist() throws Exception {
+        when(imapFolder.getUIDValidity()).thenReturn(1L);
+
+        Message[] messages = uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>", 1L, 20L));
+
+        assertThat(messages, emptyArray());
+        verify(imapFolder, never()).search(any(SearchTerm.class));
+    }
+
+    @Test
+    public void shouldFallBackToMessageIdWhenUidValidityChanged() throws Exception {
+        when(imapFolder.getUIDValidity()).thenReturn(2L);
+        when(imapFolder.search(any(SearchTerm.class))).thenReturn(new Message[] { message });
+
+        Message[] messages = uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>", 1L, 20L));
+
+        assertThat(messages, arrayContaining(message));
+        verify(imapFolder, never()).getMessageByUID(20L);
+        verify(imapFolder).search(argThat(hasMessageId("<id@localhost>")));
+    }
+
+    @Test
+    public void shouldSearchByMessageIdWithoutUid() throws Exception {
+        Folder folder = mock(Folder.class);
+        when(folder.search(any(SearchTerm.class))).thenReturn(new Message[] { message });
+
+        Message[] messages = uut.resolve(folder, new CompositeId("INBOX", "<id@localhost>"));
+
+        assertThat(messages, arrayContaining(message));
+        verify(folder).search(argThat(hasMessageId("<id@localhost>")));
+    }
+
+    @Test
+    public void shouldResolveMessageIdByIndexedUid() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        when(imapFolder.getFullName()).thenReturn("INBOX");
+        when(imapFolder.getUIDValidity()).thenReturn(1L);
+        when(imapFolder.getUID(message)).thenReturn(20L);
+        when(imapFolder.getMessageByUID(20L)).thenReturn(message);
+        when(message.getHeader("Message-ID")).thenReturn(new String[] { "<id@localhost>" });
+
+        uut.index(imapFolder, new Message[] { message });
+        Message[] messages = uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>"));
+
+        assertThat(messages, arrayContaining(message));
+        verify(imapFolder, never()).search(any(SearchTerm.class));
+    }
+
+    @Test
+    public void shouldSearchByMessageIdWhenIndexedUidWasExpunged() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        when(imapFolder.getFullName()).thenReturn("INBOX");
+        when(imapFolder.getUIDValidity()).thenReturn(1L);
+        when(imapFolder.search(any(SearchTerm.class))).thenReturn(new Message[] { message });
+        messageIdIndex.put("user@localhost", "INBOX", 1L, "<id@localhost>", 20L);
+
+        Message[] messages = uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>"));
+
+        assertThat(messages, arrayContaining(message));
+        assertThat(messageIdIndex.get("user@localhost", "INBOX", 1L, "<id@localhost>"), nullValue());
+        verify(imapFolder).search(argThat(hasMessageId("<id@localhost>")));
+    }
+
+    @Test
+    public void shouldNotConsultIndexOfOtherUser() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        when(imapFolder.getFullName()).thenReturn("INBOX");
+        when(imapFolder.getUIDValidity()).thenReturn(1L);
+        when(imapFolder.search(any(SearchTerm.class))).thenReturn(new Message[] { message });
+        messageIdIndex.put("other@localhost", "INBOX", 1L, "<id@localhost>", 20L);
+
+        uut.resolve(imapFolder, new CompositeId("INBOX", "<id@localhost>"));
+
+        verify(imapFolder, never()).getMessageByUID(20L);
+    }
+
+    private static Matcher<SearchTerm> hasMessageId(String messageId) {
+        return new TypeSafeMatcher<SearchTerm>() {
+            @Override
+            protected boolean matchesSafely(SearchTerm item) {
+                return item instanceof MessageIDTerm && messageId.equals(((MessageIDTerm) item).getPattern());
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("MessageIDTerm ").appendValue(messageId);
+            }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package org.minig.server.service;
+
+import org.junit.Test;
+import org.minig.server.service.MimePartAttachment.Base64Layout;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MimePartAttachmentTest {
+
+    @Test
+    public void shouldComputeDecodedSizeOfRegularLines() {
+        for (int size : new int[] { 100, 114, 1000, 1001, 1002, 5000 }) {
+            Base64Layout layout = layout(Base64.getMimeEncoder().encode(new byte[size]));
+
+            assertThat(layout.decodedSize, is((long) size));
+            assertThat(layout.encodedLineLength, is(78L));
+            assertThat(layout.decodedLineLength, is(57L));
+        }
+    }
+
+    @Test
+    public void shouldComputeDecodedSizeWithTrailingLineBreak() {
+        byte[] encoded = (Base64.getMimeEncoder().encodeToString(new byte[1001]) + "\r\n").getBytes(US_ASCII);
+
+        assertThat(layout(encoded).decodedSize, is(1001L));
+    }
+
+    @Test
+    public void shouldRejectIrregularLines() {
+        String encoded = Base64.getMimeEncoder().encodeToString(new byte[1000]);
+        String irregular = encoded.substring(0, 78) + encoded.substring(82);
+
+        assertThat(layout(irregular.getBytes(US_ASCII)), nullValue());
+    }
+
+    @Test
+    public void shouldRejectSingleLine() {
+        assertThat(layout(Base64.getEncoder().encode(new byte[100])), nullValue());
+    }
+
+    private static Base64Layout layout(byte[] encoded) {
+        byte[] head = Arrays.copyOf(encoded, Math.min(encoded.length, 1024));
+        byte[] tail = Arrays.copyOfRange(encoded, Math.max(0, encoded.length - 1024), encoded.length);
+        return Base64Layout.of(head, tail, encoded.length);
+    }
+}
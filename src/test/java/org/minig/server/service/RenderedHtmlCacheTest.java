@@ -0,0 +1,64 @@
+package org.minig.server.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class RenderedHtmlCacheTest {
+
+    private static final String HTML = StringUtils.repeat('x', 300 * 1024);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnHtmlForSameMessageRenderVersionAndAttachmentUri() throws Exception {
+        RenderedHtmlCache uut = new RenderedHtmlCache(1, "", 1);
+
+        uut.put("user", "INBOX", 1L, 10L, 1, "/1/attachment", "html");
+
+        assertThat(uut.get("user", "INBOX", 1L, 10L, 1, "/1/attachment"), is("html"));
+        assertThat(uut.get("user", "INBOX", 2L, 10L, 1, "/1/attachment"), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, 10L, 2, "/1/attachment"), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, 10L, 1, "/other/1/attachment"), nullValue());
+        assertThat(uut.get("other", "INBOX", 1L, 10L, 1, "/1/attachment"), nullValue());
+        assertThat(uut.getHits(), is(1L));
+        assertThat(uut.getMisses(), is(4L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWithoutOverflow() throws Exception {
+        RenderedHtmlCache uut = new RenderedHtmlCache(1, "", 1);
+
+        uut.put("user", "INBOX", 1L, 1L, 1, "", HTML);
+        uut.put("user", "INBOX", 1L, 2L, 1, "", HTML);
+
+        assertThat(uut.getEntries(), is(1));
+        assertThat(uut.get("user", "INBOX", 1L, 1L, 1, ""), nullValue());
+        assertThat(uut.get("user", "INBOX", 1L, 2L, 1, ""), is(HTML));
+    }
+
+    @Test
+    public void shouldServeEvictedHtmlFromOverflow() throws Exception {
+        RenderedHtmlCache uut = new RenderedHtmlCache(1, temporaryFolder.getRoot().getAbsolutePath(), 1);
+
+        uut.put("user", "INBOX", 1L, 1L, 1, "", HTML);
+        uut.put("user", "INBOX", 1L, 2L, 1, "", HTML);
+
+        assertThat(uut.getOverflowEntries(), is(1));
+        assertThat(uut.get("user", "INBOX", 1L, 1L, 1, ""), is(HTML));
+        assertThat(uut.getOverflowHits(), is(1L));
+
+        uut.destroy();
+
+        assertThat(temporaryFolder.getRoot().list().length, is(0));
+    }
+}
@@ -0,0 +1,79 @@
+package org.minig.server.service;
+
+import config.ServiceTestConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minig.server.PartialMailMessage;
+import org.minig.test.javamail.MailboxRule;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.minig.server.TestConstants.MOCK_USER;
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * @author Kamill Sokol
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Import(ServiceTestConfig.class)
+@ActiveProfiles("test")
+public class SearchMailRepositoryTest {
+
+    @Autowired
+    private SearchMailRepository uut;
+
+    @Rule
+    public MailboxRule mailboxRule = new MailboxRule(MOCK_USER);
+
+    @Test
+    public void shouldReturnMatchingMessagesMostRecentFirst() {
+        mailboxRule.append("INBOX",
+                new MimeMessageBuilder().setSubject("invoice 1").build(),
+                new MimeMessageBuilder().setSubject("newsletter").build(),
+                new MimeMessageBuilder().setSubject("Invoice 2").build());
+
+        Page<PartialMailMessage> page = uut.search("INBOX", new MessageQuery(null, "invoice", null, null, null, null), new PageRequest(0, 10));
+
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(subjects(page.getContent()), contains("Invoice 2", "invoice 1"));
+    }
+
+    @Test
+    public void shouldCombinePredicates() {
+        mailboxRule.append("INBOX",
+                new MimeMessageBuilder().setSubject("invoice").setSender("billing@localhost").build(),
+                new MimeMessageBuilder().setSubject("invoice").setSender("other@localhost").build());
+
+        Page<PartialMailMessage> page = uut.search("INBOX", new MessageQuery(null, "invoice", "billing", null, null, null), new PageRequest(0, 10));
+
+        assertThat(page.getTotalElements(), is(1L));
+    }
+
+    @Test
+    public void shouldReturnRequestedPageOnly() {
+        mailboxRule.append("INBOX", new MimeMessageBuilder().setSubject("a").build(), new MimeMessageBuilder().setSubject("a").build());
+
+        Page<PartialMailMessage> page = uut.search("INBOX", new MessageQuery("a", null, null, null, null, null), new PageRequest(1, 1));
+
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(page.getContent(), hasSize(1));
+    }
+
+    private static List<String> subjects(List<PartialMailMessage> messages) {
+        return messages.stream().map(m -> rethrowCheckedAsUnchecked(m::getSubject)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,151 @@
+package org.minig.server.service;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import config.ServiceTestConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minig.server.MailThread;
+import org.minig.server.PartialMailMessage;
+import org.minig.server.service.impl.MailContext;
+import org.minig.test.javamail.MailboxRule;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.mail.FetchProfile;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.minig.server.TestConstants.MOCK_USER;
+import static org.minig.server.util.ExceptionUtils.rethrowCheckedAsUnchecked;
+
+/**
+ * @author Kamill Sokol
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Import(ServiceTestConfig.class)
+@ActiveProfiles("test")
+public class SortedMailRepositoryTest {
+
+    @Autowired
+    private SortedMailRepository uut;
+
+    @Rule
+    public MailboxRule mailboxRule = new MailboxRule(MOCK_USER);
+
+    @Test
+    public void shouldSortBySubject() {
+        mailboxRule.append("INBOX",
+                new MimeMessageBuilder().setSubject("b").build(),
+                new MimeMessageBuilder().setSubject("Re: c").build(),
+                new MimeMessageBuilder().setSubject("a").build());
+
+        Page<PartialMailMessage> page = uut.findByFolder("INBOX", MessageSort.SUBJECT, false, new PageRequest(0, 2));
+
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(subjects(page.getContent()), contains("a", "b"));
+    }
+
+    @Test
+    public void shouldSortBySubjectReverse() {
+        mailboxRule.append("INBOX",
+                new MimeMessageBuilder().setSubject("b").build(),
+                new MimeMessageBuilder().setSubject("Re: c").build(),
+                new MimeMessageBuilder().setSubject("a").build());
+
+        Page<PartialMailMessage> page = uut.findByFolder("INBOX", MessageSort.SUBJECT, true, new PageRequest(0, 20));
+
+        assertThat(subjects(page.getContent()), contains("Re: c", "b", "a"));
+    }
+
+    @Test
+    public void shouldThreadBySubject() {
+        mailboxRule.append("INBOX",
+                new MimeMessageBuilder().setSubject("first").build(),
+                new MimeMessageBuilder().setSubject("second").build(),
+                new MimeMessageBuilder().setSubject("Re: first").build());
+
+        Page<MailThread> page = uut.findThreadsByFolder("INBOX", new PageRequest(0, 20));
+
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(page.getContent().get(0).getMessages(), hasSize(2));
+        assertThat(subjects(page.getContent().get(1).getMessages()), contains("second"));
+    }
+
+    @Test
+    public void shouldReturnEmptyPageBeyondLastThread() {
+        mailboxRule.append("INBOX", new MimeMessageBuilder().setSubject("first").build());
+
+        Page<MailThread> page = uut.findThreadsByFolder("INBOX", new PageRequest(1, 20));
+
+        assertThat(page.getTotalElements(), is(1L));
+        assertThat(page.getContent(), hasSize(0));
+    }
+
+    @Test
+    public void shouldSortByCachedEnvelopesWithoutSortCapability() throws Exception {
+        MailContext mailContext = mock(MailContext.class);
+        MailRepository mailRepository = mock(MailRepository.class);
+        IMAPFolder folder = mock(IMAPFolder.class);
+        MimeMessage first = message(folder, 1);
+        MimeMessage second = message(folder, 2);
+        MessageHeaderCache cache = new MessageHeaderCache(1);
+
+        when(mailContext.getFolder("INBOX")).thenReturn(folder);
+        when(folder.getStore()).thenReturn(mock(IMAPStore.class));
+        when(folder.getFullName()).thenReturn("INBOX");
+        when(folder.getMessageCount()).thenReturn(2);
+        when(folder.getMessages(1, 2)).thenReturn(new Message[] { first, second });
+        when(mailRepository.findEnvelopes(folder, new Message[] { first, second }, false)).thenReturn(new MessageHeaderCache.Entry[] {
+                cache.put(MOCK_USER, "INBOX", 1L, 1L, "<1@localhost>", "b", null, null, new Flags(), 0),
+                cache.put(MOCK_USER, "INBOX", 1L, 2L, "<2@localhost>", "a", null, null, new Flags(), 0)
+        });
+
+        Page<PartialMailMessage> page = new SortedMailRepository(mailContext, mailRepository).findByFolder("INBOX", MessageSort.SUBJECT, false, new PageRequest(0, 1));
+
+        assertThat(page.getTotalElements(), is(2L));
+        verify(folder).fetch(aryEq(new Message[] { second }), any(FetchProfile.class));
+        verify(folder, times(1)).fetch(any(), any());
+    }
+
+    @Test
+    public void shouldFlattenTopLevelThreads() {
+        List<long[]> threads = SortedMailRepository.parseThreads(" (2)(3 6 (4 23)(44 7 96))");
+
+        assertThat(threads, hasSize(2));
+        assertThat(threads.get(0), is(new long[] { 2 }));
+        assertThat(threads.get(1), is(new long[] { 3, 6, 4, 23, 44, 7, 96 }));
+    }
+
+    private static MimeMessage message(Folder folder, int messageNumber) {
+        MimeMessage message = mock(MimeMessage.class);
+        when(message.getFolder()).thenReturn(folder);
+        when(message.getMessageNumber()).thenReturn(messageNumber);
+        return message;
+    }
+
+    private static List<String> subjects(List<PartialMailMessage> messages) {
+        return messages.stream().map(m -> rethrowCheckedAsUnchecked(m::getSubject)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,118 @@
+package org.minig.server.service;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.minig.security.MailAuthentication;
+
+import javax.mail.util.ByteArrayDataSource;
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Kamill Sokol
+ */
+public class StagedAttachmentStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MailAuthentication mailAuthentication = mock(MailAuthentication.class);
+
+    private StagedAttachmentStore uut;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mailAuthentication.getEmailAddress()).thenReturn("user@localhost");
+        uut = new StagedAttachmentStore(mailAuthentication, temporaryFolder.getRoot().getAbsolutePath(), 1, 60);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        uut.destroy();
+    }
+
+    @Test
+    public void shouldStageAttachment() throws Exception {
+        StagedAttachment staged = uut.stage(dataSource("data".getBytes(), "file.txt"));
+
+        StagedAttachment attachment = uut.get(staged.getId());
+
+        assertThat(attachment.getName(), is("file.txt"));
+        assertThat(attachment.getContentType(), is("text/plain"));
+        assertThat(attachment.getSize(), is(4L));
+        assertThat(uut.getBytes(), is(4L));
+
+        try (InputStream inputStream = attachment.getInputStream()) {
+            assertThat(IOUtils.toString(inputStream, "UTF-8"), is("data"));
+        }
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void shouldNotReturnAttachmentOfOtherUser() throws Exception {
+        StagedAttachment staged = uut.stage(dataSource("data".getBytes(), "file.txt"));
+
+        when(mailAuthentication.getEmailAddress()).thenReturn("other@localhost");
+
+        uut.get(staged.getId());
+    }
+
+    @Test
+    public void shouldDeleteFileWhenRemoved() throws Exception {
+        StagedAttachment staged = uut.stage(dataSource("data".getBytes(), "file.txt"));
+
+        uut.remove(Collections.singletonList(staged));
+
+        assertThat(staged.getFile().exists(), is(false));
+        assertThat(uut.getSize(), is(0));
+        assertThat(uut.getBytes(), is(0L));
+    }
+
+    @Test
+    public void shouldDeleteTemporaryDirectoryOnDestroy() throws Exception {
+        StagedAttachmentStore store = new StagedAttachmentStore(mailAuthentication, "", 1, 60);
+        StagedAttachment staged = store.stage(dataSource("data".getBytes(), "file.txt"));
+
+        store.destroy();
+
+        assertThat(staged.getFile().getParentFile().exists(), is(false));
+    }
+
+    @Test
+    public void shouldKeepConfiguredDirectoryOnDestroy() throws Exception {
+        uut.stage(dataSource("data".getBytes(), "file.txt"));
+
+        uut.destroy();
+
+        assertThat(temporaryFolder.getRoot().exists(), is(true));
+    }
+
+    @Test
+    public void shouldRejectAttachmentExceedingLimit() throws Exception {
+        uut.stage(dataSource(new byte[1024 * 1024 - 1], "first.bin"));
+
+        try {
+            uut.stage(dataSource(new byte[2], "second.bin"));
+        } catch (StagingLimitExceededException expected) {
+            assertThat(uut.getSize(), is(1));
+            assertThat(temporaryFolder.getRoot().list().length, is(1));
+            return;
+        }
+
+        throw new AssertionError("expected StagingLimitExceededException");
+    }
+
+    private static ByteArrayDataSource dataSource(byte[] data, String name) {
+        ByteArrayDataSource dataSource = new ByteArrayDataSource(data, "text/plain");
+        dataSource.setName(name);
+        return dataSource;
+    }
+}
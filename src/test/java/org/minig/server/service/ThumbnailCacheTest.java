@@ -0,0 +1,46 @@
+package org.minig.server.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class ThumbnailCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldDeleteFilesOfPreviousRunOnStartup() throws Exception {
+        File leftover = temporaryFolder.newFile(UUID.randomUUID().toString());
+        File foreign = temporaryFolder.newFile("foreign.txt");
+
+        new ThumbnailCache(temporaryFolder.getRoot().getAbsolutePath(), 1);
+
+        assertThat(leftover.exists(), is(false));
+        assertThat(foreign.exists(), is(true));
+    }
+
+    @Test
+    public void shouldDeleteFileOfEvictedThumbnail() throws Exception {
+        ThumbnailCache uut = new ThumbnailCache(temporaryFolder.getRoot().getAbsolutePath(), 1);
+        byte[] data = new byte[600 * 1024];
+
+        uut.put("user", "INBOX", "\"1-1-2\"", 100, new Thumbnail("image/png", data));
+        uut.put("user", "INBOX", "\"1-2-2\"", 100, new Thumbnail("image/png", data));
+
+        assertThat(uut.get("user", "INBOX", "\"1-1-2\"", 100), nullValue());
+        assertThat(uut.get("user", "INBOX", "\"1-2-2\"", 100).getData().length, is(data.length));
+        assertThat(temporaryFolder.getRoot().listFiles().length, is(1));
+        assertThat(uut.getMisses(), is(1L));
+    }
+}
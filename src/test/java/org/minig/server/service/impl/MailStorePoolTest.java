@@ -0,0 +1,151 @@
+package org.minig.server.service.impl;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.minig.server.service.RepositoryException;
+import org.minig.test.javamail.MailboxRule;
+
+import javax.mail.Store;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.minig.server.TestConstants.MOCK_USER;
+
+/**
+ * @author Kamill Sokol
+ */
+public class MailStorePoolTest {
+
+    private static final String OTHER_USER = "otheruser@localhost";
+
+    @Rule
+    public MailboxRule mailboxRule = new MailboxRule(MOCK_USER);
+
+    private MailStorePool uut = new MailStorePool(2, 3, 60, 0);
+
+    @After
+    public void tearDown() throws Exception {
+        uut.destroy();
+    }
+
+    @Test
+    public void shouldReturnConnectedStore() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+
+        assertThat(store.isConnected(), is(true));
+        assertThat(uut.getCreatedConnections(), is(1L));
+        assertThat(uut.getActiveConnections(), is(1));
+    }
+
+    @Test
+    public void shouldReuseReleasedStore() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.release(store);
+
+        assertThat(uut.getIdleConnections(), is(1));
+        assertThat(uut.borrow("localhost", MOCK_USER, "login"), sameInstance(store));
+        assertThat(uut.getCreatedConnections(), is(1L));
+        assertThat(uut.getReusedConnections(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepPooledStoreWhenPasswordDiffers() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.release(store);
+
+        Store other = uut.borrow("localhost", MOCK_USER, "changed");
+
+        assertThat(other, sameInstance(store));
+        assertThat(store.isConnected(), is(true));
+        assertThat(uut.getOpenConnections(), is(1));
+    }
+
+    @Test
+    public void shouldAdoptOfferedStore() throws Exception {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.invalidate(store);
+        store.connect("localhost", MOCK_USER, "login");
+
+        uut.offer("localhost", MOCK_USER, "login", store);
+
+        assertThat(uut.getIdleConnections(), is(1));
+        assertThat(uut.borrow("localhost", MOCK_USER, "login"), sameInstance(store));
+    }
+
+    @Test
+    public void shouldCloseOfferedStoreBeyondLimitPerUser() throws Exception {
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", MOCK_USER, "login");
+        Store store = uut.borrow("localhost", OTHER_USER, "login");
+        uut.invalidate(store);
+        store.connect("localhost", MOCK_USER, "login");
+
+        uut.offer("localhost", MOCK_USER, "login", store);
+
+        assertThat(store.isConnected(), is(false));
+        assertThat(uut.getOpenConnections(), is(2));
+    }
+
+    @Test
+    public void shouldNotReuseDisconnectedStore() throws Exception {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.release(store);
+        store.close();
+
+        assertThat(uut.borrow("localhost", MOCK_USER, "login"), not(sameInstance(store)));
+        assertThat(uut.getOpenConnections(), is(1));
+    }
+
+    @Test
+    public void shouldCloseInvalidatedStore() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.invalidate(store);
+
+        assertThat(store.isConnected(), is(false));
+        assertThat(uut.getOpenConnections(), is(0));
+        assertThat(uut.getActiveConnections(), is(0));
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void shouldFailWhenUserLimitIsReached() {
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", MOCK_USER, "login");
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void shouldFailWhenGlobalLimitIsReached() {
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", OTHER_USER, "login");
+        uut.borrow("localhost", OTHER_USER, "login");
+    }
+
+    @Test
+    public void shouldEvictIdleStoreOfOtherUserWhenGlobalLimitIsReached() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", MOCK_USER, "login");
+        uut.borrow("localhost", OTHER_USER, "login");
+        uut.release(store);
+
+        uut.borrow("localhost", OTHER_USER, "login");
+
+        assertThat(store.isConnected(), is(false));
+        assertThat(uut.getOpenConnections(), is(3));
+        assertThat(uut.getIdleConnections(), is(0));
+    }
+
+    @Test
+    public void shouldCloseIdleStoresOnClear() {
+        Store store = uut.borrow("localhost", MOCK_USER, "login");
+        uut.release(store);
+
+        uut.clear();
+
+        assertThat(store.isConnected(), is(false));
+        assertThat(uut.getOpenConnections(), is(0));
+    }
+}
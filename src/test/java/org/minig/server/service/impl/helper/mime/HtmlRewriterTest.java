@@ -0,0 +1,84 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class HtmlRewriterTest {
+
+    private final HtmlRewriter linksOnly = HtmlRewriter.linksOnly();
+
+    @Test
+    public void shouldReturnSameInstanceWithoutAnchors() {
+        String html = "<table><tr><td>text</td></tr></table>";
+
+        assertThat(linksOnly.rewrite(html), sameInstance(html));
+    }
+
+    @Test
+    public void shouldAddTargetToAnchors() {
+        assertThat(linksOnly.rewrite("<a href=\"http://localhost\">link</a>"), is("<a href=\"http://localhost\" target=\"_blank\">link</a>"));
+        assertThat(linksOnly.rewrite("<A HREF='a>b'>link</A>"), is("<A HREF='a>b' target=\"_blank\">link</A>"));
+        assertThat(linksOnly.rewrite("<a href=x/>"), is("<a href=x/ target=\"_blank\">"));
+        assertThat(linksOnly.rewrite("<a name=\"x\"/>"), is("<a name=\"x\" target=\"_blank\"/>"));
+    }
+
+    @Test
+    public void shouldReplaceExistingTarget() {
+        assertThat(linksOnly.rewrite("<a target=\"_self\" href=\"x\">"), is("<a target=\"_blank\" href=\"x\">"));
+        assertThat(linksOnly.rewrite("<a TARGET=top>"), is("<a TARGET=_blank>"));
+        assertThat(linksOnly.rewrite("<a target href=\"x\">"), is("<a target=\"_blank\" href=\"x\">"));
+    }
+
+    @Test
+    public void shouldIgnoreOtherTags() {
+        String html = "<abbr title=\"x\">x</abbr><area href=\"x\"><p>a</p>";
+
+        assertThat(linksOnly.rewrite(html), sameInstance(html));
+    }
+
+    @Test
+    public void shouldIgnoreAnchorsInCommentsAndScripts() {
+        String html = "<!-- <a href=\"x\"> --><script>document.write('<a href=\"x\">')</script><STYLE>a>b{}</STYLE>";
+
+        assertThat(linksOnly.rewrite(html), sameInstance(html));
+        assertThat(linksOnly.rewrite(html + "<a>"), is(html + "<a target=\"_blank\">"));
+    }
+
+    @Test
+    public void shouldReplaceCidAndMidReferences() {
+        Map<String, String> urls = new HashMap<>();
+        urls.put("part1.(a+b)*@example", "/attachment/1");
+        urls.put("part1.(a+b)*@example.com", "/attachment/2");
+
+        String html = "<img src=\"cid:part1.(a+b)*@example.com\"><div style=\"background:url(MID:part1.(a+b)*@example)\">"
+                + "<a href=\"cid:part1.(a+b)*@example\">cid:unknown</a>";
+
+        assertThat(new HtmlRewriter(urls).rewrite(html), is("<img src=\"/attachment/2\"><div style=\"background:url(/attachment/1)\">"
+                + "<a href=\"/attachment/1\" target=\"_blank\">cid:unknown</a>"));
+    }
+
+    @Test
+    public void shouldReplaceReferencesInScripts() {
+        HtmlRewriter rewriter = new HtmlRewriter(Collections.singletonMap("image", "/attachment/1"));
+
+        assertThat(rewriter.rewrite("<style>td{background:url(cid:image)}</style>"), is("<style>td{background:url(/attachment/1)}</style>"));
+    }
+
+    @Test
+    public void shouldHandleTruncatedMarkup() {
+        assertThat(linksOnly.rewrite("<a href=\"x"), is("<a href=\"x"));
+        assertThat(linksOnly.rewrite("<a"), is("<a"));
+        assertThat(linksOnly.rewrite("<!-- <a>"), is("<!-- <a>"));
+        assertThat(linksOnly.rewrite(""), is(""));
+    }
+}
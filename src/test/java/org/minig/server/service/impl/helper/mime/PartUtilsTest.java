@@ -0,0 +1,37 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.junit.Test;
+
+import javax.mail.internet.MimeBodyPart;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class PartUtilsTest {
+
+    @Test
+    public void shouldStripAngleBracketsFromContentId() throws Exception {
+        MimeBodyPart part = new MimeBodyPart();
+        part.setHeader("Content-ID", " <1.png@localhost> ");
+
+        assertThat(PartUtils.contentId(part), is("1.png@localhost"));
+    }
+
+    @Test
+    public void shouldReturnNullWithoutContentId() throws Exception {
+        assertThat(PartUtils.contentId(new MimeBodyPart()), nullValue());
+    }
+
+    @Test
+    public void shouldDecodeFileName() throws Exception {
+        MimeBodyPart part = new MimeBodyPart();
+        part.setFileName("=?UTF-8?Q?gr=C3=BC=C3=9Fe.txt?=");
+
+        assertThat(PartUtils.fileName(part), is("grüße.txt"));
+        assertThat(PartUtils.fileName(new MimeBodyPart()), nullValue());
+    }
+}
@@ -0,0 +1,44 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import javax.mail.internet.SharedInputStream;
+import java.io.InputStream;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Kamill Sokol
+ */
+public class SpillingBufferTest {
+
+    @Test
+    public void shouldKeepDataBelowThresholdInMemory() throws Exception {
+        SpillingBuffer buffer = new SpillingBuffer(8);
+        buffer.write("data".getBytes());
+
+        try (InputStream inputStream = buffer.toInputStream()) {
+            assertThat(buffer.isInMemory(), is(true));
+            assertThat(inputStream, instanceOf(SharedInputStream.class));
+            assertThat(IOUtils.toString(inputStream, "UTF-8"), is("data"));
+        }
+    }
+
+    @Test
+    public void shouldSpillDataAboveThreshold() throws Exception {
+        SpillingBuffer buffer = new SpillingBuffer(4);
+        buffer.write("data".getBytes());
+        buffer.write('-');
+        buffer.write("spilled".getBytes());
+
+        try (InputStream inputStream = buffer.toInputStream()) {
+            assertThat(buffer.isInMemory(), is(false));
+            assertThat(inputStream, instanceOf(SharedInputStream.class));
+            assertThat(IOUtils.toString(((SharedInputStream) inputStream).newStream(5, -1), "UTF-8"), is("spilled"));
+            assertThat(IOUtils.toString(inputStream, "UTF-8"), is("data-spilled"));
+        }
+    }
+}
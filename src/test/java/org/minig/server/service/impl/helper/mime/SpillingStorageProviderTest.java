@@ -0,0 +1,67 @@
+package org.minig.server.service.impl.helper.mime;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.storage.Storage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Kamill Sokol
+ */
+public class SpillingStorageProviderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadBackContentAboveThreshold() throws Exception {
+        SpillingStorageProvider uut = new SpillingStorageProvider(4, temporaryFolder.getRoot());
+        byte[] content = new byte[64 * 1024];
+        Arrays.fill(content, (byte) 'a');
+
+        Storage storage = uut.store(new ByteArrayInputStream(content));
+
+        try (InputStream first = storage.getInputStream(); InputStream second = storage.getInputStream()) {
+            assertThat(IOUtils.toByteArray(first), is(content));
+            assertThat(IOUtils.toByteArray(second), is(content));
+        }
+
+        // unlinked as soon as it was opened for reading
+        assertThat(temporaryFolder.getRoot().listFiles(), emptyArray());
+        storage.delete();
+    }
+
+    @Test
+    public void shouldDeleteTemporaryFileWhenContentCouldNotBeRead() throws Exception {
+        SpillingStorageProvider uut = new SpillingStorageProvider(4, temporaryFolder.getRoot());
+        InputStream failing = new SequenceInputStream(new ByteArrayInputStream("data-spilled".getBytes()), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                assertThat(temporaryFolder.getRoot().listFiles(), arrayWithSize(1));
+                throw new IOException("connection reset");
+            }
+        });
+
+        try {
+            uut.store(failing);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertThat(temporaryFolder.getRoot().listFiles(), emptyArray());
+    }
+}
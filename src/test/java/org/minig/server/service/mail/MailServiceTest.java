@@ -8,6 +8,7 @@ import org.minig.server.FullMailMessage;
 import org.minig.server.MailMessage;
 import org.minig.server.MailMessageAddress;
 import org.minig.server.MailMessageList;
+import org.minig.server.MessageBatchResult;
 import org.minig.server.TestConstants;
 import org.minig.server.service.CompositeId;
 import org.minig.server.service.MimeMessageBuilder;
@@ -40,11 +41,13 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.minig.server.TestConstants.MOCK_USER;
+import static org.minig.server.service.impl.helper.mime.BodyStructureMessage.HTML_RENDER_VERSION;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -204,6 +207,36 @@ public class MailServiceTest {
         }
     }
 
+    @Test
+    public void shouldUpdateFlagsOfSeveralFoldersAndReportUnknownMessages() throws MessagingException {
+        MimeMessage inboxMessage = new MimeMessageBuilder().build();
+        MimeMessage testMessage = new MimeMessageBuilder().build();
+        mockServer.prepareMailBox("INBOX", inboxMessage);
+        mockServer.prepareMailBox("INBOX.test", testMessage);
+
+        MailMessage mailMessage1 = new MailMessage();
+        mailMessage1.setCompositeId(new CompositeId("INBOX", inboxMessage.getMessageID()));
+        mailMessage1.setRead(true);
+
+        MailMessage mailMessage2 = new MailMessage();
+        mailMessage2.setCompositeId(new CompositeId("INBOX.test", testMessage.getMessageID()));
+        mailMessage2.setStarred(true);
+
+        MailMessage mailMessage3 = new MailMessage();
+        mailMessage3.setCompositeId(new CompositeId("INBOX", "unknown"));
+        mailMessage3.setRead(true);
+
+        MailMessageList mailMessageList = new MailMessageList();
+        mailMessageList.setMailList(Arrays.asList(mailMessage1, mailMessage2, mailMessage3));
+
+        MessageBatchResult result = uut.updateMessagesFlags(mailMessageList);
+
+        assertThat(result.getSucceeded(), is(2));
+        assertThat(result.getFailed(), is(1));
+        assertThat(mailboxRule.getAllInFolder("INBOX").get(0).getFlags().getSystemFlags(), arrayContaining(Flags.Flag.SEEN));
+        assertThat(mailboxRule.getAllInFolder("INBOX.test").get(0).getFlags().getSystemFlags(), arrayContaining(Flags.Flag.FLAGGED));
+    }
+
     @Test
     public void testMoveMessageToFolder() throws MessagingException {
         MimeMessage message = new MimeMessageBuilder().build();
@@ -218,6 +251,27 @@ public class MailServiceTest {
         assertThat(mailboxRule.getAllInFolder("INBOX.test"), hasSize(1));
     }
 
+    @Test
+    public void shouldMoveMessagesOfSeveralFoldersAndReportUnknownMessages() throws MessagingException {
+        List<MimeMessage> inboxMessages = new MimeMessageBuilder().build(2);
+        MimeMessage draftMessage = new MimeMessageBuilder().build();
+        mockServer.prepareMailBox("INBOX", inboxMessages);
+        mockServer.prepareMailBox("INBOX.Drafts", draftMessage);
+        mockServer.createAndSubscribeMailBox("INBOX.test");
+
+        MessageBatchResult result = uut.moveMessagesToFolder(Arrays.asList(
+                new CompositeId("INBOX", inboxMessages.get(0).getMessageID()),
+                new CompositeId("INBOX", inboxMessages.get(1).getMessageID()),
+                new CompositeId("INBOX.Drafts", draftMessage.getMessageID()),
+                new CompositeId("INBOX", "unknown")), "INBOX.test");
+
+        assertThat(result.getSucceeded(), is(3));
+        assertThat(result.getFailed(), is(1));
+        assertThat(mailboxRule.getAllInFolder("INBOX"), empty());
+        assertThat(mailboxRule.getAllInFolder("INBOX.Drafts"), empty());
+        assertThat(mailboxRule.getAllInFolder("INBOX.test"), hasSize(3));
+    }
+
     @Test
     public void testCopyMessagesToFolderWithInvalidArguments() {
         int count = 0;
@@ -456,6 +510,15 @@ public class MailServiceTest {
         assertThat(actualHtmlBody, containsString("http://localhost/1/attachment/folder%257C%253C1367760625.51865ef16e3f6%2540swift.generated%253E%257C1367760625.51865ef16e3f6%2540swift.generated"));
     }
 
+    @Test
+    public void shouldIncludeRenderVersionAndAttachmentUriInHtmlBodyETag() throws Exception {
+        String attachmentUri = "http://localhost/1/attachment";
+        String expected = String.format("\"1-2-%d-%08x\"", HTML_RENDER_VERSION, attachmentUri.hashCode());
+
+        assertThat(uut.findHtmlBodyETag(new CompositeId("INBOX", "1", 1L, 2L)), is(expected));
+        assertThat(uut.findHtmlBodyETag(new CompositeId("INBOX", "1")), nullValue());
+    }
+
     @Test(expected = NotFoundException.class)
     public void shouldThrowNotFoundExceptionWhenUnknownCompositeIdGiven() throws Exception {
         uut.findHtmlBodyByCompositeId(new CompositeId("INBOX", "unknown"));
@@ -1,6 +1,7 @@
 package org.minig.server.service.submission;
 
 import config.ServiceTestConfig;
+import org.apache.commons.io.IOUtils;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -10,6 +11,9 @@ import org.minig.server.MailMessage;
 import org.minig.server.MailMessageAddress;
 import org.minig.server.TestConstants;
 import org.minig.server.service.MimeMessageBuilder;
+import org.minig.server.service.StagedAttachment;
+import org.minig.server.service.StagedAttachmentStore;
+import org.minig.server.service.impl.helper.mime.Mime4jAttachment;
 import org.minig.server.service.impl.helper.mime.Mime4jMessage;
 import org.minig.test.javamail.Mailbox;
 import org.minig.test.javamail.MailboxBuilder;
@@ -20,11 +24,15 @@ import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.mail.Flags;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.arrayContaining;
@@ -45,6 +53,9 @@ public class SubmissionServiceTest {
     @Autowired
     private MailAuthentication mailAuthentication;
 
+    @Autowired
+    private StagedAttachmentStore stagedAttachmentStore;
+
     @Rule
     public MailboxRule mailboxRule = new MailboxRule(MOCK_USER);
 
@@ -76,6 +87,39 @@ public class SubmissionServiceTest {
         assertThat(mime4jMessage.getPlain(), is(expectedBody));
     }
 
+    @Test
+    public void testSendMessageWithStagedAttachment() throws MessagingException, IOException {
+        Mailbox draftsBox = new MailboxBuilder(mailAuthentication.getEmailAddress()).mailbox("INBOX.Drafts").subscribed().exists().build();
+        Mailbox inbox = new MailboxBuilder("test@example.com").mailbox("INBOX").subscribed().exists().build();
+        Mailbox sentBox = new MailboxBuilder(mailAuthentication.getEmailAddress()).mailbox("INBOX.Sent").subscribed().exists().build();
+
+        ByteArrayDataSource dataSource = new ByteArrayDataSource("staged content".getBytes(), "text/plain");
+        dataSource.setName("staged.txt");
+        StagedAttachment staged = stagedAttachmentStore.stage(dataSource);
+
+        MailMessage mm = new MailMessage();
+        mm.setSender(new MailMessageAddress(mailAuthentication.getEmailAddress()));
+        mm.setTo(Arrays.asList(new MailMessageAddress("test@example.com")));
+        mm.setSubject("msg with staged attachment");
+        mm.setPlain("plain");
+        mm.setStagedAttachments(Collections.singletonList(staged.getId()));
+
+        uut.sendMessage(mm);
+
+        assertThat(draftsBox, hasSize(0));
+        assertThat(sentBox, hasSize(1));
+        assertThat(inbox, hasSize(1));
+        assertThat(sentBox.get(0).getHeader("Message-ID"), is(inbox.get(0).getHeader("Message-ID")));
+        assertThat(sentBox.get(0).isSet(Flags.Flag.SEEN), is(true));
+        assertThat(staged.getFile().exists(), is(false));
+
+        List<Mime4jAttachment> attachments = new Mime4jMessage(inbox.get(0)).getAttachments();
+
+        assertThat(attachments, hasSize(1));
+        assertThat(attachments.get(0).getFilename(), is("staged.txt"));
+        assertThat(IOUtils.toString(attachments.get(0).getData(), "UTF-8"), is("staged content"));
+    }
+
     @Test
     public void testForwardMessage() throws MessagingException {
         String expectedBody = "html with umlaut ä";
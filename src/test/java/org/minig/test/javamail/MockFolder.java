@@ -83,6 +83,19 @@ class MockFolder extends Folder {
         }
     }
 
+    @Override
+    public Folder[] listSubscribed(String pattern) throws MessagingException {
+        List<Folder> subscribed = new ArrayList<>();
+
+        for (Folder folder : list(pattern)) {
+            if (folder.isSubscribed()) {
+                subscribed.add(folder);
+            }
+        }
+
+        return subscribed.toArray(new Folder[subscribed.size()]);
+    }
+
     @Override
     public char getSeparator() throws MessagingException {
         return mailbox.getSeparator();
@@ -139,9 +152,43 @@ class MockFolder extends Folder {
         return result;
     }
 
+    /**
+     * Moves the mailbox with all its children and messages like RENAME. As with most IMAP servers, subscriptions
+     * are not carried over.
+     */
     @Override
     public boolean renameTo(Folder f) throws MessagingException {
-        throw new UnsupportedOperationException();
+        Mailbox target = MailboxHolder.get(mailbox.address, f.getFullName());
+
+        if (!mailbox.exists || (target != null && target.exists)) {
+            return false;
+        }
+
+        if (target != null) {
+            MailboxHolder.remove(target);
+        }
+
+        String source = mailbox.path;
+
+        for (Mailbox mb : mailbox.getAll()) {
+            if (!mb.path.equals(source) && !mb.path.startsWith(source + mb.getSeparator())) {
+                continue;
+            }
+
+            MailboxHolder.remove(mb);
+
+            Mailbox renamed = new MailboxBuilder(mb.address).mailbox(f.getFullName() + mb.path.substring(source.length())).exists().build();
+
+            for (Message message : mb) {
+                renamed.add(message);
+            }
+
+            if (mb == mailbox && f instanceof MockFolder) {
+                ((MockFolder) f).mailbox = renamed;
+            }
+        }
+
+        return true;
     }
 
     @Override